@@ -0,0 +1,59 @@
+package benchmark;
+
+/**
+ * Class Benchmark is one operation of LOIR that is measured by
+ * BenchmarkRunner, e.g. forming the MCDs of a query.
+ *
+ * The runner calls setUp once for every workload, outside of the
+ * measurement, and then run as often as it can during every iteration. The
+ * result of run is consumed by the runner, so that the JIT compiler cannot
+ * remove the operation.
+ */
+public abstract class Benchmark {
+
+	/** name of the benchmark */
+	private String name;
+
+	/**
+	 * Benchmark constructor
+	 *
+	 * @param name
+	 *            name of the benchmark, e.g. "minicon.formMCDs"
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name of the benchmark.
+	 *
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Prepares the operation for the workload, e.g. forms the MCDs that are
+	 * combined by run. Not measured.
+	 *
+	 * @param workload
+	 *            query and views of the benchmark
+	 */
+	public void setUp(Workload workload) {
+	}
+
+	/**
+	 * Runs the operation once.
+	 *
+	 * @return result of the operation
+	 */
+	public abstract Object run();
+
+	/**
+	 * Overwrites Object method. Returns the name of the benchmark.
+	 */
+	public String toString() {
+		return name;
+	}
+}
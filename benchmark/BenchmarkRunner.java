@@ -0,0 +1,331 @@
+package benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Class BenchmarkRunner measures the benchmarks of MiniConBenchmarks for
+ * every query shape and catalog size, in the way of JMH: every benchmark is
+ * set up, run for a number of warmup iterations that are not measured, and
+ * then for a number of measured iterations of a fixed duration. The score is
+ * the average time of an operation over the measured iterations, with the
+ * half width of its 99.9% confidence interval as error.
+ *
+ * Every measured iteration also reports what the GC profiler of JMH reports:
+ * the bytes allocated by the benchmark thread per operation, and the number
+ * and time of the garbage collections during the iteration.
+ *
+ * All benchmarks run in the same JVM, so the profile of one benchmark can
+ * influence the next; to compare two versions of the code, run every
+ * benchmark in a JVM of its own with -bench.
+ */
+public class BenchmarkRunner {
+
+	/** consumes the results of the benchmarks */
+	private static volatile int sink;
+
+	/** number of warmup iterations */
+	private int warmupIterations = 3;
+
+	/** number of measured iterations */
+	private int iterations = 5;
+
+	/** duration of an iteration, in milliseconds */
+	private long iterationTime = 1000;
+
+	/** thread bean, measures the allocated bytes if the JVM supports it */
+	private ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Sets the iterations of every benchmark.
+	 *
+	 * @param warmupIterations
+	 *            number of iterations that are not measured
+	 * @param iterations
+	 *            number of measured iterations, at least 2
+	 * @param iterationTime
+	 *            duration of an iteration, in milliseconds
+	 */
+	public void setIterations(int warmupIterations, int iterations,
+			long iterationTime) {
+		if (iterations < 2) {
+			throw new IllegalArgumentException(
+					"At least 2 measured iterations are needed: " + iterations);
+		}
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * Sets up the benchmark for the workload and measures it.
+	 *
+	 * @param benchmark
+	 *            benchmark
+	 * @param workload
+	 *            query and views
+	 * @return result of the measured iterations
+	 */
+	public Result measure(Benchmark benchmark, Workload workload) {
+		benchmark.setUp(workload);
+		for (int i = 0; i < warmupIterations; i++) {
+			iterate(benchmark);
+		}
+		Result result = new Result(benchmark, workload);
+		for (int i = 0; i < iterations; i++) {
+			Iteration iteration = iterate(benchmark);
+			result.times[i] = iteration.time / (double) iteration.operations;
+			result.allocated += iteration.allocated
+					/ (double) iteration.operations;
+			result.gcCount += iteration.gcCount;
+			result.gcTime += iteration.gcTime;
+		}
+		result.allocated /= iterations;
+		return result;
+	}
+
+	/**
+	 * Called by measure. Runs the benchmark for one iteration.
+	 *
+	 * @param benchmark
+	 *            benchmark that is set up
+	 * @return time, operations, allocation and collections of the iteration
+	 */
+	private Iteration iterate(Benchmark benchmark) {
+		Iteration iteration = new Iteration();
+		long gcCount = -gcCount();
+		long gcTime = -gcTime();
+		long allocated = -allocatedBytes();
+		long start = System.nanoTime();
+		long end = start + iterationTime * 1000000L;
+		long now;
+		int hash = 0;
+		do {
+			hash ^= System.identityHashCode(benchmark.run());
+			iteration.operations++;
+			now = System.nanoTime();
+		} while (now < end);
+		iteration.time = now - start;
+		iteration.allocated = allocated + allocatedBytes();
+		iteration.gcCount = gcCount + gcCount();
+		iteration.gcTime = gcTime + gcTime();
+		sink ^= hash;
+		return iteration;
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread so far, 0 if the JVM
+	 * cannot measure them.
+	 */
+	private long allocatedBytes() {
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the number of garbage collections so far.
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the time of the garbage collections so far, in milliseconds.
+	 */
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * Class Iteration holds the measures of one iteration.
+	 */
+	private static class Iteration {
+		long operations;
+		long time;
+		long allocated;
+		long gcCount;
+		long gcTime;
+	}
+
+	/**
+	 * Class Result holds the measures of a benchmark for a workload.
+	 */
+	public class Result {
+
+		/** benchmark */
+		private Benchmark benchmark;
+
+		/** workload */
+		private Workload workload;
+
+		/** average time of an operation in every measured iteration, in ns */
+		private double[] times;
+
+		/** average bytes allocated per operation */
+		private double allocated;
+
+		/** number of garbage collections during the measured iterations */
+		private long gcCount;
+
+		/** time of the garbage collections during the measured iterations, in ms */
+		private long gcTime;
+
+		Result(Benchmark benchmark, Workload workload) {
+			this.benchmark = benchmark;
+			this.workload = workload;
+			this.times = new double[iterations];
+		}
+
+		/**
+		 * Returns the average time of an operation.
+		 *
+		 * @return score in nanoseconds per operation
+		 */
+		public double getScore() {
+			double sum = 0;
+			for (double time : times) {
+				sum += time;
+			}
+			return sum / times.length;
+		}
+
+		/**
+		 * Returns the half width of the 99.9% confidence interval of the
+		 * score, from the Student t distribution of the iteration averages.
+		 *
+		 * @return error in nanoseconds per operation
+		 */
+		public double getError() {
+			double score = getScore();
+			double squares = 0;
+			for (double time : times) {
+				squares += (time - score) * (time - score);
+			}
+			double deviation = Math.sqrt(squares / (times.length - 1));
+			return studentT999(times.length - 1) * deviation
+					/ Math.sqrt(times.length);
+		}
+
+		/**
+		 * Overwrites Object method. Returns a line of the report.
+		 */
+		public String toString() {
+			return String.format(Locale.ROOT,
+					"%-26s %-6s %8d %4d %14.1f +- %12.1f ns/op %14.1f B/op %5d gc %6d ms",
+					benchmark.getName(), workload.getShape(), workload
+							.getViews().size(), times.length, getScore(),
+					getError(), allocated, gcCount, gcTime);
+		}
+	}
+
+	/**
+	 * Returns the two-sided 99.9% quantile of the Student t distribution.
+	 *
+	 * @param degrees
+	 *            degrees of freedom, at least 1
+	 * @return quantile
+	 */
+	static double studentT999(int degrees) {
+		double[] quantiles = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959,
+				5.408, 5.041, 4.781, 4.587, 4.437, 4.318, 4.221, 4.140, 4.073,
+				4.015, 3.965, 3.922, 3.883, 3.850 };
+		if (degrees <= quantiles.length) {
+			return quantiles[degrees - 1];
+		}
+		return degrees <= 30 ? 3.646 : (degrees <= 60 ? 3.460 : 3.291);
+	}
+
+	/**
+	 * Parses a list of numbers separated by commas.
+	 */
+	private static long[] parseNumbers(String list) {
+		String[] parts = list.split(",");
+		long[] numbers = new long[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			numbers[i] = Long.parseLong(parts[i].trim());
+		}
+		return numbers;
+	}
+
+	/**
+	 * Runs the benchmarks and prints one line per benchmark and workload.
+	 *
+	 * @param args
+	 *            [-shapes chain,star] [-subgoals K] [-views 100,10000]
+	 *            [-n 1,10,100] [-wi WARMUP] [-i ITERATIONS] [-time MS]
+	 *            [-bench REGEX]
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] shapes = Workload.SHAPES;
+		int subgoals = 4;
+		long[] catalogSizes = { 100, 10000 };
+		long[] topN = { 1, 10, 100 };
+		int warmupIterations = 3;
+		int iterations = 5;
+		long iterationTime = 1000;
+		String bench = ".*";
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-shapes")) {
+					shapes = args[++i].split(",");
+				} else if (args[i].equals("-subgoals")) {
+					subgoals = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-views")) {
+					catalogSizes = parseNumbers(args[++i]);
+				} else if (args[i].equals("-n")) {
+					topN = parseNumbers(args[++i]);
+				} else if (args[i].equals("-wi")) {
+					warmupIterations = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-i")) {
+					iterations = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-time")) {
+					iterationTime = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-bench")) {
+					bench = args[++i];
+				} else {
+					throw new IllegalArgumentException("Unknown option: "
+							+ args[i]);
+				}
+			}
+		} catch (RuntimeException e) {
+			System.out.println(e.getMessage());
+			System.out
+					.println("USAGE: java benchmark.BenchmarkRunner [-shapes chain,star] [-subgoals K] [-views 100,10000] [-n 1,10,100] [-wi WARMUP] [-i ITERATIONS] [-time MS] [-bench REGEX]");
+			System.exit(1);
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner();
+		runner.setIterations(warmupIterations, iterations, iterationTime);
+
+		System.out.println(String.format(Locale.ROOT,
+				"%-26s %-6s %8s %4s %31s %19s %8s %9s", "Benchmark", "Shape",
+				"Views", "Cnt", "Score +- Error", "Alloc", "GC", "GC time"));
+		for (String shape : shapes) {
+			for (long catalogSize : catalogSizes) {
+				Workload workload = new Workload(shape.trim(), subgoals,
+						(int) catalogSize, 42);
+				for (Benchmark benchmark : MiniConBenchmarks.create(topN)) {
+					if (benchmark.getName().matches(bench)) {
+						System.out.println(runner.measure(benchmark, workload));
+					}
+				}
+			}
+		}
+	}
+}
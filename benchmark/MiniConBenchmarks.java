@@ -0,0 +1,173 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import minicon.InputHandler;
+import minicon.MCD;
+import minicon.MCDCombiner;
+import minicon.MCDMappings;
+import minicon.MiniCon;
+import minicon.Rewriting;
+import minicon.RewritingListener;
+import minicon.ViewIndex;
+import preference.Organiser;
+import converter.Converter;
+import datalog.DatalogQuery;
+import datalog.Predicate;
+
+/**
+ * Class MiniConBenchmarks creates the benchmarks of the phases of LOIR, each
+ * measured on its own:
+ *
+ * - parse: DatalogParser.query on the query string;
+ *
+ * - minicon.formMCDs: forming the MCDs of the query (first phase of MiniCon);
+ *
+ * - minicon.combineMCDs: combining the MCDs formed in setUp (second phase);
+ *
+ * - mcd.fulfillProperty: creating one MCD and extending it to fulfill the
+ * MiniCon property, for every pair of subgoal and view predicate in turn;
+ *
+ * - organiser.topN: creating an organiser over the view index built in setUp
+ * and returning its first N rewritings, for every given N;
+ *
+ * - converter.convertToSQL: converting the rewritings found in setUp to SQL,
+ * one per operation.
+ */
+public class MiniConBenchmarks {
+
+	/**
+	 * Returns the benchmarks.
+	 *
+	 * @param topN
+	 *            numbers of rewritings of the organiser benchmarks
+	 * @return new benchmarks
+	 */
+	public static List<Benchmark> create(long[] topN) {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		benchmarks.add(new Benchmark("parse") {
+			private String query;
+
+			public void setUp(Workload workload) {
+				query = workload.getQueryString();
+			}
+
+			public Object run() {
+				return InputHandler.parse(query);
+			}
+		});
+
+		benchmarks.add(new Benchmark("minicon.formMCDs") {
+			private Workload workload;
+
+			public void setUp(Workload workload) {
+				this.workload = workload;
+			}
+
+			public Object run() {
+				MiniCon mc = new MiniCon(workload.getQuery(), workload
+						.getViews());
+				mc.setParallelism(1);
+				mc.formMCDs();
+				return mc.getMCDs();
+			}
+		});
+
+		benchmarks.add(new Benchmark("minicon.combineMCDs") {
+			private DatalogQuery query;
+			private List<MCD> mcds;
+
+			public void setUp(Workload workload) {
+				query = workload.getQuery();
+				MiniCon mc = new MiniCon(query, workload.getViews());
+				mc.setParallelism(1);
+				mc.formMCDs();
+				mcds = mc.getMCDs();
+			}
+
+			public Object run() {
+				final int[] count = new int[1];
+				new MCDCombiner(query, mcds).combine(new RewritingListener() {
+					public void rewritingFound(Rewriting rewriting) {
+						count[0]++;
+					}
+				});
+				return count;
+			}
+		});
+
+		benchmarks.add(new Benchmark("mcd.fulfillProperty") {
+			private DatalogQuery query;
+			private ViewIndex viewIndex;
+			private List<Object[]> pairs;
+			private int next;
+
+			public void setUp(Workload workload) {
+				query = workload.getQuery();
+				viewIndex = new ViewIndex(workload.getViews());
+				pairs = new ArrayList<Object[]>();
+				for (Predicate subgoal : query.getPredicates()) {
+					for (DatalogQuery view : viewIndex.getViews(subgoal)) {
+						for (Predicate viewPred : viewIndex.getMappingPartners(
+								subgoal, view)) {
+							pairs.add(new Object[] { subgoal, view, viewPred });
+						}
+					}
+				}
+				next = 0;
+			}
+
+			public Object run() {
+				Object[] pair = pairs.get(next);
+				next = (next + 1) % pairs.size();
+				Predicate subgoal = (Predicate) pair[0];
+				MCD mcd = new MCD(subgoal, query, (DatalogQuery) pair[1],
+						new MCDMappings(subgoal, (Predicate) pair[2]), viewIndex);
+				return mcd.fulfillProperty() ? mcd : null;
+			}
+		});
+
+		for (final long n : topN) {
+			benchmarks.add(new Benchmark("organiser.top" + n) {
+				private Workload workload;
+				private ViewIndex viewIndex;
+
+				public void setUp(Workload workload) {
+					this.workload = workload;
+					viewIndex = new ViewIndex(workload.getViews());
+				}
+
+				public Object run() {
+					return new Organiser(viewIndex, workload.getQuery(),
+							workload.getProfile())
+							.getDesiredNumberOfRewritings(n);
+				}
+			});
+		}
+
+		benchmarks.add(new Benchmark("converter.convertToSQL") {
+			private Converter converter = new Converter();
+			private List<Rewriting> rewritings;
+			private int next;
+
+			public void setUp(Workload workload) {
+				MiniCon mc = new MiniCon(workload.getQuery(), workload
+						.getViews());
+				mc.setParallelism(1);
+				mc.startMiniCon();
+				rewritings = mc.getRewritings();
+				next = 0;
+			}
+
+			public Object run() {
+				Rewriting rewriting = rewritings.get(next);
+				next = (next + 1) % rewritings.size();
+				return converter.convertToSQL(rewriting);
+			}
+		});
+
+		return benchmarks;
+	}
+}
@@ -0,0 +1,207 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import minicon.InputHandler;
+import preference.PreferenceProfile;
+import datalog.DatalogQuery;
+
+/**
+ * Class Workload is the input of a benchmark: a query of a given shape and a
+ * catalog of views of a given size, as Datalog strings and parsed.
+ *
+ * The query has k subgoals R1, ..., Rk, joined in a chain
+ * (Q(X0,Xk) :- R1(X0,X1), R2(X1,X2), ...) or in a star around X0
+ * (Q(X0) :- R1(X0,X1), R2(X0,X2), ...). Every subgoal is covered by a few
+ * views of its own relation, and every pair of adjacent subgoals by one view
+ * of both, so the number of rewritings stays small while the views are
+ * realistic. The rest of the catalog are views over relations the query does
+ * not use; they make the catalog large without changing the rewritings, so
+ * the size of the catalog only costs what looking up the coverage domains
+ * costs.
+ *
+ * The workload is fully determined by its parameters and the seed; the ranks
+ * of the views are drawn from {0.1, 0.2, ..., 1.0}.
+ */
+public class Workload {
+
+	/** shapes of the query */
+	public static final String[] SHAPES = { "chain", "star" };
+
+	/** number of views of its own relation that cover every subgoal */
+	public static final int COVERAGE = 3;
+
+	/** shape of the query */
+	private String shape;
+
+	/** number of subgoals of the query */
+	private int subgoals;
+
+	/** query as Datalog string */
+	private String queryString;
+
+	/** views as Datalog strings */
+	private List<String> viewStrings;
+
+	/** parsed query */
+	private DatalogQuery query;
+
+	/** parsed views */
+	private List<DatalogQuery> views;
+
+	/** rank of every view */
+	private PreferenceProfile profile;
+
+	/**
+	 * Workload constructor
+	 *
+	 * @param shape
+	 *            "chain" or "star"
+	 * @param subgoals
+	 *            number of subgoals of the query
+	 * @param catalogSize
+	 *            number of views, at least the number of views that cover the
+	 *            query
+	 * @param seed
+	 *            seed of the ranks
+	 */
+	public Workload(String shape, int subgoals, int catalogSize, long seed) {
+		if (!shape.equals("chain") && !shape.equals("star")) {
+			throw new IllegalArgumentException("Unknown shape: " + shape);
+		}
+		if (subgoals < 1) {
+			throw new IllegalArgumentException("No subgoal: " + subgoals);
+		}
+		this.shape = shape;
+		this.subgoals = subgoals;
+		this.queryString = createQuery();
+		this.viewStrings = createViews(catalogSize);
+
+		this.query = InputHandler.parse(queryString);
+		this.views = new ArrayList<DatalogQuery>();
+		for (String view : viewStrings) {
+			views.add(InputHandler.parse(view));
+		}
+
+		Random random = new Random(seed);
+		Map<String, Double> ranks = new HashMap<String, Double>();
+		for (DatalogQuery view : views) {
+			ranks.put(view.getName(), (random.nextInt(10) + 1) / 10.0);
+		}
+		this.profile = new PreferenceProfile(0, ranks);
+	}
+
+	/**
+	 * Called by the constructor. Returns the query.
+	 *
+	 * @return Datalog string of the query
+	 */
+	private String createQuery() {
+		StringBuilder body = new StringBuilder();
+		for (int i = 1; i <= subgoals; i++) {
+			if (i > 1) {
+				body.append(", ");
+			}
+			body.append(atom(i, "X"));
+		}
+		String head = shape.equals("chain") ? "Q(X0, X" + subgoals + ")"
+				: "Q(X0)";
+		return head + " :- " + body;
+	}
+
+	/**
+	 * Called by the constructor. Returns the views covering the query,
+	 * followed by views over other relations up to the size of the catalog.
+	 *
+	 * @param catalogSize
+	 *            number of views
+	 * @return Datalog strings of the views
+	 */
+	private List<String> createViews(int catalogSize) {
+		List<String> result = new ArrayList<String>();
+		for (int i = 1; i <= subgoals; i++) {
+			for (int j = 0; j < COVERAGE; j++) {
+				result.add("V" + (result.size() + 1) + "(A, B) :- R" + i
+						+ "(A, B)");
+			}
+			if (i < subgoals) {
+				// covers two subgoals, every variable is in the head
+				String[] first = variables(i, "A");
+				String[] second = variables(i + 1, "A");
+				result.add("V" + (result.size() + 1) + "(" + first[0] + ", "
+						+ first[1] + ", " + second[1] + ") :- " + atom(i, "A")
+						+ ", " + atom(i + 1, "A"));
+			}
+		}
+		if (catalogSize < result.size()) {
+			throw new IllegalArgumentException("Catalog of " + catalogSize
+					+ " views cannot cover the query, it needs "
+					+ result.size());
+		}
+		for (int i = 1; result.size() < catalogSize; i++) {
+			result.add("V" + (result.size() + 1) + "(A, B) :- S" + i
+					+ "(A, B)");
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ith subgoal of the query with the given prefix of the
+	 * variables, e.g. "R2(X1, X2)".
+	 */
+	private String atom(int i, String prefix) {
+		String[] variables = variables(i, prefix);
+		return "R" + i + "(" + variables[0] + ", " + variables[1] + ")";
+	}
+
+	/**
+	 * Returns the variables of the ith subgoal of the query with the given
+	 * prefix: (X(i-1), Xi) in a chain, (X0, Xi) in a star.
+	 */
+	private String[] variables(int i, String prefix) {
+		if (shape.equals("chain")) {
+			return new String[] { prefix + (i - 1), prefix + i };
+		}
+		return new String[] { prefix + 0, prefix + i };
+	}
+
+	public String getShape() {
+		return shape;
+	}
+
+	public int getSubgoals() {
+		return subgoals;
+	}
+
+	public String getQueryString() {
+		return queryString;
+	}
+
+	public List<String> getViewStrings() {
+		return viewStrings;
+	}
+
+	public DatalogQuery getQuery() {
+		return query;
+	}
+
+	public List<DatalogQuery> getViews() {
+		return views;
+	}
+
+	public PreferenceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Overwrites Object method. Returns the parameters of the workload.
+	 */
+	public String toString() {
+		return shape + " " + subgoals + " subgoals " + views.size()
+				+ " views";
+	}
+}
@@ -0,0 +1,844 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Class WorkloadGenerator generates test cases of a given scale: conjunctive
+ * queries of a given shape, with catalogs of thousands to millions of views,
+ * and the preferences of the views.
+ *
+ * The subgoals of a query are binary, one per edge of a graph over the query
+ * variables: a chain X0-X1-...-Xk, a star around X0, a cycle, or a random
+ * connected graph. The subgoals use the relations R1, R2, ...; with fewer
+ * relations than subgoals, relations are repeated, i.e. the query has
+ * self-joins. Every variable is distinguished with a given ratio, the others
+ * are existential; some variables can be replaced by constants, and some get
+ * an interpreted predicate (a comparison with a constant).
+ *
+ * A given ratio of the views overlaps the query: its body is a connected
+ * fragment of the query with fresh variables, of a size between the minimal
+ * and the maximal view size; every variable is distinguished with its own
+ * ratio, and the views can have constants and comparisons as well. The other
+ * views are random bodies over relations the query does not use, S1, S2, ...
+ * The first views of the catalog cover every subgoal on its own, so that the
+ * query always has a rewriting.
+ *
+ * The ranks of the views are drawn from a distribution: uniform, zipf (a few
+ * views have high ranks, most have low ones), normal around 0.5, or tiers
+ * (few distinct ranks, i.e. large rank tiers). With several preference
+ * domains, every view has one rank per domain (see MultiDomainProfile).
+ *
+ * Three files are written: the test cases in the XML format of
+ * testcases.xml, with the SQL form of every query and view (schema,
+ * SQLquery, SQLview) if asked for; the preferences in the XML format of
+ * preferences.xml, with the id of the test case as preference id; and a
+ * compact line format, one line per element:
+ *
+ * T id | Q datalog | V datalog TAB rank1 TAB rank2 ... | D domain1 domain2 ...
+ *
+ * The views are written as they are generated, so the size of the catalog is
+ * not limited by the memory. The same parameters and seed give the same
+ * files.
+ */
+public class WorkloadGenerator {
+
+	/** shapes of the queries */
+	public static final String[] SHAPES = { "chain", "star", "cycle", "random" };
+
+	/** distributions of the ranks */
+	public static final String[] RANK_DISTRIBUTIONS = { "uniform", "zipf",
+			"normal", "tiers" };
+
+	/** comparisons of the interpreted predicates */
+	private static final String[] COMPARISONS = { "<", ">", "<=", ">=" };
+
+	/** shape of the queries */
+	private String shape = "chain";
+
+	/** number of subgoals of a query */
+	private int subgoals = 4;
+
+	/** number of relations of the queries, 0 for one per subgoal */
+	private int relations = 0;
+
+	/** ratio of the distinguished variables of a query */
+	private double distinguishedRatio = 0.5;
+
+	/** number of views of a catalog */
+	private int views = 1000;
+
+	/** minimal number of subgoals of a view */
+	private int minViewSize = 1;
+
+	/** maximal number of subgoals of a view */
+	private int maxViewSize = 3;
+
+	/** ratio of the views that overlap the query */
+	private double overlap = 0.5;
+
+	/** ratio of the distinguished variables of a view */
+	private double viewDistinguishedRatio = 0.8;
+
+	/** ratio of the existential variables replaced by constants */
+	private double constantRatio = 0;
+
+	/** ratio of the distinguished variables with an interpreted predicate */
+	private double comparisonRatio = 0;
+
+	/** distribution of the ranks */
+	private String rankDistribution = "uniform";
+
+	/** names of the preference domains, "rank" is the single domain */
+	private String[] domains = { "rank" };
+
+	/** true if the SQL form of the test cases is written */
+	private boolean sql = false;
+
+	/** random numbers of the generator */
+	private Random random;
+
+	/**
+	 * WorkloadGenerator constructor
+	 *
+	 * @param seed
+	 *            seed of the random numbers
+	 */
+	public WorkloadGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Sets the shape of the queries.
+	 *
+	 * @param shape
+	 *            "chain", "star", "cycle" or "random"
+	 * @param subgoals
+	 *            number of subgoals, at least 3 for a cycle
+	 * @param relations
+	 *            number of distinct relations, 0 for one per subgoal
+	 * @param distinguishedRatio
+	 *            ratio of the distinguished variables; a query has at least
+	 *            one
+	 */
+	public void setQueryShape(String shape, int subgoals, int relations,
+			double distinguishedRatio) {
+		if (!contains(SHAPES, shape)) {
+			throw new IllegalArgumentException("Unknown shape: " + shape);
+		}
+		if (subgoals < (shape.equals("cycle") ? 3 : 1)) {
+			throw new IllegalArgumentException("Too few subgoals for a "
+					+ shape + ": " + subgoals);
+		}
+		this.shape = shape;
+		this.subgoals = subgoals;
+		this.relations = relations;
+		this.distinguishedRatio = ratio(distinguishedRatio);
+	}
+
+	/**
+	 * Sets the catalog of views of every query.
+	 *
+	 * @param views
+	 *            number of views, at least the number of subgoals
+	 * @param minViewSize
+	 *            minimal number of subgoals of a view
+	 * @param maxViewSize
+	 *            maximal number of subgoals of a view
+	 * @param overlap
+	 *            ratio of the views that are fragments of the query
+	 * @param viewDistinguishedRatio
+	 *            ratio of the distinguished variables of a view; a view has
+	 *            at least one
+	 */
+	public void setCatalog(int views, int minViewSize, int maxViewSize,
+			double overlap, double viewDistinguishedRatio) {
+		if (minViewSize < 1 || maxViewSize < minViewSize) {
+			throw new IllegalArgumentException("Wrong view sizes: "
+					+ minViewSize + "-" + maxViewSize);
+		}
+		this.views = views;
+		this.minViewSize = minViewSize;
+		this.maxViewSize = maxViewSize;
+		this.overlap = ratio(overlap);
+		this.viewDistinguishedRatio = ratio(viewDistinguishedRatio);
+	}
+
+	/**
+	 * Sets the constants and interpreted predicates of the queries and views.
+	 *
+	 * @param constantRatio
+	 *            ratio of the existential variables replaced by constants
+	 * @param comparisonRatio
+	 *            ratio of the distinguished variables compared with a
+	 *            constant
+	 */
+	public void setConditions(double constantRatio, double comparisonRatio) {
+		this.constantRatio = ratio(constantRatio);
+		this.comparisonRatio = ratio(comparisonRatio);
+	}
+
+	/**
+	 * Sets the preferences of the views.
+	 *
+	 * @param rankDistribution
+	 *            "uniform", "zipf", "normal" or "tiers"
+	 * @param domains
+	 *            names of the preference domains
+	 */
+	public void setRanks(String rankDistribution, String... domains) {
+		if (!contains(RANK_DISTRIBUTIONS, rankDistribution)) {
+			throw new IllegalArgumentException("Unknown rank distribution: "
+					+ rankDistribution);
+		}
+		if (domains.length == 0) {
+			throw new IllegalArgumentException("No preference domain");
+		}
+		this.rankDistribution = rankDistribution;
+		this.domains = domains;
+	}
+
+	/**
+	 * Sets whether the SQL form of the test cases is written too.
+	 *
+	 * @param sql
+	 *            true to write schema, SQLquery and SQLview elements
+	 */
+	public void setSQL(boolean sql) {
+		this.sql = sql;
+	}
+
+	/**
+	 * Generates test cases and writes them to the three outputs.
+	 *
+	 * @param firstID
+	 *            id of the first test case
+	 * @param testcases
+	 *            number of test cases
+	 * @param testcasesOut
+	 *            receives the test cases in XML
+	 * @param preferencesOut
+	 *            receives the preferences in XML
+	 * @param compactOut
+	 *            receives the compact form, null if it is not written
+	 * @throws IOException
+	 *             if an output cannot be written
+	 */
+	public void generate(int firstID, int testcases, Writer testcasesOut,
+			Writer preferencesOut, Writer compactOut) throws IOException {
+		testcasesOut.write("<testcases>\n");
+		preferencesOut.write("<preferences>\n");
+		if (compactOut != null) {
+			compactOut.write("D");
+			for (String domain : domains) {
+				compactOut.write(" " + domain);
+			}
+			compactOut.write("\n");
+		}
+
+		for (int id = firstID; id < firstID + testcases; id++) {
+			generateTestCase(id, testcasesOut, preferencesOut, compactOut);
+		}
+
+		testcasesOut.write("</testcases>\n");
+		preferencesOut.write("</preferences>\n");
+	}
+
+	/**
+	 * Called by generate. Generates the query of one test case and its
+	 * catalog of views.
+	 */
+	private void generateTestCase(int id, Writer testcasesOut,
+			Writer preferencesOut, Writer compactOut) throws IOException {
+		Query query = generateQuery();
+
+		testcasesOut.write(" <testcase>\n  <id>" + id + "</id>\n");
+		testcasesOut.write("  <query>" + escape(query.toDatalog())
+				+ "</query>\n");
+		preferencesOut.write("\t<preference id = \"" + id + "\">\n");
+		if (compactOut != null) {
+			compactOut.write("T " + id + "\nQ " + query.toDatalog() + "\n");
+		}
+
+		if (sql) {
+			testcasesOut.write("  <DBschema>\n");
+			for (String relation : query.getRelations()) {
+				testcasesOut.write("   <relation>" + relation
+						+ "(c1, c2)</relation>\n");
+			}
+			for (int i = 1; i <= numberOfOtherRelations(); i++) {
+				testcasesOut.write("   <relation>S" + i
+						+ "(c1, c2)</relation>\n");
+			}
+			testcasesOut.write("  </DBschema>\n");
+			testcasesOut.write("  <SQLquery>" + escape(query.toSQL())
+					+ "</SQLquery>\n");
+		}
+
+		int covering = Math.min(views, subgoals);
+		for (int i = 0; i < views; i++) {
+			Query view;
+			if (i < covering) {
+				view = coveringView(query, i);
+			} else if (random.nextDouble() < overlap) {
+				view = fragmentView(query);
+			} else {
+				view = otherView();
+			}
+			view.name = "V" + (i + 1);
+
+			String datalog = view.toDatalog();
+			testcasesOut.write("  <view>" + escape(datalog) + "</view>\n");
+			if (sql) {
+				testcasesOut.write("  <SQLview>" + escape(view.toSQL())
+						+ "</SQLview>\n");
+			}
+
+			preferencesOut.write("\t\t<view name = \"" + view.name + "\"");
+			if (compactOut != null) {
+				compactOut.write("V " + datalog);
+			}
+			for (String domain : domains) {
+				String rank = formatRank(nextRank());
+				preferencesOut.write(" " + domain + " = \"" + rank + "\"");
+				if (compactOut != null) {
+					compactOut.write("\t" + rank);
+				}
+			}
+			preferencesOut.write("/>\n");
+			if (compactOut != null) {
+				compactOut.write("\n");
+			}
+		}
+
+		testcasesOut.write("  <information/>\n </testcase>\n");
+		preferencesOut.write("\t</preference>\n");
+	}
+
+	/**
+	 * Called by generateTestCase. Returns a query of the shape: one subgoal
+	 * per edge of the graph of the variables.
+	 *
+	 * @return new query
+	 */
+	Query generateQuery() {
+		List<int[]> edges = new ArrayList<int[]>();
+		if (shape.equals("chain")) {
+			for (int i = 0; i < subgoals; i++) {
+				edges.add(new int[] { i, i + 1 });
+			}
+		} else if (shape.equals("star")) {
+			for (int i = 0; i < subgoals; i++) {
+				edges.add(new int[] { 0, i + 1 });
+			}
+		} else if (shape.equals("cycle")) {
+			for (int i = 0; i < subgoals; i++) {
+				edges.add(new int[] { i, (i + 1) % subgoals });
+			}
+		} else {
+			// a random tree keeps the graph connected, the other edges close cycles
+			int vertices = Math.max(2, (3 * subgoals) / 4 + 1);
+			for (int i = 1; i < vertices && edges.size() < subgoals; i++) {
+				edges.add(new int[] { random.nextInt(i), i });
+			}
+			while (edges.size() < subgoals) {
+				edges.add(new int[] { random.nextInt(vertices),
+						random.nextInt(vertices) });
+			}
+		}
+
+		Query query = new Query("Q");
+		int numberOfRelations = relations <= 0 ? subgoals : relations;
+		for (int i = 0; i < edges.size(); i++) {
+			int[] edge = edges.get(i);
+			query.atoms.add(new Atom("R" + (i % numberOfRelations + 1), "X"
+					+ edge[0], "X" + edge[1]));
+		}
+		chooseHead(query, distinguishedRatio);
+		addConditions(query);
+		return query;
+	}
+
+	/**
+	 * Called by generateTestCase. Returns a view that covers the ith subgoal
+	 * of the query on its own, with every variable distinguished.
+	 */
+	private Query coveringView(Query query, int i) {
+		Query view = new Query("V");
+		Atom atom = query.atoms.get(i);
+		view.atoms.add(new Atom(atom.relation, "A1", "A2"));
+		view.head.add("A1");
+		view.head.add("A2");
+		return view;
+	}
+
+	/**
+	 * Called by generateTestCase. Returns a view whose body is a connected
+	 * fragment of the query, with fresh variables.
+	 */
+	private Query fragmentView(Query query) {
+		int size = minViewSize + random.nextInt(maxViewSize - minViewSize + 1);
+		size = Math.min(size, query.atoms.size());
+
+		// grows the fragment from a random subgoal by adjacent subgoals
+		Set<Integer> fragment = new LinkedHashSet<Integer>();
+		fragment.add(random.nextInt(query.atoms.size()));
+		while (fragment.size() < size) {
+			List<Integer> adjacent = new ArrayList<Integer>();
+			for (int i = 0; i < query.atoms.size(); i++) {
+				if (!fragment.contains(i)) {
+					for (int j : fragment) {
+						if (query.atoms.get(i).shares(query.atoms.get(j))) {
+							adjacent.add(i);
+							break;
+						}
+					}
+				}
+			}
+			if (adjacent.isEmpty()) {
+				break;
+			}
+			fragment.add(adjacent.get(random.nextInt(adjacent.size())));
+		}
+
+		Query view = new Query("V");
+		Map<String, String> renaming = new LinkedHashMap<String, String>();
+		for (int i : fragment) {
+			Atom atom = query.atoms.get(i);
+			String[] args = new String[2];
+			for (int j = 0; j < 2; j++) {
+				if (Query.isConstant(atom.args[j])) {
+					args[j] = atom.args[j];
+				} else {
+					if (!renaming.containsKey(atom.args[j])) {
+						renaming.put(atom.args[j], "A" + (renaming.size() + 1));
+					}
+					args[j] = renaming.get(atom.args[j]);
+				}
+			}
+			view.atoms.add(new Atom(atom.relation, args[0], args[1]));
+		}
+		chooseHead(view, viewDistinguishedRatio);
+		addConditions(view);
+		return view;
+	}
+
+	/**
+	 * Called by generateTestCase. Returns a view over relations the query
+	 * does not use.
+	 */
+	private Query otherView() {
+		int size = minViewSize + random.nextInt(maxViewSize - minViewSize + 1);
+		Query view = new Query("V");
+		int variables = size + 1;
+		for (int i = 0; i < size; i++) {
+			// the first argument is an earlier variable, so the body is connected
+			int first = random.nextInt(i + 1);
+			view.atoms.add(new Atom("S"
+					+ (random.nextInt(numberOfOtherRelations()) + 1), "A"
+					+ (first + 1), "A" + (random.nextInt(variables) + 1)));
+		}
+		chooseHead(view, viewDistinguishedRatio);
+		addConditions(view);
+		return view;
+	}
+
+	/**
+	 * Returns the number of relations of the views that do not overlap the
+	 * query.
+	 */
+	private int numberOfOtherRelations() {
+		return Math.max(1, relations <= 0 ? subgoals : relations);
+	}
+
+	/**
+	 * Called for every query and view. Makes every variable distinguished
+	 * with the given ratio, at least one.
+	 */
+	private void chooseHead(Query query, double ratio) {
+		List<String> variables = query.getVariables();
+		for (String variable : variables) {
+			if (random.nextDouble() < ratio) {
+				query.head.add(variable);
+			}
+		}
+		if (query.head.isEmpty()) {
+			query.head.add(variables.get(random.nextInt(variables.size())));
+		}
+	}
+
+	/**
+	 * Called for every query and view. Replaces existential variables by
+	 * constants and compares distinguished variables with constants, with
+	 * the ratios of the generator. Every subgoal keeps at least one variable,
+	 * so that a fragment of a single subgoal still has a head.
+	 */
+	private void addConditions(Query query) {
+		if (constantRatio > 0) {
+			for (String variable : query.getVariables()) {
+				if (!query.head.contains(variable)
+						&& random.nextDouble() < constantRatio
+						&& !query.isOnlyVariable(variable)) {
+					query.replace(variable, String.valueOf(random.nextInt(9) + 1));
+				}
+			}
+		}
+		if (comparisonRatio > 0) {
+			for (String variable : query.head) {
+				if (random.nextDouble() < comparisonRatio) {
+					query.comparisons.add(new String[] { variable,
+							COMPARISONS[random.nextInt(COMPARISONS.length)],
+							String.valueOf(random.nextInt(9) + 1) });
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the next rank of the distribution, in (0, 1].
+	 */
+	double nextRank() {
+		if (rankDistribution.equals("zipf")) {
+			// rank 1/k with probability proportional to 1/k, k = 1..10
+			double u = random.nextDouble() * 2.9289682539682538; // H(10)
+			int k = 1;
+			for (double sum = 1; sum < u && k < 10; sum += 1.0 / ++k) {
+			}
+			return 1.0 / k;
+		} else if (rankDistribution.equals("normal")) {
+			double rank = 0.5 + 0.15 * random.nextGaussian();
+			return Math.min(1, Math.max(0.01, rank));
+		} else if (rankDistribution.equals("tiers")) {
+			return (random.nextInt(3) + 1) / 3.0;
+		}
+		return (random.nextInt(100) + 1) / 100.0;
+	}
+
+	/**
+	 * Returns the rank with at most three decimals.
+	 */
+	private static String formatRank(double rank) {
+		String text = String.format(Locale.ROOT, "%.3f", rank);
+		while (text.endsWith("0") && !text.endsWith(".0")) {
+			text = text.substring(0, text.length() - 1);
+		}
+		return text;
+	}
+
+	/**
+	 * Escapes the characters of the text that are special in XML.
+	 */
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">",
+				"&gt;");
+	}
+
+	private static double ratio(double ratio) {
+		if (!(ratio >= 0 && ratio <= 1)) {
+			throw new IllegalArgumentException("Not a ratio: " + ratio);
+		}
+		return ratio;
+	}
+
+	private static boolean contains(String[] values, String value) {
+		for (String v : values) {
+			if (v.equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Class Atom is a binary subgoal; an argument is a variable or a numerical
+	 * constant.
+	 */
+	static class Atom {
+
+		String relation;
+
+		String[] args;
+
+		Atom(String relation, String first, String second) {
+			this.relation = relation;
+			this.args = new String[] { first, second };
+		}
+
+		boolean shares(Atom other) {
+			for (String arg : args) {
+				if (!Query.isConstant(arg)
+						&& (arg.equals(other.args[0]) || arg
+								.equals(other.args[1]))) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Class Query is a generated query or view, written in Datalog or SQL.
+	 */
+	static class Query {
+
+		String name;
+
+		List<String> head = new ArrayList<String>();
+
+		List<Atom> atoms = new ArrayList<Atom>();
+
+		/** comparisons: variable, comparison, constant */
+		List<String[]> comparisons = new ArrayList<String[]>();
+
+		Query(String name) {
+			this.name = name;
+		}
+
+		static boolean isConstant(String arg) {
+			return Character.isDigit(arg.charAt(0));
+		}
+
+		/** the variables of the body, in the order of their first use */
+		List<String> getVariables() {
+			Set<String> variables = new LinkedHashSet<String>();
+			for (Atom atom : atoms) {
+				for (String arg : atom.args) {
+					if (!isConstant(arg)) {
+						variables.add(arg);
+					}
+				}
+			}
+			return new ArrayList<String>(variables);
+		}
+
+		/** the relations of the body, without duplicates */
+		Set<String> getRelations() {
+			Set<String> result = new LinkedHashSet<String>();
+			for (Atom atom : atoms) {
+				result.add(atom.relation);
+			}
+			return result;
+		}
+
+		/** true if the variable is the only one of one of the subgoals */
+		boolean isOnlyVariable(String variable) {
+			for (Atom atom : atoms) {
+				boolean other = false;
+				boolean contains = false;
+				for (String arg : atom.args) {
+					if (arg.equals(variable)) {
+						contains = true;
+					} else if (!isConstant(arg)) {
+						other = true;
+					}
+				}
+				if (contains && !other) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void replace(String variable, String constant) {
+			for (Atom atom : atoms) {
+				for (int i = 0; i < atom.args.length; i++) {
+					if (atom.args[i].equals(variable)) {
+						atom.args[i] = constant;
+					}
+				}
+			}
+		}
+
+		/** e.g. Q(X0, X2) :- R1(X0, X1), R2(X1, X2), X0 < 5 */
+		String toDatalog() {
+			StringBuilder text = new StringBuilder(name).append("(");
+			for (int i = 0; i < head.size(); i++) {
+				text.append(i > 0 ? ", " : "").append(head.get(i));
+			}
+			text.append(") :- ");
+			for (int i = 0; i < atoms.size(); i++) {
+				Atom atom = atoms.get(i);
+				text.append(i > 0 ? ", " : "").append(atom.relation)
+						.append("(").append(atom.args[0]).append(", ")
+						.append(atom.args[1]).append(")");
+			}
+			for (String[] comparison : comparisons) {
+				text.append(", ").append(comparison[0]).append(" ").append(
+						comparison[1]).append(" ").append(comparison[2]);
+			}
+			return text.toString();
+		}
+
+		/**
+		 * e.g. SELECT R1.c1, R2.c2 FROM R1 AS R1, R2 AS R2 WHERE R1.c2 =
+		 * R2.c1; the attributes of every relation are c1 and c2. The alias of
+		 * a relation is its name, and R1x2 if it is used a second time; the
+		 * SQL parser does not accept underscores in names.
+		 */
+		String toSQL() {
+			Map<String, String> columns = new LinkedHashMap<String, String>();
+			List<String> conditions = new ArrayList<String>();
+			Map<String, Integer> occurrences = new LinkedHashMap<String, Integer>();
+			StringBuilder from = new StringBuilder();
+			for (int i = 0; i < atoms.size(); i++) {
+				Atom atom = atoms.get(i);
+				Integer occurrence = occurrences.get(atom.relation);
+				occurrence = occurrence == null ? 1 : occurrence + 1;
+				occurrences.put(atom.relation, occurrence);
+				String alias = occurrence == 1 ? atom.relation : atom.relation
+						+ "x" + occurrence;
+				from.append(i > 0 ? ", " : "").append(atom.relation).append(
+						" AS ").append(alias);
+				for (int j = 0; j < 2; j++) {
+					String column = alias + ".c" + (j + 1);
+					if (isConstant(atom.args[j])) {
+						conditions.add(column + " = " + atom.args[j]);
+					} else if (columns.containsKey(atom.args[j])) {
+						conditions.add(column + " = "
+								+ columns.get(atom.args[j]));
+					} else {
+						columns.put(atom.args[j], column);
+					}
+				}
+			}
+			for (String[] comparison : comparisons) {
+				conditions.add(columns.get(comparison[0]) + " "
+						+ comparison[1] + " " + comparison[2]);
+			}
+
+			StringBuilder text = new StringBuilder("SELECT ");
+			for (int i = 0; i < head.size(); i++) {
+				text.append(i > 0 ? ", " : "").append(columns.get(head.get(i)));
+			}
+			text.append(" FROM ").append(from);
+			for (int i = 0; i < conditions.size(); i++) {
+				text.append(i > 0 ? " AND " : " WHERE ").append(
+						conditions.get(i));
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * Generates test cases and writes them to PREFIX-testcases.xml,
+	 * PREFIX-preferences.xml and PREFIX.loir.
+	 *
+	 * @param args
+	 *            [-shape chain|star|cycle|random] [-subgoals K] [-relations
+	 *            R] [-head RATIO] [-views N] [-viewsize MIN-MAX] [-overlap
+	 *            RATIO] [-viewhead RATIO] [-constants RATIO] [-comparisons
+	 *            RATIO] [-ranks uniform|zipf|normal|tiers] [-domains
+	 *            rank,cost,...] [-testcases N] [-first ID] [-seed S] [-sql]
+	 *            [-o PREFIX]
+	 */
+	public static void main(String[] args) throws Exception {
+		String shape = "chain";
+		int subgoals = 4;
+		int relations = 0;
+		double head = 0.5;
+		int views = 1000;
+		int minViewSize = 1;
+		int maxViewSize = 3;
+		double overlap = 0.5;
+		double viewHead = 0.8;
+		double constants = 0;
+		double comparisons = 0;
+		String ranks = "uniform";
+		String[] domains = { "rank" };
+		int testcases = 1;
+		int firstID = 1;
+		long seed = 42;
+		boolean sql = false;
+		String prefix = "workload";
+
+		WorkloadGenerator generator = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-shape")) {
+					shape = args[++i];
+				} else if (args[i].equals("-subgoals")) {
+					subgoals = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-relations")) {
+					relations = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-head")) {
+					head = Double.parseDouble(args[++i]);
+				} else if (args[i].equals("-views")) {
+					views = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-viewsize")) {
+					String[] sizes = args[++i].split("-");
+					minViewSize = Integer.parseInt(sizes[0]);
+					maxViewSize = Integer.parseInt(sizes[sizes.length - 1]);
+				} else if (args[i].equals("-overlap")) {
+					overlap = Double.parseDouble(args[++i]);
+				} else if (args[i].equals("-viewhead")) {
+					viewHead = Double.parseDouble(args[++i]);
+				} else if (args[i].equals("-constants")) {
+					constants = Double.parseDouble(args[++i]);
+				} else if (args[i].equals("-comparisons")) {
+					comparisons = Double.parseDouble(args[++i]);
+				} else if (args[i].equals("-ranks")) {
+					ranks = args[++i];
+				} else if (args[i].equals("-domains")) {
+					domains = args[++i].split(",");
+				} else if (args[i].equals("-testcases")) {
+					testcases = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-first")) {
+					firstID = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-seed")) {
+					seed = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-sql")) {
+					sql = true;
+				} else if (args[i].equals("-o")) {
+					prefix = args[++i];
+				} else {
+					throw new IllegalArgumentException("Unknown option: "
+							+ args[i]);
+				}
+			}
+
+			generator = new WorkloadGenerator(seed);
+			generator.setQueryShape(shape, subgoals, relations, head);
+			generator.setCatalog(views, minViewSize, maxViewSize, overlap,
+					viewHead);
+			generator.setConditions(constants, comparisons);
+			generator.setRanks(ranks, domains);
+			generator.setSQL(sql);
+		} catch (RuntimeException e) {
+			System.out.println(e.getMessage());
+			System.out
+					.println("USAGE: java benchmark.WorkloadGenerator [-shape chain|star|cycle|random] [-subgoals K] [-relations R] [-head RATIO] [-views N] [-viewsize MIN-MAX] [-overlap RATIO] [-viewhead RATIO] [-constants RATIO] [-comparisons RATIO] [-ranks uniform|zipf|normal|tiers] [-domains rank,cost,...] [-testcases N] [-first ID] [-seed S] [-sql] [-o PREFIX]");
+			System.exit(1);
+		}
+
+		Writer testcasesOut = open(prefix + "-testcases.xml");
+		Writer preferencesOut = open(prefix + "-preferences.xml");
+		Writer compactOut = open(prefix + ".loir");
+		try {
+			generator.generate(firstID, testcases, testcasesOut,
+					preferencesOut, compactOut);
+		} finally {
+			testcasesOut.close();
+			preferencesOut.close();
+			compactOut.close();
+		}
+		System.out.println(testcases + " test cases of " + views
+				+ " views written to " + prefix + "-testcases.xml, " + prefix
+				+ "-preferences.xml and " + prefix + ".loir");
+	}
+
+	private static Writer open(String file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+				file), "UTF-8"));
+	}
+}
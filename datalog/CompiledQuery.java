@@ -0,0 +1,185 @@
+package datalog;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Class CompiledQuery is an immutable, array based form of a DatalogQuery
+ * (query or view) that answers the questions MCD formation asks about the
+ * variables of a query: whether a variable is a head or an existential
+ * variable, and which body predicates contain it.
+ *
+ * Every variable of the query gets a local index, i.e. its position in the
+ * sorted array of variable IDs. Head variables, existential variables and
+ * the predicates containing a variable are stored as bit sets over these
+ * indexes. Whether a subgoal can be mapped to a view predicate is still
+ * tested by Predicate.canBeMapped (see ViewIndex).
+ *
+ * The compiled form reflects the query at the time it was compiled.
+ * DatalogQuery drops it if the query is changed by one of its methods; the
+ * predicates and elements must not be changed directly afterwards.
+ */
+public class CompiledQuery {
+
+	/** number of body predicates */
+	private int numberOfPredicates;
+
+	/** sorted IDs of the head and body variables */
+	private int[] variableIds;
+
+	/** local indexes of the head variables */
+	private BitSet headVariables;
+
+	/** local indexes of the existential variables */
+	private BitSet existentialVariables;
+
+	/** for every local variable index, the predicates containing it */
+	private BitSet[] occurrences;
+
+	/**
+	 * CompiledQuery constructor
+	 *
+	 * @param query
+	 *            query or view to be compiled
+	 */
+	public CompiledQuery(DatalogQuery query) {
+		List<Predicate> predicates = query.getPredicates();
+		numberOfPredicates = predicates.size();
+
+		// element IDs of the variables
+		int numberOfArguments = 0;
+		for (Predicate pred : predicates) {
+			numberOfArguments += pred.numberOfElements();
+		}
+		int[] ids = new int[numberOfArguments
+				+ query.getHeadVariables().size()];
+		int numberOfIds = 0;
+		for (Predicate pred : predicates) {
+			for (PredicateElement elem : pred.getElements()) {
+				if (!(elem instanceof Constant)) {
+					ids[numberOfIds++] = elem.getId();
+				}
+			}
+		}
+		for (Variable var : query.getHeadVariables()) {
+			ids[numberOfIds++] = var.getId();
+		}
+		variableIds = distinct(ids, numberOfIds);
+
+		headVariables = new BitSet(variableIds.length);
+		for (Variable var : query.getHeadVariables()) {
+			headVariables.set(variableIndex(var.getId()));
+		}
+
+		existentialVariables = new BitSet(variableIds.length);
+		occurrences = new BitSet[variableIds.length];
+		for (int v = 0; v < variableIds.length; v++) {
+			occurrences[v] = new BitSet(numberOfPredicates);
+		}
+
+		for (int i = 0; i < numberOfPredicates; i++) {
+			for (PredicateElement elem : predicates.get(i).getElements()) {
+				if (!(elem instanceof Constant)) {
+					int v = variableIndex(elem.getId());
+					occurrences[v].set(i);
+					if (!headVariables.get(v)) {
+						existentialVariables.set(v);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called by the constructor. Returns the sorted distinct values of the
+	 * first n entries of the array.
+	 *
+	 * @param ids
+	 *            array of IDs, will be sorted
+	 * @param n
+	 *            number of IDs in the array
+	 * @return sorted array without duplicates
+	 */
+	private static int[] distinct(int[] ids, int n) {
+		Arrays.sort(ids, 0, n);
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			if (size == 0 || ids[size - 1] != ids[i]) {
+				ids[size++] = ids[i];
+			}
+		}
+		return Arrays.copyOf(ids, size);
+	}
+
+	/**
+	 * Returns the number of body predicates.
+	 *
+	 * @return number of predicates
+	 */
+	public int numberOfPredicates() {
+		return numberOfPredicates;
+	}
+
+	/**
+	 * Returns the local index of a variable.
+	 *
+	 * @param id
+	 *            ID of the variable in the element symbol table
+	 * @return local index, -1 if the query has no such variable
+	 */
+	public int variableIndex(int id) {
+		int index = Arrays.binarySearch(variableIds, id);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * Same test as DatalogQuery.containsHeadVariable.
+	 *
+	 * @param elem
+	 *            element that is tested
+	 * @return true if the element is a variable in the head, false otherwise
+	 */
+	public boolean isHeadVariable(PredicateElement elem) {
+		if (!(elem instanceof Variable)) {
+			return false;
+		}
+		int index = variableIndex(elem.getId());
+		return index >= 0 && headVariables.get(index);
+	}
+
+	/**
+	 * Returns true if the element is a variable that occurs in the body but
+	 * not in the head, i.e. if it is contained in the list returned by
+	 * DatalogQuery.getExistentialVariables.
+	 *
+	 * @param elem
+	 *            element that is tested
+	 * @return true if the element is an existential variable
+	 */
+	public boolean isExistentialVariable(PredicateElement elem) {
+		if (!(elem instanceof Variable)) {
+			return false;
+		}
+		int index = variableIndex(elem.getId());
+		return index >= 0 && existentialVariables.get(index);
+	}
+
+	/**
+	 * Sets the bits of the body predicates that contain the variable in the
+	 * given mask.
+	 *
+	 * @param elem
+	 *            variable
+	 * @param mask
+	 *            mask of predicate positions that is extended
+	 */
+	public void addOccurrences(PredicateElement elem, BitSet mask) {
+		if (elem instanceof Variable) {
+			int index = variableIndex(elem.getId());
+			if (index >= 0) {
+				mask.or(occurrences[index]);
+			}
+		}
+	}
+}
@@ -2,7 +2,12 @@ package datalog;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -21,6 +26,9 @@ public class DatalogQuery {
 	/** name of the Datalog query, i.e. name of head predicate */
 	private String name;
 
+	/** ID of the name in the relation symbol table, -1 if not interned yet */
+	private int nameId = -1;
+
 	/** head variables */
 	private List<Variable> headVariables;
 
@@ -29,6 +37,18 @@ public class DatalogQuery {
 
 	/** interpreted predicates of the body */
 	private List<InterpretedPredicate> interpretedPredicates;
+
+	/**
+	 * position of each predicate in the body, built on first use; volatile
+	 * because rewritings may be computed by several threads
+	 */
+	private volatile Map<Predicate, Integer> predicateIndexes;
+
+	/**
+	 * compiled form of the query, built on first use and dropped when the
+	 * query is changed; volatile for the same reason as predicateIndexes
+	 */
+	private volatile CompiledQuery compiled;
 	
 	/** Enrichment with preferences !
 	 * Rank of the view 
@@ -78,6 +98,8 @@ public class DatalogQuery {
 	 */
 	public void setName(String name) {
 		this.name = name;
+		this.nameId = -1;
+		this.compiled = null;
 	}
 
 	/**
@@ -89,6 +111,19 @@ public class DatalogQuery {
 		return this.name;
 	}
 
+	/**
+	 * Returns the ID of the query name in the relation symbol table, i.e. the
+	 * same ID as the name of a predicate that refers to the view.
+	 * 
+	 * @return ID of the Datalog query name
+	 */
+	public int getNameId() {
+		if (nameId < 0) {
+			nameId = SymbolTable.relations().intern(name);
+		}
+		return nameId;
+	}
+
 	/**
 	 * Adds a head variable to Datalog query.
 	 * 
@@ -97,6 +132,7 @@ public class DatalogQuery {
 	 */
 	public void addHeadVariable(Variable var) {
 		headVariables.add(var);
+		compiled = null;
 	}
 
 	/**
@@ -153,6 +189,49 @@ public class DatalogQuery {
 	 */
 	public void setPredicates(List<Predicate> preds) {
 		this.predicates = preds;
+		this.predicateIndexes = null;
+		this.compiled = null;
+	}
+
+	/**
+	 * Returns the position of the predicate in the body of the Datalog query.
+	 * Predicates are compared by reference, so the position is a stable index
+	 * of a query subgoal that can be used in bit masks of covered subgoals.
+	 * 
+	 * @param pred
+	 *            predicate of the body
+	 * @return position of the predicate, -1 if it is not part of the body
+	 */
+	public int indexOfPredicate(Predicate pred) {
+		Map<Predicate, Integer> indexes = predicateIndexes;
+		if (indexes == null || indexes.size() != predicates.size()) {
+			indexes = new IdentityHashMap<Predicate, Integer>();
+			for (int i = 0; i < predicates.size(); i++) {
+				indexes.put(predicates.get(i), i);
+			}
+			predicateIndexes = indexes;
+		}
+		Integer index = indexes.get(pred);
+		if (index == null) {
+			return -1;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the compiled form of the Datalog query, which is built on first
+	 * use. The predicates and elements of the query must not be changed
+	 * directly once the compiled form is used.
+	 * 
+	 * @return compiled query
+	 */
+	public CompiledQuery getCompiled() {
+		CompiledQuery result = compiled;
+		if (result == null) {
+			result = new CompiledQuery(this);
+			compiled = result;
+		}
+		return result;
 	}
 
 	/**
@@ -179,6 +258,8 @@ public class DatalogQuery {
 	 */
 	public void addPredicate(Predicate predicate) {
 		predicates.add(predicate);
+		predicateIndexes = null;
+		compiled = null;
 	}
 
 	/**
@@ -198,22 +279,19 @@ public class DatalogQuery {
 	 * @return list of existential variables
 	 */
 	public List<Variable> getExistentialVariables() {
-		List<Variable> vars = new ArrayList<Variable>();
-		List<Variable> existentVars = new ArrayList<Variable>();
+		Set<Variable> head = new HashSet<Variable>(headVariables);
+		Set<Variable> existentVars = new LinkedHashSet<Variable>();
 
-		// collect all variables
 		for (Predicate pred : predicates) {
-			vars.addAll(pred.getVariables());
-		}
-
-		for (Variable var : vars) {
-			// variable is not contained in the head and not already
-			// in the list of existential variables
-			if (!headVariables.contains(var) && (!existentVars.contains(var))) {
-				existentVars.add(var);
+			for (Variable var : pred.getVariables()) {
+				// variable is not contained in the head, the set ignores
+				// variables already in the list of existential variables
+				if (!head.contains(var)) {
+					existentVars.add(var);
+				}
 			}
 		}
-		return existentVars;
+		return new ArrayList<Variable>(existentVars);
 	}
 
 	/**
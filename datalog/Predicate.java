@@ -1,11 +1,7 @@
 package datalog;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-
-import minicon.MCD;
 
 /**
  * Class predicate represents an body element of a datalog query that is NOT a
@@ -19,20 +15,19 @@ import minicon.MCD;
  */
 public class Predicate {
 	
-	//////
-	/** C.BA - "Sorted" Coverage domain 2014 - updated 2015 */
-	//private List<DatalogQuery> sortedCoverageDomain;
-	
-	// if a view belongs to the key set, this concrete service is in this abstract serv. cov domain
-	// Each view of the cov domain is associated to a list of MCD (according to the mappings)
-	private LinkedHashMap <DatalogQuery, List<MCD>> coverageDomain;
-	
-	//////
-	
 	/** predicate name */
 	public String name;
 	//private String name;
 
+	/**
+	 * name the ID has been interned for; volatile and written after the ID so
+	 * that a thread seeing the name also sees its ID
+	 */
+	private volatile String idName;
+
+	/** ID of the name in the relation symbol table */
+	private int nameId;
+
 	/** both, predicate variables and constants */
 	private List<PredicateElement> elements;
 
@@ -55,6 +50,21 @@ public class Predicate {
 		this.variables = new ArrayList<Variable>();
 	}
 
+	/**
+	 * Returns the ID of the predicate name in the relation symbol table. The
+	 * name is a public field and may be renamed, so the ID is interned again if
+	 * the name has changed since the last call.
+	 * 
+	 * @return ID of the predicate name
+	 */
+	public int getNameId() {
+		if (idName != name) {
+			nameId = SymbolTable.relations().intern(name);
+			idName = name;
+		}
+		return nameId;
+	}
+
 	/**
 	 * The method takes a list of PredicateElement objects and will add them to
 	 * the list of elements and to their relevant list. Elements of type
@@ -209,7 +219,7 @@ public class Predicate {
 
 		boolean canBeMapped = true;
 
-		if ((this.name.equals(pred.name))
+		if ((this.getNameId() == pred.getNameId())
 				&& (this.numberOfElements() == pred.numberOfElements())) {
 
 			List<PredicateElement> elemList = pred.getElements();
@@ -271,41 +281,5 @@ public class Predicate {
 		val = val.replaceFirst(",", "");
 		return val;
 	}
-	
-	/** C.BA -  setter and getter of coverageDomain */
-			
-	public void setCoverageDomain (List<DatalogQuery> coverageDomain){
-		this.coverageDomain = new LinkedHashMap <DatalogQuery, List<MCD>>();
-		for (DatalogQuery subgoal: coverageDomain){
-			this.coverageDomain.put(subgoal, null);
-		}
-	}
-	
-	public List<DatalogQuery> getCoverageDomain (){
-		List<DatalogQuery> result = new ArrayList<DatalogQuery>();
-		Set<DatalogQuery> keySet = this.coverageDomain.keySet();
-		
-		for (DatalogQuery query: keySet){
-			result.add(query);
-		}
-		return result;
-	}
-	
-	public boolean isCoverageDomainProcessed (){
-		return this.coverageDomain != null; 
-	}
-	
-	public boolean isMCDProcessed (DatalogQuery view){
-		return this.coverageDomain.get(view) != null;
-	}
-	
-	public void setMCDsRelatedToView (DatalogQuery view, List<MCD> mcds){
-		this.coverageDomain.put(view, mcds);
-	}
-	
-	public List<MCD> getMCDsRelatedToView (DatalogQuery view){
-		return this.coverageDomain.get(view);
-	}
-	
 
 }
\ No newline at end of file
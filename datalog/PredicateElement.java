@@ -12,6 +12,15 @@ public class PredicateElement {
 	/** name (value) of predicate element */
 	public String name;
 
+	/**
+	 * name the ID has been interned for; volatile and written after the ID so
+	 * that a thread seeing the name also sees its ID
+	 */
+	private volatile String idName;
+
+	/** ID of the name in the element symbol table */
+	private int id;
+
 	/**
 	 * PredicateElement constructor
 	 * 
@@ -30,10 +39,40 @@ public class PredicateElement {
 	}
 
 	/**
-	 * Overwrites Object method. Returns true if names are equal.
+	 * Returns the ID of the element name in the element symbol table. The name
+	 * is a public field and may be renamed, so the ID is interned again if the
+	 * name has changed since the last call.
+	 * 
+	 * @return ID of the name
+	 */
+	public int getId() {
+		if (idName != name) {
+			id = SymbolTable.elements().intern(name);
+			idName = name;
+		}
+		return id;
+	}
+
+	/**
+	 * Overwrites Object method. Returns true if names are equal, i.e. if both
+	 * elements have the same ID. Returns false for objects that are not
+	 * predicate elements.
 	 */
 	public boolean equals(Object elem) {
-		return this.name.equals(((PredicateElement) elem).name);
+		if (this == elem) {
+			return true;
+		}
+		if (!(elem instanceof PredicateElement)) {
+			return false;
+		}
+		return getId() == ((PredicateElement) elem).getId();
+	}
+
+	/**
+	 * Overwrites Object method. Consistent with equals, i.e. based on the ID.
+	 */
+	public int hashCode() {
+		return getId();
 	}
 
 }
@@ -0,0 +1,102 @@
+package datalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class SymbolTable interns symbols, i.e. assigns a dense int ID to every
+ * distinct String. Two symbols have the same ID if and only if they are equal,
+ * so IDs can be compared with == and used as indexes of primitive arrays.
+ *
+ * There is one table for the names of predicate elements (variables and
+ * constants) and one for the names of relations (predicates and views). IDs
+ * are never released, they stay valid for the lifetime of the program. The
+ * tables can be used by several threads at the same time.
+ */
+public class SymbolTable {
+
+	/** table of variable and constant names */
+	private static final SymbolTable ELEMENTS = new SymbolTable();
+
+	/** table of predicate and view names */
+	private static final SymbolTable RELATIONS = new SymbolTable();
+
+	/** ID of every symbol */
+	private ConcurrentHashMap<String, Integer> ids;
+
+	/** symbol of every ID, i.e. the ID is the position in the list */
+	private List<String> symbols;
+
+	/**
+	 * SymbolTable constructor
+	 */
+	public SymbolTable() {
+		ids = new ConcurrentHashMap<String, Integer>();
+		symbols = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the table of variable and constant names.
+	 *
+	 * @return symbol table of predicate elements
+	 */
+	public static SymbolTable elements() {
+		return ELEMENTS;
+	}
+
+	/**
+	 * Returns the table of predicate and view names.
+	 *
+	 * @return symbol table of relations
+	 */
+	public static SymbolTable relations() {
+		return RELATIONS;
+	}
+
+	/**
+	 * Returns the ID of the symbol. A new ID is assigned if the symbol has not
+	 * been interned before.
+	 *
+	 * @param symbol
+	 *            symbol to be interned
+	 * @return ID of the symbol
+	 */
+	public int intern(String symbol) {
+		Integer id = ids.get(symbol);
+		if (id != null) {
+			return id;
+		}
+
+		synchronized (this) {
+			id = ids.get(symbol);
+			if (id == null) {
+				id = symbols.size();
+				symbols.add(symbol);
+				ids.put(symbol, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the symbol of the ID.
+	 *
+	 * @param id
+	 *            ID returned by intern
+	 * @return symbol of the ID
+	 */
+	public synchronized String symbol(int id) {
+		return symbols.get(id);
+	}
+
+	/**
+	 * Returns the number of interned symbols. Every ID is smaller than this
+	 * number.
+	 *
+	 * @return number of symbols
+	 */
+	public synchronized int size() {
+		return symbols.size();
+	}
+}
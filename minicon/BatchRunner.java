@@ -0,0 +1,512 @@
+package minicon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import preference.Organiser;
+import preference.PreferenceProfile;
+import preference.PreferenceStore;
+import preference.RankTierIndex;
+import preference.RewritingScore;
+import datalog.DatalogQuery;
+
+/**
+ * Class BatchRunner rewrites many test cases in one JVM, instead of starting
+ * MiniConPref or MiniCon once for every test case.
+ *
+ * The test case file is indexed once (see TestCaseCatalog) and the
+ * preferences file is loaded once (see PreferenceStore), views a preference
+ * does not rank get a default rank, 0 unless -defaultRank is given. The test cases, all
+ * of them or the given ids, are then run in parallel by a fixed number of
+ * workers; each run only reads the catalog and the store and builds its own
+ * query, views and organiser, so the runs do not share mutable state.
+ *
+ * For every test case a results file ID.txt is written to the output
+ * directory, with the rewritings, their number and the time of every phase:
+ * parse (reading and parsing the test case), then for MiniConPref organise
+ * (view index and rank tiers) and rewrite (MCDs formed and combined on the
+ * fly), or for MiniCon form and combine, and finally write. A summary of all
+ * runs, in the order of the ids, is printed and written to summary.txt.
+ *
+ * Every test case is a request of MiniConMetrics, whose MBean is registered
+ * by main, so the engine metrics of a batch can be watched with JMX.
+ */
+public class BatchRunner {
+
+	/** test cases */
+	private TestCaseCatalog testcases;
+
+	/** preferences, null to run MiniCon without preferences */
+	private PreferenceStore preferences;
+
+	/** directory of the results files */
+	private File outputDirectory;
+
+	/** number of rewritings of every test case, all by default */
+	private long numberOfRequiredRewritings = Long.MAX_VALUE;
+
+	/** score of the best rewritings, null for the rank tier order */
+	private RewritingScore score;
+
+	/** true for the branch and bound search of the best rewritings */
+	private boolean depthFirst;
+
+	/**
+	 * BatchRunner constructor
+	 *
+	 * @param testcases
+	 *            catalog of the test cases
+	 * @param preferences
+	 *            preferences of the test cases, null to run MiniCon
+	 * @param outputDirectory
+	 *            directory of the results files, created if necessary
+	 */
+	public BatchRunner(TestCaseCatalog testcases, PreferenceStore preferences,
+			File outputDirectory) {
+		this.testcases = testcases;
+		this.preferences = preferences;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Sets the number of rewritings of every test case.
+	 *
+	 * @param numberOfRequiredRewritings
+	 *            maximal number of rewritings
+	 */
+	public void setNumberOfRequiredRewritings(long numberOfRequiredRewritings) {
+		this.numberOfRequiredRewritings = numberOfRequiredRewritings;
+	}
+
+	/**
+	 * Sets the score of the best rewritings, as in MiniConPref.
+	 *
+	 * @param score
+	 *            aggregation of the view ranks, null for the order of the rank
+	 *            tiers
+	 * @param depthFirst
+	 *            true for the branch and bound search
+	 */
+	public void setScore(RewritingScore score, boolean depthFirst) {
+		this.score = score;
+		this.depthFirst = depthFirst;
+	}
+
+	/**
+	 * Runs the test cases with the given number of workers and writes their
+	 * results files. A test case that fails does not stop the others; its
+	 * error is written to its results file and to the summary.
+	 *
+	 * @param ids
+	 *            ids of the test cases, in the order of the summary
+	 * @param workers
+	 *            number of test cases run at the same time
+	 * @return result of every test case, in the order of the ids
+	 * @throws IOException
+	 *             if the output directory cannot be created
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for the workers
+	 */
+	public List<Result> run(List<String> ids, int workers) throws IOException,
+			InterruptedException {
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Cannot create directory " + outputDirectory);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		List<Result> results = new ArrayList<Result>();
+		try {
+			List<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for (final String id : ids) {
+				futures.add(executor.submit(new Callable<Result>() {
+					public Result call() {
+						return run(id);
+					}
+				}));
+			}
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					// run catches the errors of a test case
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return results;
+	}
+
+	/**
+	 * Called by a worker. Runs one test case and writes its results file.
+	 *
+	 * @param id
+	 *            id of the test case
+	 * @return result of the test case
+	 */
+	private Result run(String id) {
+		Result result = new Result(id);
+		List<Rewriting> rewritings = new ArrayList<Rewriting>();
+		RequestMetrics request = MiniConMetrics.begin("testcase " + id);
+		try {
+			long start = System.nanoTime();
+			request.startPhase(MiniConMetrics.PARSE);
+			TestCase testcase = testcases.getTestCase(id);
+			if (testcase == null) {
+				throw new IllegalArgumentException("No test case " + id);
+			}
+			DatalogQuery query = parse(testcase.getQuery());
+			List<DatalogQuery> views = new ArrayList<DatalogQuery>();
+			for (String view : testcase.getViews()) {
+				views.add(parse(view));
+			}
+			result.query = query;
+			request.endPhase();
+			result.addPhase("parse", System.nanoTime() - start);
+
+			if (preferences == null) {
+				runMiniCon(query, views, result, rewritings);
+			} else {
+				runMiniConPref(id, query, views, result, rewritings);
+			}
+		} catch (Exception e) {
+			result.error = e.toString();
+		}
+
+		long start = System.nanoTime();
+		request.startPhase(MiniConMetrics.OUTPUT);
+		try {
+			writeResults(result, rewritings);
+		} catch (IOException e) {
+			if (result.error == null) {
+				result.error = e.toString();
+			}
+		}
+		result.addPhase("write", System.nanoTime() - start);
+		MiniConMetrics.end(request);
+		return result;
+	}
+
+	/**
+	 * Called by run. Parses a query or a view of a test case.
+	 *
+	 * @param datalog
+	 *            Datalog string
+	 * @return parsed query
+	 * @throws IllegalArgumentException
+	 *             if the string cannot be parsed
+	 */
+	private static DatalogQuery parse(String datalog) {
+		DatalogQuery query = InputHandler.parse(datalog);
+		if (query == null) {
+			throw new IllegalArgumentException("Cannot parse " + datalog);
+		}
+		return query;
+	}
+
+	/**
+	 * Called by run. Rewrites the query with MiniCon.
+	 *
+	 * @param query
+	 *            query of the test case
+	 * @param views
+	 *            views of the test case
+	 * @param result
+	 *            result of the test case, gets the counts and times
+	 * @param rewritings
+	 *            gets the rewritings
+	 */
+	private void runMiniCon(DatalogQuery query, List<DatalogQuery> views,
+			Result result, List<Rewriting> rewritings) {
+		MiniCon mc = new MiniCon(query, views);
+		mc.setParallelism(1); // the test cases run in parallel
+		mc.startMiniCon();
+
+		Iterator<Rewriting> iterator = mc.getRewritings().iterator();
+		while (rewritings.size() < numberOfRequiredRewritings
+				&& iterator.hasNext()) {
+			rewritings.add(iterator.next());
+		}
+		result.mcds = mc.getNumberOfMCDs();
+		result.rewritings = rewritings.size();
+		result.addPhase("form", mc.getFormationTime());
+		result.addPhase("combine", mc.getCombinationTime());
+	}
+
+	/**
+	 * Called by run. Rewrites the query with the organiser, as MiniConPref
+	 * does, with the preference that has the id of the test case.
+	 *
+	 * @param id
+	 *            id of the test case and of the preference
+	 * @param query
+	 *            query of the test case
+	 * @param views
+	 *            views of the test case
+	 * @param result
+	 *            result of the test case, gets the counts and times
+	 * @param rewritings
+	 *            gets the rewritings
+	 */
+	private void runMiniConPref(String id, DatalogQuery query,
+			List<DatalogQuery> views, Result result, List<Rewriting> rewritings) {
+		int prefID = Integer.parseInt(id.trim());
+		// getProfile never returns null, a missing preference would rank no view
+		if (!preferences.getPreferenceIds().contains(prefID)) {
+			throw new IllegalArgumentException("No preference " + id);
+		}
+		PreferenceProfile profile = preferences.getProfile(prefID);
+
+		long start = System.nanoTime();
+		MiniConMetrics.startPhase(MiniConMetrics.COMBINATION);
+		Organiser organiser = new Organiser(new RankTierIndex(new ViewIndex(
+				views), profile), query);
+		long organised = System.nanoTime();
+		result.addPhase("organise", organised - start);
+
+		if (score == null) {
+			rewritings.addAll(organiser
+					.getDesiredNumberOfRewritings(numberOfRequiredRewritings));
+		} else if (depthFirst) {
+			rewritings.addAll(organiser.getBoundedRewritings(
+					numberOfRequiredRewritings, score));
+		} else {
+			rewritings.addAll(organiser.getBestRewritings(
+					numberOfRequiredRewritings, score));
+		}
+		result.rewritings = rewritings.size();
+		MiniConMetrics.endPhase();
+		result.addPhase("rewrite", System.nanoTime() - organised);
+	}
+
+	/**
+	 * Called by run. Writes the results file of the test case.
+	 *
+	 * @param result
+	 *            result of the test case
+	 * @param rewritings
+	 *            rewritings of the test case
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	private void writeResults(Result result, List<Rewriting> rewritings)
+			throws IOException {
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(outputDirectory, result.id
+						+ ".txt")), "UTF-8"));
+		try {
+			out.println("Test case: " + result.id);
+			if (result.query != null) {
+				out.println("Query: " + result.query);
+			}
+			if (result.error != null) {
+				out.println("Error: " + result.error);
+			} else {
+				if (result.mcds >= 0) {
+					out.println("MCDs: " + result.mcds);
+				}
+				out.println("Rewritings: " + result.rewritings);
+				for (int i = 0; i < result.phases.size(); i++) {
+					out.println("Time " + result.phases.get(i) + ": "
+							+ result.times.get(i) / 1000000.0 + " ms");
+				}
+				out.println();
+				for (Rewriting rewriting : rewritings) {
+					out.println(rewriting);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Cannot write results of test case "
+					+ result.id);
+		}
+	}
+
+	/**
+	 * Class Result holds the outcome of one test case: the number of
+	 * rewritings, the time of every phase, or the error.
+	 */
+	public static class Result {
+
+		/** id of the test case */
+		private String id;
+
+		/** query of the test case, null if it could not be read */
+		private DatalogQuery query;
+
+		/** number of MCDs, -1 if the engine does not report it */
+		private int mcds = -1;
+
+		/** number of rewritings */
+		private int rewritings;
+
+		/** names of the phases, in the order in which they ran */
+		private List<String> phases = new ArrayList<String>();
+
+		/** time of every phase, in nanoseconds */
+		private List<Long> times = new ArrayList<Long>();
+
+		/** error of the test case, null if it ran */
+		private String error;
+
+		Result(String id) {
+			this.id = id;
+		}
+
+		void addPhase(String phase, long time) {
+			phases.add(phase);
+			times.add(time);
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public int getRewritings() {
+			return rewritings;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * Returns the time of the phase.
+		 *
+		 * @param phase
+		 *            name of the phase
+		 * @return time in nanoseconds, 0 if the phase did not run
+		 */
+		public long getTime(String phase) {
+			int i = phases.indexOf(phase);
+			return i < 0 ? 0 : times.get(i);
+		}
+
+		/**
+		 * Overwrites Object method. Returns a line of the summary.
+		 */
+		public String toString() {
+			StringBuilder line = new StringBuilder(id);
+			if (error != null) {
+				return line.append("\terror: ").append(error).toString();
+			}
+			line.append("\t").append(rewritings).append(" rewritings");
+			for (int i = 0; i < phases.size(); i++) {
+				line.append("\t").append(phases.get(i)).append(" ").append(
+						times.get(i) / 1000000.0).append(" ms");
+			}
+			return line.toString();
+		}
+	}
+
+	/**
+	 * Runs a batch of test cases.
+	 *
+	 * @param args
+	 *            [-t WORKERS] [-o DIRECTORY] [-f TESTCASES.XML] [-prefs
+	 *            PREFERENCES.XML] [-defaultRank RANK] [-n N] [-s
+	 *            sum|min|product [-dfs]] [-minicon] [ID ...]; without ids,
+	 *            every test case of the file is run. -defaultRank is the rank
+	 *            of the views a preference does not rank, 0 by default, NaN
+	 *            to fail on them. -minicon runs MiniCon without preferences
+	 *            instead of MiniConPref.
+	 */
+	public static void main(String[] args) throws Exception {
+		int workers = Runtime.getRuntime().availableProcessors();
+		String outputDirectory = "results";
+		String testcaseFile = "testcases.xml";
+		String preferencesFile = "preferences.xml";
+		double defaultRank = PreferenceStore.DEFAULT_RANK;
+		long numberOfRequiredRewritings = Long.MAX_VALUE;
+		RewritingScore score = null;
+		boolean depthFirst = false;
+		boolean miniCon = false;
+		List<String> ids = new ArrayList<String>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-t")) {
+					workers = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-o")) {
+					outputDirectory = args[++i];
+				} else if (args[i].equals("-f")) {
+					testcaseFile = args[++i];
+				} else if (args[i].equals("-prefs")) {
+					preferencesFile = args[++i];
+				} else if (args[i].equals("-defaultRank")) {
+					defaultRank = Double.parseDouble(args[++i]);
+				} else if (args[i].equals("-n")) {
+					numberOfRequiredRewritings = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-s")) {
+					score = RewritingScore.forName(args[++i]);
+					if (score == null) {
+						throw new IllegalArgumentException("Unknown score: "
+								+ args[i]);
+					}
+				} else if (args[i].equals("-dfs")) {
+					depthFirst = true;
+				} else if (args[i].equals("-minicon")) {
+					miniCon = true;
+				} else if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException("Unknown option: "
+							+ args[i]);
+				} else {
+					ids.add(args[i]);
+				}
+			}
+			if (workers < 1) {
+				throw new IllegalArgumentException("Workers must be positive: "
+						+ workers);
+			}
+		} catch (RuntimeException e) {
+			System.out.println(e.getMessage());
+			System.out
+					.println("USAGE: java minicon.BatchRunner [-t WORKERS] [-o DIRECTORY] [-f TESTCASES.XML] [-prefs PREFERENCES.XML] [-defaultRank RANK] [-n N] [-s sum|min|product [-dfs]] [-minicon] [ID ...]");
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		MiniConMetrics.register();
+		TestCaseCatalog testcases = TestCaseCatalog.open(testcaseFile);
+		PreferenceStore preferences = miniCon ? null : new PreferenceStore(
+				preferencesFile, defaultRank);
+		if (ids.isEmpty()) {
+			ids.addAll(testcases.getIds());
+		}
+
+		BatchRunner runner = new BatchRunner(testcases, preferences, new File(
+				outputDirectory));
+		runner.setNumberOfRequiredRewritings(numberOfRequiredRewritings);
+		runner.setScore(score, depthFirst);
+		List<Result> results = runner.run(ids, workers);
+
+		PrintWriter summary = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(outputDirectory, "summary.txt")),
+				"UTF-8"));
+		try {
+			for (Result result : results) {
+				System.out.println(result);
+				summary.println(result);
+			}
+		} finally {
+			summary.close();
+		}
+		System.out.println(results.size() + " test cases written to "
+				+ outputDirectory + ", done in: " + (System.nanoTime() - start)
+				/ 1000000.0 + " ms");
+	}
+}
@@ -1,22 +1,13 @@
 package minicon;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
+import javax.xml.stream.XMLStreamException;
 
 import converter.Converter;
 import converter.SQLQuery;
@@ -68,6 +59,9 @@ public class InputHandler {
 	/** remove redundandies from rewriting */
 	public static boolean removeRedundant = false;
 
+	/** number of threads used to form and combine the MCDs, 1 means sequential */
+	public static int parallelism = 1;
+
 	/** used to convert Datalog to SQL and v.v. */
 	private static Converter convert = new Converter();
 
@@ -95,7 +89,7 @@ public class InputHandler {
 				fileInput = true;
 				if (args.length <= i + 2) {
 					System.out
-							.println("\nwrong arguments! \n\nOptions:\n -v                 : verbose mode \n -sql               : SQL input \n -f FILENAME.XML ID : input file mode");
+							.println("\nwrong arguments! \n\nOptions:\n -v                 : verbose mode \n -sql               : SQL input \n -f FILENAME.XML ID : input file mode \n -p THREADS         : number of threads for MCDs");
 					return null;
 				} else {
 					fileName = args[i + 1];
@@ -110,6 +104,16 @@ public class InputHandler {
 			if ((args[i].equals(("-r")) || (args[i].equals("remove")))) {
 				removeRedundant = true;
 			}
+			// parallel combination of MCDs
+			if (args[i].equals("-p")) {
+				if (args.length <= i + 1) {
+					System.out
+							.println("\nwrong arguments! \n\nOptions:\n -p THREADS         : number of threads for MCDs");
+					return null;
+				} else {
+					parallelism = Integer.valueOf(args[i + 1]).intValue();
+				}
+			}
 		}
 
 		if (verbose) {
@@ -431,8 +435,9 @@ public class InputHandler {
 	}
 
 	/**
-	 * Handles Datalog XML file input. It reads in file and parser the XML
-	 * document to obtain the test case with the id provided as argument.
+	 * Handles Datalog XML file input. It reads the test case with the id
+	 * provided as argument from the XML document, using a TestCaseCatalog: only
+	 * the element of the test case is parsed, not the whole document.
 	 * 
 	 * The query String object and the list of views is then parsed by using method
 	 * parseInput which results in DatalogQuery objects. Using these objects a
@@ -448,52 +453,19 @@ public class InputHandler {
 
 		try {
 
-			DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory
-					.newInstance();
-			DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-			Document doc = docBuilder.parse(new File(testcaseFile));
-
-			// normalize text representation
-			doc.getDocumentElement().normalize();
-
-			NodeList testcases = doc.getDocumentElement().getElementsByTagName(
-					"testcase");
-
-			for (int i = 0; i < testcases.getLength(); i++) {
-
-				Node testcaseNode = testcases.item(i);
-
-				if (testcaseNode.getNodeType() == Node.ELEMENT_NODE) {
-
-					Element content = (Element) testcaseNode;
-					Node idNode = content.getElementsByTagName("id").item(0);
-					if (idNode.getTextContent().equals(testID)) {
-
-						Node queryElem = content.getElementsByTagName("query")
-								.item(0);
-						String queryStr = queryElem.getTextContent();
-
-						NodeList viewNodes = content
-								.getElementsByTagName("view");
-
-						List<String> viewsStr = new ArrayList<String>();
-						for (int j = 0; j < viewNodes.getLength(); j++) {
-							viewsStr.add(viewNodes.item(j).getTextContent());
-						}
-						return parseInput(queryStr, viewsStr);
-					}
-				}
+			TestCase testcase = TestCaseCatalog.open(testcaseFile).getTestCase(
+					testID);
+			if (testcase != null) {
+				return parseInput(testcase.getQuery(), testcase.getViews());
 			}
 
-		} catch (SAXParseException err) {
-			System.out.println("** Parsing error" + ", line "
-					+ err.getLineNumber() + ", uri " + err.getSystemId());
+		} catch (XMLStreamException err) {
+			System.out.println("** Parsing error"
+					+ (err.getLocation() == null ? "" : ", line "
+							+ err.getLocation().getLineNumber()) + ", uri "
+					+ testcaseFile);
 			System.out.println(" " + err.getMessage());
 
-		} catch (SAXException e) {
-			Exception x = e.getException();
-			((x == null) ? e : x).printStackTrace();
-
 		} catch (Throwable t) {
 			t.printStackTrace();
 		}
@@ -501,9 +473,9 @@ public class InputHandler {
 	}
 
 	/**
-	 * Handles schema definitions and SQL queries in an XML file. Reads in and
-	 * parses XML file to obtain a SQL test case that belongs to testID given as
-	 * argument.
+	 * Handles schema definitions and SQL queries in an XML file. Reads the SQL
+	 * test case that belongs to testID given as argument from the XML file,
+	 * using a TestCaseCatalog.
 	 * 
 	 * SQL input is parsed by using method handleSQLFileInput. This helper
 	 * method also converts SQL queries to Datalog queries and returns a MiniCon
@@ -519,66 +491,20 @@ public class InputHandler {
 
 		try {
 
-			DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory
-					.newInstance();
-			DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-			Document doc = docBuilder.parse(new File(testcaseFile));
-
-			// normalize text representation
-			doc.getDocumentElement().normalize();
-
-			NodeList testcases = doc.getDocumentElement().getElementsByTagName(
-					"testcase");
-
-			for (int i = 0; i < testcases.getLength(); i++) {
-
-				Node testcaseNode = testcases.item(i);
-
-				if (testcaseNode.getNodeType() == Node.ELEMENT_NODE) {
-
-					Element content = (Element) testcaseNode;
-					Node idNode = content.getElementsByTagName("id").item(0);
-					if (idNode.getTextContent().equals(testID)) {
-
-						Node schemaElem = content.getElementsByTagName(
-								"DBschema").item(0);
-						NodeList relations = schemaElem.getChildNodes();
-
-						List<String> relationsStr = new ArrayList<String>();
-						for (int j = 0; j < relations.getLength(); j++) {
-
-							if (relations.item(j).getNodeType() == Node.ELEMENT_NODE) {
-								relationsStr.add(relations.item(j)
-										.getTextContent());
-							}
-						}
-
-						Node queryElem = content.getElementsByTagName(
-								"SQLquery").item(0);
-						String queryStr = queryElem.getTextContent();
-
-						NodeList viewNodes = content
-								.getElementsByTagName("SQLview");
-
-						List<String> viewsStr = new ArrayList<String>();
-						for (int j = 0; j < viewNodes.getLength(); j++) {
-							viewsStr.add(viewNodes.item(j).getTextContent());
-						}
-						return handleSQLFileInput(relationsStr, queryStr,
-								viewsStr);
-					}
-				}
+			TestCase testcase = TestCaseCatalog.open(testcaseFile).getTestCase(
+					testID);
+			if (testcase != null) {
+				return handleSQLFileInput(testcase.getSchema(),
+						testcase.getSQLQuery(), testcase.getSQLViews());
 			}
 
-		} catch (SAXParseException err) {
-			System.out.println("** Parsing error" + ", line "
-					+ err.getLineNumber() + ", uri " + err.getSystemId());
+		} catch (XMLStreamException err) {
+			System.out.println("** Parsing error"
+					+ (err.getLocation() == null ? "" : ", line "
+							+ err.getLocation().getLineNumber()) + ", uri "
+					+ testcaseFile);
 			System.out.println(" " + err.getMessage());
 
-		} catch (SAXException e) {
-			Exception x = e.getException();
-			((x == null) ? e : x).printStackTrace();
-
 		} catch (Throwable t) {
 			t.printStackTrace();
 		}
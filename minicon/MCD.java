@@ -1,8 +1,11 @@
 package minicon;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 
+import datalog.CompiledQuery;
 import datalog.Constant;
 import datalog.DatalogQuery;
 import datalog.InterpretedPredicate;
@@ -22,9 +25,7 @@ import datalog.Variable;
  * 
  * The object 'mappings' of class MCDMappings contains the mapping from query
  * variables or constants to variables of the view -> variable mapping; mapping
- * from query variable or constant to constants of the view -> constant mapping;
- * mapping from head variables of the view to variables or constants of the
- * query -> rewriting mapping
+ * from query variable or constant to constants of the view -> constant mapping
  */
 public class MCD {
 
@@ -37,11 +38,29 @@ public class MCD {
 	/** view object */
 	protected DatalogQuery view;
 
+	/** compiled form of the query */
+	protected CompiledQuery compiledQuery;
+
+	/** compiled form of the view */
+	protected CompiledQuery compiledView;
+
+	/** index of the views, used to find mapping partners; may be null */
+	protected ViewIndex viewIndex;
+
 	/** list of subgoals covered by the MCD */
 	protected List<Predicate> coveredSubgoals;
 
+	/**
+	 * covered subgoals as a bit mask: bit i is set if the ith subgoal of the
+	 * query is covered by the MCD
+	 */
+	protected BitSet subgoalMask;
+
 	/** list of interpreted predicates (subgoals) covered by the MCD */
 	protected List<InterpretedPredicate> coveredInterpretedPredicates;
+
+	/** deepest recursion of extendMapping, counted by fulfillProperty */
+	private int extendMappingDepth;
 	
 	/** Enrichment with preferences !
 	 * Rank of the view related to this MCD 
@@ -83,13 +102,89 @@ public class MCD {
 	 */
 	public MCD(Predicate subgoal, DatalogQuery query, DatalogQuery view,
 			MCDMappings map) {
+		this(subgoal, query, view, map, null);
+	}
+
+	/**
+	 * MCD constructor
+	 * 
+	 * @param subgoal
+	 *            that is currently considered by the time when creating the MCD
+	 *            object
+	 * @param query
+	 *            provided by the user
+	 * @param view
+	 *            that is currently considered by the time when creating the MCD
+	 *            object
+	 * @param map
+	 *            variables or constant mapping
+	 * @param viewIndex
+	 *            index of the views, used to find the mapping partners of the
+	 *            subgoals when the MCD is extended; null to scan the view
+	 */
+	public MCD(Predicate subgoal, DatalogQuery query, DatalogQuery view,
+			MCDMappings map, ViewIndex viewIndex) {
+		this.viewIndex = viewIndex;
 		this.mappings = map;
 		this.query = query;
 		this.view = view;
+		this.compiledQuery = query.getCompiled();
+		this.compiledView = view.getCompiled();
 
 		this.coveredSubgoals = new ArrayList<Predicate>();
 		this.coveredInterpretedPredicates = new ArrayList<InterpretedPredicate>();
-		this.coveredSubgoals.add(subgoal);
+		this.subgoalMask = new BitSet(query.numberOfPredicates());
+		addSubgoal(subgoal);
+	}
+
+	/**
+	 * MCD constructor. Called by MCDCache. Creates a copy of an MCD formed for
+	 * a subgoal of another query with the same pattern: the covered subgoals,
+	 * interpreted predicates and query elements of the mappings are replaced
+	 * by those at the same position in the pattern of this query, the view
+	 * elements are kept.
+	 * 
+	 * @param mcd
+	 *            MCD that fulfills the MiniCon property
+	 * @param from
+	 *            pattern of the subgoal the MCD was formed for
+	 * @param to
+	 *            pattern of the subgoal of this query, with the same key
+	 */
+	MCD(MCD mcd, SubgoalPattern from, SubgoalPattern to) {
+		this.viewIndex = mcd.viewIndex;
+		this.query = to.getQuery();
+		this.view = mcd.view;
+		this.compiledQuery = query.getCompiled();
+		this.compiledView = mcd.compiledView;
+		this.rank = mcd.rank;
+		this.mappings = mcd.mappings.remap(from.mapElements(to));
+
+		this.coveredSubgoals = new ArrayList<Predicate>();
+		this.subgoalMask = new BitSet(query.numberOfPredicates());
+		Map<Predicate, Predicate> subgoals = from.mapPredicates(to);
+		for (Predicate subgoal : mcd.coveredSubgoals) {
+			addSubgoal(subgoals.get(subgoal));
+		}
+
+		this.coveredInterpretedPredicates = new ArrayList<InterpretedPredicate>();
+		Map<InterpretedPredicate, InterpretedPredicate> interpPreds = from
+				.mapInterpretedPredicates(to);
+		for (InterpretedPredicate interpPred : mcd.coveredInterpretedPredicates) {
+			coveredInterpretedPredicates.add(interpPreds.get(interpPred));
+		}
+	}
+
+	/**
+	 * Adds a query subgoal to the list of covered subgoals and sets its bit in
+	 * the subgoal mask.
+	 * 
+	 * @param subgoal
+	 *            query subgoal covered by the MCD
+	 */
+	private void addSubgoal(Predicate subgoal) {
+		coveredSubgoals.add(subgoal);
+		subgoalMask.set(query.indexOfPredicate(subgoal));
 	}
 
 	/**
@@ -109,9 +204,32 @@ public class MCD {
 	 * 4. Interpreted predicates of the query: check if interpreted predicates
 	 * of the query can be satified by the relevant view.
 	 * 
+	 * The MCD is counted as attempted, and as accepted if the property is
+	 * fulfilled, in the metrics of the current request (see MiniConMetrics).
+	 * 
 	 * @return true if Minicon property is fulfilled, false otherwise
 	 */
 	public boolean fulfillProperty() {
+		boolean fulfilled = checkProperty();
+
+		RequestMetrics request = MiniConMetrics.current();
+		if (request != null) {
+			request.add(MiniConMetrics.MCDS_ATTEMPTED, 1);
+			if (fulfilled) {
+				request.add(MiniConMetrics.MCDS_ACCEPTED, 1);
+			}
+			request.max(MiniConMetrics.EXTEND_MAPPING_DEPTH, extendMappingDepth);
+		}
+		return fulfilled;
+	}
+
+	/**
+	 * Called by fulfillProperty. Checks the four parts of the property in
+	 * turn.
+	 * 
+	 * @return true if Minicon property is fulfilled, false otherwise
+	 */
+	private boolean checkProperty() {
 
 		if (!checkQueryConstants()) {
 			return false;
@@ -154,7 +272,7 @@ public class MCD {
 
 			if (elem instanceof Constant) {
 				Variable value = mappings.getVarMapValue(i);
-				if (!view.containsHeadVariable(value)) {
+				if (!compiledView.isHeadVariable(value)) {
 					return false;
 				}
 			}
@@ -189,8 +307,8 @@ public class MCD {
 			// view var
 			// statement is negated because it will return false when statement
 			// is NOT true
-			if (!(!(query.containsHeadVariable(queryElem)) || (view
-					.containsHeadVariable(viewVar)))) {
+			if (!(!(compiledQuery.isHeadVariable(queryElem)) || (compiledView
+					.isHeadVariable(viewVar)))) {
 				return false;
 			}
 		}
@@ -220,7 +338,7 @@ public class MCD {
 		// coverd yet
 		List<Predicate> predicates = findPredicates();
 		// System.out.println(predicates);
-		return extendMapping(predicates);
+		return extendMapping(predicates, 1);
 
 	}
 
@@ -237,7 +355,7 @@ public class MCD {
 	 * returned immediately.
 	 * 
 	 * In the other case, iterate through all possible mapping partners. A
-	 * temporary mapping 'oldMap' will be created in order to be able to restore
+	 * checkpoint of the mappings will be taken in order to be able to restore
 	 * the existing mapping varMap. The current mapping partner 'mapPartner'
 	 * will be added to the existing mapping. Then, 'varMap' will be tested for
 	 * following 4 conditions:
@@ -255,7 +373,8 @@ public class MCD {
 	 * 4. subgoal 'pred' has not been covered yet, i.e. it is not in the list
 	 * coveredSubgoals.
 	 * 
-	 * If one of these 4 conditions is not fulfilled, restore the old mapping .
+	 * If one of these 4 conditions is not fulfilled, roll the mappings back to
+	 * the checkpoint, which only removes the pairs added for 'mapPartner'.
 	 * 
 	 * Finally if one or more subgoals have been added to coveredSubgoals call
 	 * findPredicates to get possible new subgoals that have to be covered after
@@ -264,9 +383,12 @@ public class MCD {
 	 * 
 	 * @param subgoals
 	 *            list of subgoal that have to be covered
+	 * @param depth
+	 *            depth of the recursion, 1 for the first call
 	 * @return return false, if it is not possible to cover subgoals
 	 */
-	private boolean extendMapping(List<Predicate> subgoals) {
+	private boolean extendMapping(List<Predicate> subgoals, int depth) {
+		extendMappingDepth = Math.max(extendMappingDepth, depth);
 
 		// no predicates that have to be mapped
 		if (subgoals.isEmpty()) {
@@ -287,7 +409,8 @@ public class MCD {
 
 						// remember old mapping in order to be able to restore
 						// it in case mapping was not valid
-						MCDMappings oldMap = mappings.clone();
+						MCDMappings.Checkpoint checkpoint = mappings
+								.checkpoint();
 
 						// add to existing mapping
 						mappings.mapPredicates(subgoal, mapPartner);
@@ -302,14 +425,14 @@ public class MCD {
 						// 4. check if subgoal is already covered
 						if (checkQueryConstants() && checkHeadVariables()
 								&& !cannotEquateVariables()
-								&& !coveredSubgoals.contains(subgoal)) {
-							coveredSubgoals.add(subgoal);
+								&& !hasSubgoal(subgoal)) {
+							addSubgoal(subgoal);
 							newCoveredSubgoal = true;
 
 							// one of the conditions was not fulfilled
 							// -> restore old mapping
 						} else {
-							mappings = oldMap;
+							mappings.rollback(checkpoint);
 						}
 					}
 
@@ -322,7 +445,7 @@ public class MCD {
 				}
 			}
 			List<Predicate> newPredicates = findPredicates();
-			return extendMapping(newPredicates);
+			return extendMapping(newPredicates, depth + 1);
 		}
 	}
 
@@ -333,10 +456,10 @@ public class MCD {
 	 * 
 	 * It will call findExistentialMappings to obtain the query variables that
 	 * are mapped to an existential view variable. Then it will determine the
-	 * query subgoals containing these variables and add them to the list
-	 * 'predicates'. Subgoals that have already been covered are also included
-	 * in the list. That is why the final step will remove these subgoals from
-	 * the predicate list.
+	 * query subgoals containing these variables from the occurrences stored in
+	 * the compiled query. Subgoals that have already been covered are removed
+	 * from the resulting mask, the others are returned in the order of the
+	 * query body.
 	 * 
 	 * @return list of predicate that have to be covered
 	 */
@@ -346,17 +469,19 @@ public class MCD {
 		// in the view
 		List<PredicateElement> existentMaps = findExistentialMappings();
 
-		List<Predicate> predicates = new ArrayList<Predicate>();
+		BitSet required = new BitSet(compiledQuery.numberOfPredicates());
+		for (PredicateElement elem : existentMaps) {
+			compiledQuery.addOccurrences(elem, required);
+		}
 
-		// all predicates that contain these elements except the subgoal
-		for (Predicate pred : query.getPredicates()) {
-			for (PredicateElement elem : existentMaps) {
-				if (pred.contains(elem) && !predicates.contains(pred)) {
-					predicates.add(pred);
-				}
-			}
+		// all predicates that contain these elements except the covered ones
+		required.andNot(subgoalMask);
+
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		for (int i = required.nextSetBit(0); i >= 0; i = required
+				.nextSetBit(i + 1)) {
+			predicates.add(query.getPredicates().get(i));
 		}
-		predicates.removeAll(coveredSubgoals);
 		return predicates;
 	}
 
@@ -403,12 +528,12 @@ public class MCD {
 
 		List<Variable> existentMappings = new ArrayList<Variable>();
 		List<Variable> values = mappings.getAllVarMapValues();
-		List<Variable> existentVars = view.getExistentialVariables();
 
 		// for every value contained in the mapping find out if it is an
 		// existential variable
 		for (Variable var : values) {
-			if (existentVars.contains(var) && !existentMappings.contains(var)) {
+			if (compiledView.isExistentialVariable(var)
+					&& !existentMappings.contains(var)) {
 				existentMappings.add(var);
 			}
 		}
@@ -419,7 +544,8 @@ public class MCD {
 
 	/**
 	 * Called by extendMapping. Given a query subgoal, the method will find all
-	 * view predicates that can possibly be mapped to the subgoal.
+	 * view predicates that can possibly be mapped to the subgoal. If the MCD
+	 * has a view index, the predicates are looked up in the index.
 	 * 
 	 * @param subgoal
 	 *            query subgoal that will be used to find all mapping partners
@@ -428,6 +554,10 @@ public class MCD {
 	 *         the subgoal
 	 */
 	private List<Predicate> findMappingPartners(Predicate subgoal) {
+		if (viewIndex != null) {
+			return viewIndex.getMappingPartners(subgoal, view);
+		}
+
 		List<Predicate> partners = new ArrayList<Predicate>();
 
 		for (Predicate viewPred : view.getPredicates()) {
@@ -435,6 +565,8 @@ public class MCD {
 				partners.add(viewPred);
 			}
 		}
+		MiniConMetrics.count(MiniConMetrics.CAN_BE_MAPPED_CALLS, view
+				.getPredicates().size());
 		return partners;
 	}
 
@@ -788,52 +920,41 @@ public class MCD {
 	 * 
 	 * Two mcd Object are equal if
 	 * 
-	 * 1. the relevant view is the same
+	 * 1. the relevant view is the same (same name)
 	 * 
-	 * 2. number of covered subgoals is the same
+	 * 2. they cover the same query subgoals
 	 * 
 	 * 3. their variable and constant mapping is equal.
 	 * 
-	 * 4. all above properties are fulfilled but coverd subgoals are different
-	 * 
 	 * Example:
 	 * 
 	 * Query: Q(x,y) :- e1(x,y), e2(x,y); View: V(a,b) :- e1(a,b),e2(a,b))
 	 * 
+	 * Starting from e1 or from e2 leads to the same MCD.
+	 * 
+	 * The MCD must not be modified once it is used as key of a hash based
+	 * collection, i.e. after fulfillProperty has been called.
 	 */
 	public boolean equals(Object mcdObj) {
-		MCD mcd = (MCD) mcdObj;
-
-		if (!(mcd.view.getName().equals(this.view.getName()))) {
-			return false;
-		}
-		boolean sameCoveredSubgoals = true;
-
-		// number of subgoals is the same
-		if (mcd.coveredSubgoals.size() != this.coveredSubgoals.size()) {
-			return false;
-		}
-
-		// compare mappings
-		if (!this.mappings.equals(mcd.mappings)) {
+		if (!(mcdObj instanceof MCD)) {
 			return false;
 		}
+		MCD mcd = (MCD) mcdObj;
 
-		// same view, same number of subgoals, same mappings but different
-		// covered subgoals
-		boolean hasSubgoal = false;
-		for (Predicate subgoal : this.coveredSubgoals) {
-			for (Predicate compare : mcd.coveredSubgoals) {
-				if (subgoal.name.equals(compare.name)) {
-					hasSubgoal = true;
-				}
-			}
-		}
-		if (!hasSubgoal) {
-			return false;
-		}
+		return mcd.view.getNameId() == this.view.getNameId()
+				&& mcd.subgoalMask.equals(this.subgoalMask)
+				&& this.mappings.equals(mcd.mappings);
+	}
 
-		return true;
+	/**
+	 * Overwrites hashCode method of class Object. Built from the view name,
+	 * the covered subgoals and the mappings, consistent with equals.
+	 */
+	public int hashCode() {
+		int hash = view.getNameId();
+		hash = 31 * hash + subgoalMask.hashCode();
+		hash = 31 * hash + mappings.hashCode();
+		return hash;
 	}
 
 	/**
@@ -845,12 +966,7 @@ public class MCD {
 	 * @return true if MCDs are disjoint, false otherwise
 	 */
 	public boolean isDisjoint(MCD mcd) {
-		for (Predicate pred : mcd.coveredSubgoals) {
-			if (this.hasSubgoal(pred)) {
-				return false;
-			}
-		}
-		return true;
+		return !this.subgoalMask.intersects(mcd.subgoalMask);
 	}
 
 	/**
@@ -864,7 +980,19 @@ public class MCD {
 	 *         otherwise
 	 */
 	public boolean hasSubgoal(Predicate pred) {
-		return coveredSubgoals.contains(pred);
+		int index = query.indexOfPredicate(pred);
+		return index >= 0 && subgoalMask.get(index);
+	}
+
+	/**
+	 * Returns the covered subgoals as a bit mask: bit i is set if the ith
+	 * subgoal of the query is covered by the MCD. The mask must not be
+	 * modified.
+	 * 
+	 * @return bit mask of covered subgoals
+	 */
+	public BitSet getSubgoalMask() {
+		return subgoalMask;
 	}
 
 	/**
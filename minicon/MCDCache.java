@@ -0,0 +1,245 @@
+package minicon;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import datalog.DatalogQuery;
+
+/**
+ * Class MCDCache keeps the MCDs formed for a query subgoal and a view, so that
+ * they are not formed again for a subgoal with the same pattern in another
+ * query. The cache can be shared by several MiniCon or Organiser objects that
+ * rewrite queries over the same views, also at the same time.
+ *
+ * An entry is identified by the view object and the canonical form of the
+ * subgoal pattern (see SubgoalPattern). On a hit, the MCDs of the entry are
+ * copied to the requested subgoal, unless they were formed for that very
+ * subgoal: two subgoals of the same query can have the same pattern, e.g.
+ * R(X) and R(Y) in Q(X, Y) :- R(X), R(Y). The subgoal alone would not
+ * be a correct key: the MCDs of a subgoal also depend on the subgoals it
+ * shares existential variables with and on which of its variables are head
+ * variables of the query.
+ *
+ * The cache holds at most a fixed number of entries; when it is full, the
+ * least recently used entry is evicted. The numbers of hits, misses and
+ * evictions are counted.
+ */
+public class MCDCache {
+
+	/** default maximal number of entries */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/** maximal number of entries */
+	private final int capacity;
+
+	/** entries in access order, the eldest is the least recently used */
+	private final LinkedHashMap<Key, Entry> entries;
+
+	/** number of lookups that found an entry */
+	private long hits;
+
+	/** number of lookups that found no entry */
+	private long misses;
+
+	/** number of entries evicted */
+	private long evictions;
+
+	/**
+	 * MCDCache constructor, with the default capacity
+	 */
+	public MCDCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * MCDCache constructor
+	 *
+	 * @param capacity
+	 *            maximal number of entries, i.e. of pairs of subgoal pattern
+	 *            and view
+	 */
+	public MCDCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: "
+					+ capacity);
+		}
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() > MCDCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the MCDs of the subgoal and the view if they are in the cache.
+	 * MCDs formed for another subgoal are copied to the subgoal of the
+	 * pattern.
+	 *
+	 * @param pattern
+	 *            pattern of the query subgoal
+	 * @param view
+	 *            view
+	 * @return new list of MCDs in the order in which they were formed, null
+	 *         if the cache has no entry for the subgoal and the view
+	 */
+	public List<MCD> get(SubgoalPattern pattern, DatalogQuery view) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(new Key(pattern.getKey(), view));
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+		}
+
+		// the key does not tell symmetric subgoals of one query apart, only the
+		// MCDs of the very same subgoal can be returned without being remapped
+		if (entry.pattern.getSubgoal() == pattern.getSubgoal()) {
+			return new ArrayList<MCD>(entry.mcds);
+		}
+
+		List<MCD> mcds = new ArrayList<MCD>(entry.mcds.size());
+		for (MCD mcd : entry.mcds) {
+			mcds.add(new MCD(mcd, entry.pattern, pattern));
+		}
+		return mcds;
+	}
+
+	/**
+	 * Stores the MCDs formed for the subgoal and the view. The least recently
+	 * used entry is evicted if the cache is full.
+	 *
+	 * @param pattern
+	 *            pattern of the query subgoal
+	 * @param view
+	 *            view
+	 * @param mcds
+	 *            MCDs of the subgoal and the view that fulfill the MiniCon
+	 *            property; they must not be modified afterwards
+	 */
+	public void put(SubgoalPattern pattern, DatalogQuery view, List<MCD> mcds) {
+		Entry entry = new Entry(pattern, new ArrayList<MCD>(mcds));
+		synchronized (this) {
+			entries.put(new Key(pattern.getKey(), view), entry);
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that found an entry.
+	 *
+	 * @return number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that found no entry.
+	 *
+	 * @return number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries evicted because the cache was full.
+	 *
+	 * @return number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return size of the cache
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the maximal number of entries.
+	 *
+	 * @return capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Removes every entry, e.g. after the views have changed. The counters
+	 * are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Overwrites Object method. Returns the size and the counters.
+	 */
+	public synchronized String toString() {
+		return "MCDCache[size=" + entries.size() + ", hits=" + hits
+				+ ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+	/**
+	 * Class Key identifies an entry by the canonical form of the subgoal
+	 * pattern and the view object.
+	 */
+	private static class Key {
+
+		/** canonical form of the subgoal pattern */
+		private final String pattern;
+
+		/** view, compared by identity */
+		private final DatalogQuery view;
+
+		Key(String pattern, DatalogQuery view) {
+			this.pattern = pattern;
+			this.view = view;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) obj;
+			return key.view == view && key.pattern.equals(pattern);
+		}
+
+		public int hashCode() {
+			return 31 * System.identityHashCode(view) + pattern.hashCode();
+		}
+	}
+
+	/**
+	 * Class Entry holds the MCDs formed for a subgoal and a view, together
+	 * with the pattern of the subgoal they were formed for.
+	 */
+	private static class Entry {
+
+		/** pattern of the subgoal the MCDs were formed for */
+		private final SubgoalPattern pattern;
+
+		/** MCDs in the order in which they were formed */
+		private final List<MCD> mcds;
+
+		Entry(SubgoalPattern pattern, List<MCD> mcds) {
+			this.pattern = pattern;
+			this.mcds = mcds;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package minicon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import datalog.DatalogQuery;
+
+/**
+ * Class MCDCacheTest checks that MiniCon returns the same rewritings with an
+ * MCDCache as without one, for queries whose subgoals have the same pattern,
+ * e.g. R(X) and R(Y) in Q(X, Y) :- R(X), R(Y). Every query is rewritten
+ * without a cache, with an empty cache and again with the filled cache.
+ *
+ * Run with java minicon.MCDCacheTest; prints OK, or the first difference and
+ * exits with status 1.
+ */
+public class MCDCacheTest {
+
+	/** query and views of every case, the query first */
+	private static final String[][] CASES = {
+			{ "Q(X, Y) :- R(X), R(Y)", "V1(A) :- R(A)" },
+			{ "Q(X, Y) :- A1(X, Y), A1(Y, X)", "V1(A, B) :- A1(A, B)",
+					"V2(A, B) :- A1(A, B), A1(B, A)" },
+			{ "Q(X, Y, Z) :- R(X), R(Y), R(Z)", "V1(A) :- R(A)",
+					"V2(A, B) :- R(A), R(B)" },
+			{ "Q(X, Y) :- R(X, Z), S(Z), R(Y, W), S(W)",
+					"V1(A) :- R(A, B), S(B)", "V2(A, B) :- R(A, B)",
+					"V3(B) :- S(B)" } };
+
+	public static void main(String[] args) {
+		for (String[] testCase : CASES) {
+			// the entries of the cache belong to the view objects
+			List<DatalogQuery> views = new ArrayList<DatalogQuery>();
+			for (int i = 1; i < testCase.length; i++) {
+				views.add(InputHandler.parse(testCase[i]));
+			}
+			String expected = rewrite(testCase[0], views, null);
+			MCDCache cache = new MCDCache();
+			String empty = rewrite(testCase[0], views, cache);
+			String filled = rewrite(testCase[0], views, cache);
+			if (!expected.equals(empty) || !expected.equals(filled)) {
+				System.out.println("FAILED: " + testCase[0]
+						+ "\nwithout cache:\n" + expected + "empty cache:\n"
+						+ empty + "filled cache:\n" + filled);
+				System.exit(1);
+			}
+		}
+		System.out.println("OK");
+	}
+
+	/**
+	 * Rewrites the query, which is parsed again for every run like the
+	 * queries of different requests.
+	 */
+	private static String rewrite(String query, List<DatalogQuery> views,
+			MCDCache cache) {
+		MiniCon miniCon = new MiniCon(InputHandler.parse(query), views);
+		miniCon.setMCDCache(cache);
+		miniCon.startMiniCon();
+
+		StringBuffer buffer = new StringBuffer();
+		for (Rewriting rewriting : miniCon.getRewritings()) {
+			buffer.append(rewriting).append('\n');
+		}
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,323 @@
+package minicon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import datalog.DatalogQuery;
+import datalog.PredicateElement;
+
+/**
+ * Class MCDCombiner performs the second step of the MiniCon algorithm: it
+ * combines MCDs in order to obtain the rewritings of the query.
+ *
+ * A combination of MCDs is a rewriting if the subgoals covered by the MCDs are
+ * pairwise disjoint and all together form the set of query subgoals. Instead
+ * of enumerating every subset of the MCD list, the combiner builds the
+ * combinations incrementally: it always considers the first query subgoal that
+ * is not covered yet and only tries the MCDs that cover this subgoal, are
+ * disjoint with the current combination and do not map a query element to a
+ * different constant than the MCDs already chosen. Every rewriting is found
+ * exactly once and handed to a RewritingListener as soon as it is complete.
+ *
+ * Covered subgoals are represented by the bit masks of the MCDs, so testing
+ * whether an MCD is disjoint with the combination is a single intersection
+ * and testing whether the combination covers the query is a single equality.
+ *
+ * The search tree splits by the MCD that covers the first query subgoal, so
+ * the combination can also be run on a ForkJoinPool. The subtrees are split
+ * further as long as the pool has idle workers, and their rewritings are
+ * merged in the same order as the sequential search produces them.
+ */
+public class MCDCombiner {
+
+	/**
+	 * a subtree is split into tasks as long as the current worker has no more
+	 * than this number of queued tasks that have not been stolen
+	 */
+	private static final int SURPLUS_THRESHOLD = 2;
+
+	/** query that is rewritten */
+	private DatalogQuery query;
+
+	/** MCDs that will be combined */
+	private List<MCD> mcds;
+
+	/** mask with a bit set for every query subgoal */
+	private BitSet allSubgoals;
+
+	/** for every query subgoal, the indexes of the MCDs that cover it */
+	private List<List<Integer>> coveringMCDs;
+
+	/**
+	 * MCDCombiner constructor
+	 *
+	 * @param query
+	 *            query that is rewritten
+	 * @param mcds
+	 *            MCDs formed for the query, without duplicates
+	 */
+	public MCDCombiner(DatalogQuery query, List<MCD> mcds) {
+		this.query = query;
+		this.mcds = mcds;
+		this.allSubgoals = new BitSet();
+		this.allSubgoals.set(0, query.numberOfPredicates());
+		this.coveringMCDs = new ArrayList<List<Integer>>();
+
+		for (int i = 0; i < query.numberOfPredicates(); i++) {
+			coveringMCDs.add(new ArrayList<Integer>());
+		}
+
+		for (int i = 0; i < mcds.size(); i++) {
+			BitSet mask = mcds.get(i).getSubgoalMask();
+			for (int j = mask.nextSetBit(0); j >= 0; j = mask.nextSetBit(j + 1)) {
+				coveringMCDs.get(j).add(i);
+			}
+		}
+	}
+
+	/**
+	 * Computes all the rewritings of the query. Every rewriting is handed to
+	 * the listener as soon as it has been found.
+	 *
+	 * @param listener
+	 *            receives the rewritings
+	 */
+	public void combine(RewritingListener listener) {
+		int numberOfSubgoals = query.numberOfPredicates();
+
+		if (numberOfSubgoals > 0) {
+			extend(new int[numberOfSubgoals], 0, new BitSet(numberOfSubgoals),
+					listener);
+		}
+	}
+
+	/**
+	 * Parallel variant of combine. One task is created for every MCD that
+	 * covers the first query subgoal, and the tasks are run on the pool. The
+	 * rewritings are handed to the listener by the calling thread, in the
+	 * same order as combine(RewritingListener) would hand them; the
+	 * rewritings of a subtree are handed over as soon as the subtree and all
+	 * the subtrees before it are finished.
+	 *
+	 * @param listener
+	 *            receives the rewritings
+	 * @param pool
+	 *            pool that runs the combination tasks
+	 */
+	public void combine(RewritingListener listener, ForkJoinPool pool) {
+		int numberOfSubgoals = query.numberOfPredicates();
+
+		if (numberOfSubgoals > 0) {
+			List<ForkJoinTask<List<Rewriting>>> tasks = new ArrayList<ForkJoinTask<List<Rewriting>>>();
+
+			for (CombinationTask task : new CombinationTask(
+					new int[numberOfSubgoals], 0, new BitSet(numberOfSubgoals))
+					.subtasks()) {
+				tasks.add(pool.submit(task));
+			}
+
+			for (ForkJoinTask<List<Rewriting>> task : tasks) {
+				for (Rewriting rewriting : task.join()) {
+					listener.rewritingFound(rewriting);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called by combine and recursively by itself. The method will extend the
+	 * current combination with every MCD that covers the first subgoal that is
+	 * not covered yet. If every subgoal is covered, the combination is a
+	 * rewriting and is handed to the listener.
+	 *
+	 * @param combination
+	 *            indexes of the MCDs in the current combination
+	 * @param size
+	 *            number of MCDs in the current combination
+	 * @param covered
+	 *            mask of the query subgoals covered by the current
+	 *            combination
+	 * @param listener
+	 *            receives the rewritings
+	 */
+	private void extend(int[] combination, int size, BitSet covered,
+			RewritingListener listener) {
+
+		// all the subgoals are covered
+		if (covered.equals(allSubgoals)) {
+			listener.rewritingFound(createRewriting(combination, size));
+			return;
+		}
+
+		int firstUncovered = covered.nextClearBit(0);
+
+		for (int index : coveringMCDs.get(firstUncovered)) {
+
+			if (canExtend(combination, size, covered, index)) {
+				BitSet mask = mcds.get(index).getSubgoalMask();
+
+				covered.or(mask);
+				combination[size] = index;
+
+				extend(combination, size + 1, covered, listener);
+
+				// undo: the MCD was disjoint with the combination, so its subgoals were not covered before
+				covered.andNot(mask);
+			}
+		}
+	}
+
+	/**
+	 * Called by extend. Tests whether the MCD can be added to the current
+	 * combination, i.e. it covers no subgoal that is already covered, and a
+	 * query element mapped to a constant by the MCD is not mapped to another
+	 * constant by an MCD of the combination.
+	 *
+	 * @param combination
+	 *            indexes of the MCDs in the current combination
+	 * @param size
+	 *            number of MCDs in the current combination
+	 * @param covered
+	 *            subgoals covered by the current combination
+	 * @param index
+	 *            index of the MCD to be added
+	 * @return true if the MCD can be added to the combination
+	 */
+	private boolean canExtend(int[] combination, int size, BitSet covered,
+			int index) {
+
+		if (covered.intersects(mcds.get(index).getSubgoalMask())) {
+			return false;
+		}
+
+		// x exists in C1 and C2 ==> it must be mapped to the same constant
+		Mapping constMap1 = mcds.get(index).mappings.constMap;
+		for (int i = 0; i < size; i++) {
+			Mapping constMap2 = mcds.get(combination[i]).mappings.constMap;
+			for (PredicateElement elem : constMap1.arguments) {
+				if (constMap2.containsArgument(elem)
+						&& !(constMap1.getFirstMatchingValue(elem)
+								.equals(constMap2.getFirstMatchingValue(elem)))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called by extend. Creates the rewriting for a complete combination. The
+	 * MCDs are given to the rewriting in the order of the MCD list, so that the
+	 * rewriting does not depend on the order in which the subgoals were
+	 * covered.
+	 *
+	 * @param combination
+	 *            indexes of the MCDs in the combination
+	 * @param size
+	 *            number of MCDs in the combination
+	 * @return rewriting of the query
+	 */
+	private Rewriting createRewriting(int[] combination, int size) {
+		int[] sorted = Arrays.copyOf(combination, size);
+		Arrays.sort(sorted);
+
+		List<MCD> mcdList = new ArrayList<MCD>();
+		for (int index : sorted) {
+			mcdList.add(mcds.get(index));
+		}
+		return new Rewriting(mcdList, query);
+	}
+
+	/**
+	 * Class CombinationTask searches the rewritings of one subtree of the
+	 * search, i.e. the rewritings that extend a given combination of MCDs.
+	 * The task either splits into one subtask for each MCD that can extend the
+	 * combination, or, if enough tasks are waiting to be stolen, searches the
+	 * subtree sequentially. The rewritings are returned in the order of the
+	 * sequential search.
+	 */
+	private class CombinationTask extends RecursiveTask<List<Rewriting>> {
+
+		private static final long serialVersionUID = 1L;
+
+		/** indexes of the MCDs in the combination, owned by the task */
+		private int[] combination;
+
+		/** number of MCDs in the combination */
+		private int size;
+
+		/** mask of the query subgoals covered by the combination */
+		private BitSet covered;
+
+		/**
+		 * CombinationTask constructor
+		 *
+		 * @param combination
+		 *            indexes of the MCDs in the combination
+		 * @param size
+		 *            number of MCDs in the combination
+		 * @param covered
+		 *            mask of the covered query subgoals
+		 */
+		CombinationTask(int[] combination, int size, BitSet covered) {
+			this.combination = combination;
+			this.size = size;
+			this.covered = covered;
+		}
+
+		/**
+		 * Creates a task for every MCD that can extend the combination. The
+		 * combination and the mask are copied for every task.
+		 *
+		 * @return list of tasks, in the order of the sequential search
+		 */
+		List<CombinationTask> subtasks() {
+			List<CombinationTask> tasks = new ArrayList<CombinationTask>();
+			int firstUncovered = covered.nextClearBit(0);
+
+			for (int index : coveringMCDs.get(firstUncovered)) {
+				if (canExtend(combination, size, covered, index)) {
+					int[] newCombination = combination.clone();
+					newCombination[size] = index;
+					BitSet newCovered = (BitSet) covered.clone();
+					newCovered.or(mcds.get(index).getSubgoalMask());
+
+					tasks.add(new CombinationTask(newCombination, size + 1,
+							newCovered));
+				}
+			}
+			return tasks;
+		}
+
+		/**
+		 * Searches the subtree of the combination and returns its rewritings.
+		 */
+		protected List<Rewriting> compute() {
+			final List<Rewriting> rewritings = new ArrayList<Rewriting>();
+
+			if (covered.equals(allSubgoals)) {
+				rewritings.add(createRewriting(combination, size));
+
+			} else if (getSurplusQueuedTaskCount() > SURPLUS_THRESHOLD) {
+				extend(combination, size, covered, new RewritingListener() {
+					public void rewritingFound(Rewriting rewriting) {
+						rewritings.add(rewriting);
+					}
+				});
+
+			} else {
+				List<CombinationTask> tasks = subtasks();
+				invokeAll(tasks);
+				for (CombinationTask task : tasks) {
+					rewritings.addAll(task.join());
+				}
+			}
+			return rewritings;
+		}
+	}
+}
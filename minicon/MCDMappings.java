@@ -2,6 +2,7 @@ package minicon;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import datalog.Constant;
 import datalog.Predicate;
@@ -9,8 +10,8 @@ import datalog.PredicateElement;
 import datalog.Variable;
 
 /**
- * Class MCDMappings comprises the three Mapping objects that are used by the
- * algorithm.
+ * Class MCDMappings comprises the two Mapping objects that are used by the
+ * algorithm to form MCDs.
  * 
  * Object varMap of class Mapping is the mapping from variables or constants of
  * the query to variables of a view.
@@ -18,9 +19,9 @@ import datalog.Variable;
  * Object constMap is the mapping from variables or constants of the query to
  * constants of a view.
  * 
- * Object rewritingMap is the mapping from head variables of the view to
- * variables or constants in the query. It is formed and used when rewritings
- * are created.
+ * The mapping from head variables of the view to variables or constants in
+ * the query is formed by each Rewriting, because an MCD can be part of several
+ * rewritings.
  * 
  * This class also contains methods that access both variable and constant
  * mappings.
@@ -36,9 +37,6 @@ public class MCDMappings {
 	//Mapping constMap;
 	public Mapping constMap; /* C.BA */
 
-	/** rewriting mapping - view head variables to query variabe or constant */
-	Mapping rewritingMap;
-
 	/**
 	 * MCDMappings constructor
 	 * 
@@ -50,7 +48,6 @@ public class MCDMappings {
 	public MCDMappings(Predicate querySubgoal, Predicate viewPred) {
 		varMap = new Mapping();
 		constMap = new Mapping();
-		rewritingMap = new Mapping();
 		mapPredicates(querySubgoal, viewPred);
 	}
 
@@ -60,7 +57,6 @@ public class MCDMappings {
 	public MCDMappings() {
 		varMap = new Mapping();
 		constMap = new Mapping();
-		rewritingMap = new Mapping();
 	}
 
 	/**
@@ -212,30 +208,60 @@ public class MCDMappings {
 	 * 2. the constant mapping is the same
 	 */
 	public boolean equals(Object obj) {
-
+		if (!(obj instanceof MCDMappings)) {
+			return false;
+		}
 		MCDMappings map = (MCDMappings) obj;
-		Mapping compareVarMap = map.varMap;
 
-		for (int i = 0; i < compareVarMap.size(); i++) {
-			PredicateElement arg = compareVarMap.arguments.get(i);
-			PredicateElement val = compareVarMap.values.get(i);
+		return this.varMap.equals(map.varMap)
+				&& this.constMap.equals(map.constMap);
+	}
 
-			if (!this.varMap.contains(arg, val)) {
-				return false;
-			}
-		}
+	/**
+	 * Overwrites Object method. Consistent with equals.
+	 */
+	public int hashCode() {
+		return 31 * varMap.hashCode() + constMap.hashCode();
+	}
 
-		Mapping constMap = map.constMap;
-		for (int i = 0; i < constMap.size(); i++) {
-			PredicateElement arg = constMap.arguments.get(i);
-			PredicateElement val = constMap.values.get(i);
+	/**
+	 * Returns a checkpoint of the variable and constant mappings. Used to undo
+	 * the extension of the mappings when an MCD is extended.
+	 * 
+	 * @return checkpoint that can be restored with rollback
+	 */
+	public Checkpoint checkpoint() {
+		return new Checkpoint(varMap.checkpoint(), constMap.checkpoint());
+	}
 
-			if (!constMap.contains(arg, val)) {
-				return false;
-			}
-		}
+	/**
+	 * Restores the variable and constant mappings as they were when the
+	 * checkpoint was taken. Only the pairs mapped since then are removed.
+	 * 
+	 * @param checkpoint
+	 *            value returned by checkpoint
+	 */
+	public void rollback(Checkpoint checkpoint) {
+		varMap.rollback(checkpoint.varMapSize);
+		constMap.rollback(checkpoint.constMapSize);
+	}
+
+	/**
+	 * Class Checkpoint holds the state of the variable and constant mappings
+	 * that is needed to roll them back.
+	 */
+	public static class Checkpoint {
 
-		return true;
+		/** checkpoint of the variable mapping */
+		private final int varMapSize;
+
+		/** checkpoint of the constant mapping */
+		private final int constMapSize;
+
+		private Checkpoint(int varMapSize, int constMapSize) {
+			this.varMapSize = varMapSize;
+			this.constMapSize = constMapSize;
+		}
 	}
 
 	/**
@@ -253,6 +279,25 @@ public class MCDMappings {
 		return newMapping;
 	}
 
+	/**
+	 * Called by the MCD constructor that copies an MCD to another query. The
+	 * method will create a new MCDMappings object in which every argument of
+	 * the variable and constant mappings is replaced by its element in the
+	 * map; the values, i.e. the view elements, are kept.
+	 * 
+	 * @param elements
+	 *            query elements of the MCD and their replacements
+	 * @return mappings for the other query
+	 */
+	MCDMappings remap(Map<PredicateElement, PredicateElement> elements) {
+
+		MCDMappings newMapping = new MCDMappings();
+		newMapping.varMap = varMap.remap(elements);
+		newMapping.constMap = constMap.remap(elements);
+
+		return newMapping;
+	}
+
 	/**
 	 * Overwrites Object method.
 	 * 
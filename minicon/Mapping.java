@@ -1,7 +1,11 @@
 package minicon;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import datalog.PredicateElement;
 
@@ -13,6 +17,15 @@ import datalog.PredicateElement;
  * Both arguments and values are stored in a list. The ith element of the
  * argument belongs to the ith element of the value list.
  * 
+ * In addition, the mapping is indexed in both directions: from an argument to
+ * its values and from a value to its arguments. The sets of the indexes keep
+ * the order in which the pairs were mapped, so lookups return the elements in
+ * the same order as a scan of the lists would, but in constant time.
+ * 
+ * Since pairs are only appended to the lists, the lists also serve as an undo
+ * trail: checkpoint returns the current size, and rollback removes the pairs
+ * that have been mapped since then.
+ * 
  * @author Kevin Irmscher
  */
 public class Mapping {
@@ -24,13 +37,20 @@ public class Mapping {
 	/** list of values */
 	protected List<PredicateElement> values;
 
+	/** index from an argument to its values */
+	private Map<PredicateElement, Set<PredicateElement>> valuesByArgument;
+
+	/** index from a value to its arguments */
+	private Map<PredicateElement, Set<PredicateElement>> argumentsByValue;
+
 	/**
 	 * Mapping Constructor
 	 */
 	public Mapping() {
 		arguments = new ArrayList<PredicateElement>();
 		values = new ArrayList<PredicateElement>();
-
+		valuesByArgument = new HashMap<PredicateElement, Set<PredicateElement>>();
+		argumentsByValue = new HashMap<PredicateElement, Set<PredicateElement>>();
 	}
 
 	/**
@@ -44,12 +64,34 @@ public class Mapping {
 	 *            mapping value
 	 */
 	public void map(PredicateElement arg, PredicateElement value) {
-		if (!contains(arg, value)) {
+		if (index(valuesByArgument, arg).add(value)) {
+			index(argumentsByValue, value).add(arg);
 			arguments.add(arg);
 			values.add(value);
 		}
 	}
 
+	/**
+	 * Called by map. Returns the set of the index for the given key and
+	 * creates it if the key is not indexed yet.
+	 * 
+	 * @param index
+	 *            one of the two indexes
+	 * @param key
+	 *            argument or value
+	 * @return set of elements mapped to or from the key
+	 */
+	private static Set<PredicateElement> index(
+			Map<PredicateElement, Set<PredicateElement>> index,
+			PredicateElement key) {
+		Set<PredicateElement> set = index.get(key);
+		if (set == null) {
+			set = new LinkedHashSet<PredicateElement>();
+			index.put(key, set);
+		}
+		return set;
+	}
+
 	/**
 	 * The method will return all arguments for the given value
 	 * 
@@ -57,19 +99,11 @@ public class Mapping {
 	 * @return list of mapping arguments
 	 */
 	public List<PredicateElement> getArguments(PredicateElement value) {
-
-		List<PredicateElement> args = new ArrayList<PredicateElement>();
-
-		for (int i = 0; i < values.size(); i++) {
-			PredicateElement current = values.get(i);
-			if (current.equals(value)) {
-				PredicateElement arg = arguments.get(i);
-				if (!args.contains(arg)) { // don't add a duplicate
-					args.add(arg);
-				}
-			}
+		Set<PredicateElement> args = argumentsByValue.get(value);
+		if (args == null) {
+			return new ArrayList<PredicateElement>();
 		}
-		return args;
+		return new ArrayList<PredicateElement>(args);
 	}
 
 	/**
@@ -79,18 +113,11 @@ public class Mapping {
 	 * @return list of mapping values
 	 */
 	public List<PredicateElement> getValues(PredicateElement argument) {
-		List<PredicateElement> vals = new ArrayList<PredicateElement>();
-
-		for (int i = 0; i < arguments.size(); i++) {
-			PredicateElement current = arguments.get(i);
-			if (current.equals(argument)) {
-				PredicateElement value = values.get(i);
-				if (!vals.contains(value)) { // don't add a duplicate
-					vals.add(value);
-				}
-			}
+		Set<PredicateElement> vals = valuesByArgument.get(argument);
+		if (vals == null) {
+			return new ArrayList<PredicateElement>();
 		}
-		return vals;
+		return new ArrayList<PredicateElement>(vals);
 	}
 
 	/**
@@ -103,15 +130,8 @@ public class Mapping {
 	 * @return true, if mapping contains argument and value, false otherwise
 	 */
 	public boolean contains(PredicateElement argument, PredicateElement value) {
-
-		for (int i = 0; i < arguments.size(); i++) {
-			PredicateElement arg = arguments.get(i);
-			PredicateElement val = values.get(i);
-			if ((arg.equals(argument)) && (val.equals(value))) {
-				return true;
-			}
-		}
-		return false;
+		Set<PredicateElement> vals = valuesByArgument.get(argument);
+		return vals != null && vals.contains(value);
 	}
 
 	/**
@@ -122,12 +142,7 @@ public class Mapping {
 	 * @return true, if arg is contained in the mapping, false otherwise
 	 */
 	public boolean containsArgument(PredicateElement arg) {
-		for (PredicateElement elem : arguments) {
-			if (arg.equals(elem)) {
-				return true;
-			}
-		}
-		return false;
+		return valuesByArgument.containsKey(arg);
 	}
 
 	/**
@@ -139,12 +154,58 @@ public class Mapping {
 	 * @return first value for the given argument, null if no value found
 	 */
 	public PredicateElement getFirstMatchingValue(PredicateElement arg) {
-		for (int i = 0; i < arguments.size(); i++) {
-			if (arguments.get(i).equals(arg)) {
-				return values.get(i);
-			}
+		Set<PredicateElement> vals = valuesByArgument.get(arg);
+		if (vals == null) {
+			return null;
+		}
+		return vals.iterator().next();
+	}
+
+	/**
+	 * Returns a checkpoint of the mapping that can be restored with rollback.
+	 * 
+	 * @return checkpoint, i.e. the number of argument-value pairs
+	 */
+	public int checkpoint() {
+		return arguments.size();
+	}
+
+	/**
+	 * Restores the mapping as it was when the checkpoint was taken by removing
+	 * every argument-value pair mapped since then, starting with the last one.
+	 * The cost only depends on the number of removed pairs.
+	 * 
+	 * @param checkpoint
+	 *            value returned by checkpoint
+	 */
+	public void rollback(int checkpoint) {
+		for (int i = arguments.size() - 1; i >= checkpoint; i--) {
+			PredicateElement arg = arguments.remove(i);
+			PredicateElement value = values.remove(i);
+			unindex(valuesByArgument, arg, value);
+			unindex(argumentsByValue, value, arg);
+		}
+	}
+
+	/**
+	 * Called by rollback. Removes an element from the set of the index for the
+	 * given key, and the key itself if its set becomes empty.
+	 * 
+	 * @param index
+	 *            one of the two indexes
+	 * @param key
+	 *            argument or value
+	 * @param elem
+	 *            element to be removed from the set of the key
+	 */
+	private static void unindex(
+			Map<PredicateElement, Set<PredicateElement>> index,
+			PredicateElement key, PredicateElement elem) {
+		Set<PredicateElement> set = index.get(key);
+		set.remove(elem);
+		if (set.isEmpty()) {
+			index.remove(key);
 		}
-		return null;
 	}
 
 	/**
@@ -163,6 +224,7 @@ public class Mapping {
 	 * argument-value pair to the new mapping that will be returned.
 	 */
 	public Mapping clone() {
+		MiniConMetrics.count(MiniConMetrics.MAPPING_CLONES, 1);
 		Mapping newMapping = new Mapping();
 		for (int i = 0; i < arguments.size(); i++) {
 			newMapping.map(arguments.get(i), values.get(i));
@@ -170,6 +232,59 @@ public class Mapping {
 		return newMapping;
 	}
 
+	/**
+	 * Called by MCDMappings.remap. The method will create a new Mapping object
+	 * that maps the replacement of every argument to the same value. An
+	 * argument without replacement is kept.
+	 * 
+	 * @param elements
+	 *            arguments and their replacements
+	 * @return mapping with the replaced arguments
+	 */
+	Mapping remap(Map<PredicateElement, PredicateElement> elements) {
+		Mapping newMapping = new Mapping();
+		for (int i = 0; i < arguments.size(); i++) {
+			PredicateElement arg = elements.get(arguments.get(i));
+			newMapping.map(arg != null ? arg : arguments.get(i), values.get(i));
+		}
+		return newMapping;
+	}
+
+	/**
+	 * Overwrites Object method.
+	 * 
+	 * Two mappings are equal if they contain the same argument-value pairs,
+	 * regardless of the order in which the pairs have been mapped.
+	 */
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Mapping)) {
+			return false;
+		}
+		Mapping map = (Mapping) obj;
+
+		if (map.size() != this.size() || map.hashCode() != this.hashCode()) {
+			return false;
+		}
+		for (int i = 0; i < map.size(); i++) {
+			if (!this.contains(map.arguments.get(i), map.values.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Overwrites Object method. The hash code does not depend on the order of
+	 * the argument-value pairs, so that it is consistent with equals.
+	 */
+	public int hashCode() {
+		int hash = 0;
+		for (int i = 0; i < arguments.size(); i++) {
+			hash += 31 * arguments.get(i).hashCode() + values.get(i).hashCode();
+		}
+		return hash;
+	}
+
 	/**
 	 * Overwrites Object method.
 	 * 
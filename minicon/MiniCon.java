@@ -29,7 +29,14 @@
 package minicon;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 //import preference.Organiser;
 //import preference.PreferencesFileParser;
 import datalog.DatalogQuery;
@@ -45,8 +52,6 @@ import datalog.PredicateElement;
  * forming the MCDs, 2. combining the MCD, and 3. removing redundant subgoals
  * The last part is optional.
  * 
- * ==> The "findMCDSubset" method is modified to return all the subsets of a set of MCDs 
- * 
  * @author Kevin Irmscher
  */
 public class MiniCon {
@@ -60,9 +65,33 @@ public class MiniCon {
 	/** list of MCDs created by algorithm */
 	private List<MCD> mcds;
 
+	/** index of the views, built when the MCDs are formed */
+	private ViewIndex viewIndex;
+
 	/** list of rewritings created by the algorithm */ 
 	private List<Rewriting> rewritings;
 
+	/** number of threads used to form and combine the MCDs, 1 means sequential */
+	private int parallelism;
+
+	/** true if redundant subgoals are removed from the rewritings */
+	private boolean removeRedundant;
+
+	/** pool used while the algorithm runs with more than one thread */
+	private ForkJoinPool pool;
+
+	/** cache of MCDs shared with other queries, null if MCDs are not cached */
+	private MCDCache mcdCache;
+
+	/** pattern of every query subgoal, built when MCDs are cached */
+	private Map<Predicate, SubgoalPattern> patterns;
+
+	/** time spent forming the MCDs in the last run, in nanoseconds */
+	private long formationTime;
+
+	/** time spent combining the MCDs in the last run, in nanoseconds */
+	private long combinationTime;
+
 	/**
 	 * MiniCon constructor
 	 * 
@@ -76,6 +105,45 @@ public class MiniCon {
 		this.views = views;
 		this.mcds = new ArrayList<MCD>();
 		this.rewritings = new ArrayList<Rewriting>();
+		this.parallelism = InputHandler.parallelism;
+		this.removeRedundant = InputHandler.removeRedundant;
+	}
+
+	/**
+	 * Sets the number of threads used to form and combine the MCDs. With more
+	 * than one thread both steps run on a ForkJoinPool; the MCDs and the
+	 * rewritings are the same and come in the same order as with one thread.
+	 * 
+	 * @param parallelism
+	 *            number of threads, 1 to run sequentially
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets whether redundant subgoals are removed from the rewritings. The
+	 * default is taken from argument -r when the object is created, so that
+	 * a running algorithm does not depend on the static options of
+	 * InputHandler.
+	 * 
+	 * @param removeRedundant
+	 *            true to remove redundancies
+	 */
+	public void setRemoveRedundant(boolean removeRedundant) {
+		this.removeRedundant = removeRedundant;
+	}
+
+	/**
+	 * Sets the cache in which the MCDs of every subgoal and view are looked
+	 * up before they are formed, and stored after. The cache can be shared
+	 * with the MiniCon objects of other queries over the same views.
+	 * 
+	 * @param mcdCache
+	 *            cache of MCDs, null to form every MCD
+	 */
+	public void setMCDCache(MCDCache mcdCache) {
+		this.mcdCache = mcdCache;
 	}
 
 	/**
@@ -91,14 +159,16 @@ public class MiniCon {
 	 * 
 	 * -sql : SQL input mode;
 	 * 
-	 * -r : remove redundancies
+	 * -r : remove redundancies;
+	 * 
+	 * -p THREADS : number of threads forming and combining the MCDs
 	 */
 	public static void main(String[] args) {
 		System.out.println("MiniCon Algorithm");
 		
-		int testID = 30;
+		//**/ args = new String[]{"-f", "testcases.xml", "30"};
 		
-		MiniCon mc = InputHandler.handleArguments(new String[]{"-f", "testcases.xml", "" + testID});
+		MiniCon mc = InputHandler.handleArguments(args);
 		
 		if (mc != null) {
 			mc.printQuery();
@@ -125,13 +195,81 @@ public class MiniCon {
 	 * whether argument -r is provided
 	 */
 	public void startMiniCon() {
-		formMCDs();		
-		combineMCDs();
-		if (InputHandler.removeRedundant) {
+		openPool();
+		try {
+			long start = System.nanoTime();
+			MiniConMetrics.startPhase(MiniConMetrics.FORMATION);
+			formMCDs();
+			MiniConMetrics.endPhase();
+			long formed = System.nanoTime();
+			MiniConMetrics.startPhase(MiniConMetrics.COMBINATION);
+			combineMCDs();
+			MiniConMetrics.endPhase();
+			formationTime = formed - start;
+			combinationTime = System.nanoTime() - formed;
+		} finally {
+			closePool();
+		}
+		if (removeRedundant) {
 			removeRedundancies();
 		}
 	}
 
+	/**
+	 * Streaming variant of startMiniCon. The MCDs are formed and combined as
+	 * usual, but every rewriting is handed to the listener as soon as it has
+	 * been found instead of being collected in the list of rewritings. If
+	 * argument -r is provided, redundancies are removed from each rewriting
+	 * before it is handed to the listener.
+	 * 
+	 * @param listener
+	 *            receives the rewritings
+	 */
+	public void startMiniCon(final RewritingListener listener) {
+		openPool();
+		try {
+			long start = System.nanoTime();
+			MiniConMetrics.startPhase(MiniConMetrics.FORMATION);
+			formMCDs();
+			MiniConMetrics.endPhase();
+			long formed = System.nanoTime();
+			MiniConMetrics.startPhase(MiniConMetrics.COMBINATION);
+			combineMCDs(new RewritingListener() {
+				public void rewritingFound(Rewriting rewriting) {
+					if (removeRedundant) {
+						rewriting.removeRedundancies();
+					}
+					listener.rewritingFound(rewriting);
+				}
+			});
+			MiniConMetrics.endPhase();
+			formationTime = formed - start;
+			combinationTime = System.nanoTime() - formed;
+		} finally {
+			closePool();
+		}
+	}
+
+	/**
+	 * Called by startMiniCon. Creates the pool used to form and combine the
+	 * MCDs if more than one thread is requested.
+	 */
+	private void openPool() {
+		if (parallelism > 1) {
+			pool = new ForkJoinPool(parallelism);
+		}
+	}
+
+	/**
+	 * Called by startMiniCon. Shuts down the pool, if any.
+	 */
+	private void closePool() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
 	/**
 	 * The method will create the MCDs that are possible for the given query and
 	 * views. Every subgoal of the query will be considered separately. For each
@@ -141,31 +279,51 @@ public class MiniCon {
 	 * necessary, the MCD will be extended. If the MCD is valid, it will be
 	 * added to the list of MCDs. Finally duplicate MCDs will be removed from
 	 * the list.
+	 * 
+	 * Only the views that contain a predicate the subgoal can be mapped to are
+	 * considered; they are looked up in a ViewIndex built for the views. If a
+	 * pool is available, the pairs of subgoal and view are handled by
+	 * formMCDsInParallel instead. If a cache of MCDs is set, the pattern of
+	 * every subgoal is built first, so that the MCDs of a pair are looked up
+	 * in the cache before they are formed.
+	 * 
+	 * The query and the views are compiled before the MCDs are formed, so the
+	 * MCDs share the compiled forms and the tasks of the pool do not build
+	 * them concurrently.
+	 * 
+	 * Called by startMiniCon. It is public so that the first phase can be
+	 * measured on its own (see benchmark.MiniConBenchmarks); it must only be
+	 * called once for a MiniCon object, the MCDs are then read with getMCDs.
 	 */
-	private void formMCDs() {
+	public void formMCDs() {
 
-		// subgoal of the query
-		List<Predicate> subgoals = query.getPredicates();
+		viewIndex = new ViewIndex(views);
 
-		for (Predicate subgoal : subgoals) {
-			// System.out.println("\n current subgoal " + subgoal);
+		query.getCompiled();
+		for (DatalogQuery view : views) {
+			view.getCompiled();
+		}
 
-			// for every view try to create mappings
-			for (DatalogQuery view : views) {
+		if (mcdCache != null) {
+			patterns = new HashMap<Predicate, SubgoalPattern>();
+			for (Predicate subgoal : query.getPredicates()) {
+				patterns.put(subgoal, new SubgoalPattern(query, subgoal));
+			}
+		}
 
-				List<MCDMappings> mappings = createMapping(subgoal, view);
+		if (pool != null) {
+			formMCDsInParallel();
 
-				// for every mapping created check whether properties are
-				// fulfilled
-				for (MCDMappings map : mappings) {
+		} else {
+			// subgoal of the query
+			List<Predicate> subgoals = query.getPredicates();
 
-					// create MCD
-					MCD mcd = new MCD(subgoal, query, view, map);
+			for (Predicate subgoal : subgoals) {
 
-					// MCD can be extend to fulfill properties
-					if (mcd.fulfillProperty()) {
-						mcds.add(mcd);
-					}
+				// for every view that can cover the subgoal try to create
+				// mappings
+				for (DatalogQuery view : viewIndex.getViews(subgoal)) {
+					mcds.addAll(formMCDs(subgoal, view));
 				}
 			}
 		}
@@ -173,222 +331,150 @@ public class MiniCon {
 	}
 
 	/**
-	 * The second part of the algorithm will combine the MCDs in order to obtain
-	 * rewritings of the query. First, subsets of the list of MCDs will be
-	 * computed starting with subset size one. For each subset size, it will be
-	 * tested whether it is possible to combine the MCDs to a valid rewriting.
-	 * If this test suceeds, the rewriting will be added to the list of
-	 * rewritings.
-	 * 
+	 * Called by formMCDs. Every pair of query subgoal and view is handed to
+	 * the pool as a separate task, because the MCDs of a pair do not depend on
+	 * the MCDs of the other pairs. The lists of MCDs are then added to the
+	 * member list 'mcds' in the order of the pairs, i.e. in the same order as
+	 * in the sequential loop, so that removing the duplicates afterwards keeps
+	 * the same MCDs. The tasks count in the metrics of the request of the
+	 * calling thread.
 	 */
-	/* C.BA ==> this method is replaced by the following one !!
-	 
-	private void combineMCDs() {		
-				
-		for (int i = 1; i <= mcds.size(); i++) {
-
-			// find subset of size i
-			List<List<MCD>> subsetList = findMCDSubset(mcds, i);
-						
-			for (List<MCD> mcdList : subsetList) {
-				if (isRewriting(mcdList)) {
-					rewritings.add(new Rewriting(mcdList, query));
-				}
-			}
-		}
-	}
-	 */
-	
-	/* C.BA */
-	
-	private void combineMCDs() {		
-		
-		List<List<MCD>> subsetList = findMCDSubset(mcds) ;
-		for (List<MCD> mcdList : subsetList) {
-			if (isRewriting(mcdList)) {
-				rewritings.add(new Rewriting(mcdList, query));
+	private void formMCDsInParallel() {
+		List<Callable<List<MCD>>> tasks = new ArrayList<Callable<List<MCD>>>();
+		final RequestMetrics request = MiniConMetrics.current();
+
+		for (final Predicate subgoal : query.getPredicates()) {
+			for (final DatalogQuery view : viewIndex.getViews(subgoal)) {
+				tasks.add(new Callable<List<MCD>>() {
+					public List<MCD> call() {
+						RequestMetrics previous = MiniConMetrics
+								.setCurrent(request);
+						try {
+							return formMCDs(subgoal, view);
+						} finally {
+							MiniConMetrics.setCurrent(previous);
+						}
+					}
+				});
 			}
 		}
-	}
-	
-	/**
-	 * Redundant view from the rewriting will be removed using the method of
-	 * class Rewriting
-	 */
-	private void removeRedundancies() {
 
-		for (Rewriting rw : rewritings) {
-			rw.removeRedundancies();
+		try {
+			for (Future<List<MCD>> result : pool.invokeAll(tasks)) {
+				mcds.addAll(result.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("MCD formation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("MCD formation failed", e.getCause());
 		}
 	}
 
 	/**
-	 * This method finds subsets of MCD list with a given size. If the size is
-	 * 1, it is a list that contains a list with single MCDs. If the size is
-	 * greater than 1, the method will be called recursivly with the size
-	 * reduced by 1. The first MCD of the given list will be taken out. Then it
-	 * will be added as first element to each MCD list which is returned by the
-	 * recursive call. The resulting list, containing a list of MCDs with the
-	 * same MCD as first element, will be returned by the method.
+	 * Called by formMCDs and formMCDsInParallel. Creates the MCDs of one query
+	 * subgoal and one view: for every mapping of the subgoal to a predicate of
+	 * the view an MCD is created, and it is kept if it can be extended to
+	 * fulfill the MiniCon property.
 	 * 
-	 * @param list
-	 *            of MCDs from which the subsets will be computed
-	 * @param size
-	 *            of the subsets
-	 * @return list of subsets that are lists of MCDs
+	 * @param subgoal
+	 *            query subgoal
+	 * @param view
+	 *            view
+	 * @return list of MCDs, in the order of the view predicates
 	 */
-	
-	// C. BA:  findMCDSubset from original minicon ==> does not always return all the subsets !
-	// replaced by the following one !
-	
-	/*
-	private List<List<MCD>> findMCDSubset(List<MCD> list, int size) {
-
-		List<MCD> mcdList = new ArrayList<MCD>(list);
-		List<List<MCD>> returnList = new ArrayList<List<MCD>>();
-
-		if (size == 1) {
-			for (MCD mcd : mcdList) {
-				List<MCD> tempList = new ArrayList<MCD>();
-				tempList.add(mcd);
-				returnList.add(tempList);
-			}
-		} else {
-			for (int i = 0; i <= (mcdList.size() - size + 1); i++) {
-											
-				MCD mcd = mcdList.get(0);
-				mcdList.remove(0);
-				List<List<MCD>> tempList = findMCDSubset(mcdList, size - 1);
-																
-				addAsFirstElem(mcd, tempList);
-				returnList.addAll(tempList);
+	private List<MCD> formMCDs(Predicate subgoal, DatalogQuery view) {
+		SubgoalPattern pattern = null;
+		if (mcdCache != null) {
+			pattern = patterns.get(subgoal);
+			List<MCD> cached = mcdCache.get(pattern, view);
+			if (cached != null) {
+				return cached;
 			}
 		}
 
-		return returnList;
-	}
-	*/
-	
-	// C. BA:  the new findMCDSubset ==> always return all the subsets !
-	
-	private List<List<MCD>> findMCDSubset(List<MCD> list) {
-		List<List<MCD>> result = new ArrayList<List<MCD>>(); ;
-		List<MCD> newList;
-		int MCDIndexToConsider; 
-		long integerRepresentationOfMcdSubset;
-		double numberOfSubsets = Math.pow(2, list.size());
-		
-		for (int i = 0 ; i < numberOfSubsets ; i++){
-			newList = new ArrayList<MCD>();
-			integerRepresentationOfMcdSubset = i;
-			MCDIndexToConsider = 0;
-			
-			while (integerRepresentationOfMcdSubset != 0){
-				
-				if ((integerRepresentationOfMcdSubset & 1) == 1)
-					newList.add(list.get(MCDIndexToConsider));
-				
-				MCDIndexToConsider++;
-				integerRepresentationOfMcdSubset >>= 1;
+		List<MCD> result = new ArrayList<MCD>();
+
+		List<MCDMappings> mappings = createMapping(subgoal, view);
+
+		// for every mapping created check whether properties are
+		// fulfilled
+		for (MCDMappings map : mappings) {
+
+			// create MCD
+			MCD mcd = new MCD(subgoal, query, view, map, viewIndex);
+
+			// MCD can be extend to fulfill properties
+			if (mcd.fulfillProperty()) {
+				result.add(mcd);
 			}
-			
-			result.add(newList);
-		}		
+		}
+
+		if (mcdCache != null) {
+			mcdCache.put(pattern, view, result);
+		}
 		return result;
 	}
 
 	/**
-	 * Called by findMCDSubset, it will add the given MCD to the front of each
-	 * element of the given list, i.e each list of MCDs will have the given MCD
-	 * as first element.
-	 * 
-	 * @param elem
-	 *            MCD that is added as first element
-	 * @param list
-	 *            contains lists of MCDs
+	 * The second part of the algorithm will combine the MCDs in order to obtain
+	 * rewritings of the query. The combinations are built by MCDCombiner, which
+	 * only extends combinations whose MCDs are disjoint. Every valid rewriting
+	 * is added to the list of rewritings.
 	 */
-	
-	// C. BA ==> No more useful .
-	
-	/*
-	private void addAsFirstElem(MCD elem, List<List<MCD>> list) {
-		for (List<MCD> currList : list) {
-			currList.add(0, elem);
-
-		}
+	private void combineMCDs() {
+		combineMCDs(new RewritingListener() {
+			public void rewritingFound(Rewriting rewriting) {
+				rewritings.add(rewriting);
+			}
+		});
 	}
-	*/
 
 	/**
-	 * Called by combineMCDs, it will test whether the given MCDs can be
-	 * combined to a valid rewriting.
+	 * Called by combineMCDs and startMiniCon. Combines the MCDs and hands every
+	 * rewriting to the listener as soon as it is found. If a pool is
+	 * available, the combination runs on the pool. The rewritings are counted
+	 * in the metrics of the request of the calling thread.
 	 * 
-	 * A rewriting is valid if the combination of the view predicates result in
-	 * the set of query subgoals and when the predicates are pairwise disjoint.
-	 * First, the total number of predicates of the given MCDs will be computed.
-	 * If the number doesn't equal to the number of subgoals in the query, false
-	 * will be returned (interpreted predicates are not considered here).
-	 * Second, every MCD is compared with every other MCD to test whether they
-	 * are disjoint. Finally, mappings to constants will be checked for
-	 * validity. If there is a variable that the exists in at least two MCDs and
-	 * that is mapped to two different constants, the combination of these MCDs
-	 * is not possible.
-	 * 
-	 * @param mcds
-	 *            that will be test whether they can be combined
-	 * @return true if mcds can be combined to a valid rewriting, false
-	 *         otherwise
+	 * @param listener
+	 *            receives the rewritings
 	 */
-	private boolean isRewriting(List<MCD> mcds) {
-		int countPredicates = 0;
-
-		for (MCD mcd : mcds) {
-			countPredicates += mcd.numberOfSubgoals();
+	private void combineMCDs(RewritingListener listener) {
+		MCDCombiner combiner = new MCDCombiner(query, mcds);
+
+		final RequestMetrics request = MiniConMetrics.current();
+		if (request != null) {
+			final RewritingListener counted = listener;
+			listener = new RewritingListener() {
+				public void rewritingFound(Rewriting rewriting) {
+					request.add(MiniConMetrics.REWRITINGS_EMITTED, 1);
+					counted.rewritingFound(rewriting);
+				}
+			};
 		}
 
-		// compare total number of predicates with number of query subgoals
-		if (countPredicates != query.numberOfPredicates()) {
-			return false;
+		if (pool != null) {
+			combiner.combine(listener, pool);
+		} else {
+			combiner.combine(listener);
 		}
+	}
 
-		// test pairwise disjoint
-		for (int i = 0; i < mcds.size(); i++) {
-			for (int j = 0; j < mcds.size(); j++) {
-				if (i != j) {
-					MCD mcd1 = mcds.get(i);
-					MCD mcd2 = mcds.get(j);
-					if (!mcd1.isDisjoint(mcd2)) {
-						return false;
-					}
-				}
-			}
-		}
+	/**
+	 * Redundant view from the rewriting will be removed using the method of
+	 * class Rewriting
+	 */
+	private void removeRedundancies() {
 
-		// x exists in C1 and C2 ==> it must be mapped to the same constant
-		for (int i = 0; i < mcds.size(); i++) {
-			MCD mcd1 = mcds.get(i);
-			Mapping constMap1 = mcd1.mappings.constMap;
-			for (int j = 0; j < mcds.size(); j++) {
-				if (i != j) {
-					MCD mcd2 = mcds.get(j);
-					Mapping constMap2 = mcd2.mappings.constMap;
-					for (PredicateElement elem : constMap1.arguments) {
-						if ((constMap2.containsArgument(elem) && !(constMap1
-								.getFirstMatchingValue(elem).equals(constMap2
-								.getFirstMatchingValue(elem))))) {
-							return false;
-						}
-					}
-				}
-			}
+		for (Rewriting rw : rewritings) {
+			rw.removeRedundancies();
 		}
-		return true;
 	}
 
 	/**
-	 * Called by formMCDs. The given query subgoal is tested if it can be mapped
-	 * to every predicate of the view. If a mapping is possible, a new mapping
-	 * object is added to the list of mappings.
+	 * Called by formMCDs. The view predicates the given query subgoal can be
+	 * mapped to are looked up in the view index. For each of them, a new
+	 * mapping object is added to the list of mappings.
 	 * 
 	 * @param subgoal
 	 *            current query subgoal
@@ -397,43 +483,24 @@ public class MiniCon {
 	 * @return list of possible mappings
 	 */
 	private List<MCDMappings> createMapping(Predicate subgoal, DatalogQuery view) {
-		List<Predicate> viewPredicates = view.getPredicates();
 		List<MCDMappings> mappings = new ArrayList<MCDMappings>();
 
-		for (Predicate viewPred : viewPredicates) {
-
-			if (subgoal.canBeMapped(viewPred)) {
-				mappings.add(new MCDMappings(subgoal, viewPred));
-			}
+		for (Predicate viewPred : viewIndex.getMappingPartners(subgoal, view)) {
+			mappings.add(new MCDMappings(subgoal, viewPred));
 		}
 		return mappings;
 	}
 
 	/**
-	 * Called by formMCDs. The method will remove duplicate MCDs. First the
-	 * empty list 'noDuplicates' will be created. By iterating through the
-	 * member list 'mcds', each MCD will be added to the noDuplicates list only
-	 * if there is no duplicate already contained in the list. The reference of
-	 * the member list mcds will finally be linked to the list noDuplicates. The
-	 * equality of the MCDs is determined by method 'equals' in class MCD.
+	 * Called by formMCDs. The method will remove duplicate MCDs. The member
+	 * list 'mcds' is copied to a LinkedHashSet, which keeps the first MCD of
+	 * every group of duplicates in the order of the list. The reference of the
+	 * member list mcds will finally be linked to the list without duplicates.
+	 * The equality of the MCDs is determined by methods 'equals' and
+	 * 'hashCode' in class MCD.
 	 */
 	private void removeDuplicates() {
-
-		List<MCD> noDuplicates = new ArrayList<MCD>();
-
-		for (MCD mcd : mcds) {
-			boolean contains = false;
-
-			for (MCD noDup : noDuplicates) {
-				if (mcd.equals(noDup)) {
-					contains = true;
-				}
-			}
-			if (!contains) {
-				noDuplicates.add(mcd);
-			}
-		}
-		mcds = noDuplicates;
+		mcds = new ArrayList<MCD>(new LinkedHashSet<MCD>(mcds));
 	}
 
 	/**
@@ -488,4 +555,43 @@ public class MiniCon {
 		return rewritings;
 	}
 
+	/**
+	 * Returns the MCDs formed by the algorithm, without duplicates.
+	 * 
+	 * @return list of MCDs
+	 */
+	public List<MCD> getMCDs() {
+		return mcds;
+	}
+
+	/**
+	 * Returns the number of MCDs formed by the algorithm.
+	 * 
+	 * @return number of MCDs
+	 */
+	public int getNumberOfMCDs() {
+		return mcds.size();
+	}
+
+	/**
+	 * Returns the time spent forming the MCDs by the last call of
+	 * startMiniCon.
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public long getFormationTime() {
+		return formationTime;
+	}
+
+	/**
+	 * Returns the time spent combining the MCDs by the last call of
+	 * startMiniCon. In the streaming variant, it includes the time of the
+	 * listener.
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public long getCombinationTime() {
+		return combinationTime;
+	}
+
 }
@@ -0,0 +1,293 @@
+package minicon;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Class MiniConMetrics counts what the rewriting engine does for every
+ * request and publishes the counts through JMX, under the name
+ * "LOIR:type=MiniConMetrics" (see MiniConMetricsMXBean).
+ *
+ * A request is begun and ended by the code that serves it, e.g. BatchRunner
+ * for a test case and RewritingServer for a REWRITE. In between, the request
+ * is the current one of its thread, and the engine adds its counts to the
+ * current request: MCD counts the MCDs attempted and accepted, the depth of
+ * extendMapping and the canBeMapped tests, ViewIndex its canBeMapped tests,
+ * Mapping its clones, the searches of the organiser the prefixes they
+ * explore and prune, and MiniCon and the searches the rewritings they return.
+ * MiniCon hands the request to the tasks of its pool. Without a current
+ * request nothing is counted, so the engine costs one lookup of a thread
+ * local per count when it is not measured.
+ *
+ * When a request ends, its metrics are added to the cumulative metrics and
+ * it becomes the last request, and the slowest request if it took longer
+ * than every request before it.
+ */
+public class MiniConMetrics implements MiniConMetricsMXBean {
+
+	/** name of the MBean */
+	public static final String OBJECT_NAME = "LOIR:type=MiniConMetrics";
+
+	/** counter: MCDs whose MiniCon property was checked */
+	public static final int MCDS_ATTEMPTED = 0;
+
+	/** counter: MCDs that fulfill the MiniCon property */
+	public static final int MCDS_ACCEPTED = 1;
+
+	/** maximum: depth of the recursion of MCD.extendMapping */
+	public static final int EXTEND_MAPPING_DEPTH = 2;
+
+	/** counter: clones of mappings */
+	public static final int MAPPING_CLONES = 3;
+
+	/** counter: tests whether a subgoal can be mapped to a view predicate */
+	public static final int CAN_BE_MAPPED_CALLS = 4;
+
+	/** counter: prefixes of rewritings extended by a search */
+	public static final int PREFIXES_EXPLORED = 5;
+
+	/** counter: prefixes of rewritings cut off by a search */
+	public static final int PREFIXES_PRUNED = 6;
+
+	/** counter: rewritings returned */
+	public static final int REWRITINGS_EMITTED = 7;
+
+	static final int NUMBER_OF_COUNTERS = 8;
+
+	/** phase: parsing the query and the views */
+	public static final int PARSE = 0;
+
+	/** phase: forming the MCDs */
+	public static final int FORMATION = 1;
+
+	/** phase: combining the MCDs, or searching the rewritings by rank */
+	public static final int COMBINATION = 2;
+
+	/** phase: writing the rewritings */
+	public static final int OUTPUT = 3;
+
+	static final int NUMBER_OF_PHASES = 4;
+
+	/** the metrics of the JVM */
+	private static final MiniConMetrics INSTANCE = new MiniConMetrics();
+
+	/** request of every thread that serves one */
+	private static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<RequestMetrics>();
+
+	/** sums of the requests that have ended */
+	private RequestMetrics cumulative = new RequestMetrics("cumulative");
+
+	/** number of requests that have ended */
+	private long requests;
+
+	/** request that ended last */
+	private RequestMetrics lastRequest;
+
+	/** request that took longest */
+	private RequestMetrics slowestRequest;
+
+	private MiniConMetrics() {
+	}
+
+	/**
+	 * Returns the metrics of the JVM.
+	 *
+	 * @return metrics
+	 */
+	public static MiniConMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, unless they are
+	 * registered already.
+	 */
+	public static synchronized void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(INSTANCE, name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register " + OBJECT_NAME,
+					e);
+		}
+	}
+
+	/**
+	 * Begins a request on the current thread.
+	 *
+	 * @param name
+	 *            name of the request, e.g. "testcase 7"
+	 * @return metrics of the request
+	 */
+	public static RequestMetrics begin(String name) {
+		RequestMetrics request = new RequestMetrics(name);
+		request.previous = CURRENT.get();
+		CURRENT.set(request);
+		return request;
+	}
+
+	/**
+	 * Ends a request begun on the current thread and adds it to the
+	 * cumulative metrics.
+	 *
+	 * @param request
+	 *            value returned by begin
+	 */
+	public static void end(RequestMetrics request) {
+		request.finish();
+		setCurrent(request.previous);
+		request.previous = null;
+		INSTANCE.add(request);
+	}
+
+	/**
+	 * Returns the request of the current thread.
+	 *
+	 * @return metrics of the request, null if the thread serves none
+	 */
+	public static RequestMetrics current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Makes the request the current one of the thread, e.g. of a thread of a
+	 * pool that works for the request.
+	 *
+	 * @param request
+	 *            metrics of the request, null for none
+	 * @return request that was current before
+	 */
+	static RequestMetrics setCurrent(RequestMetrics request) {
+		RequestMetrics previous = CURRENT.get();
+		if (request == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(request);
+		}
+		return previous;
+	}
+
+	/**
+	 * Adds to a counter of the current request, if any.
+	 *
+	 * @param counter
+	 *            e.g. MAPPING_CLONES
+	 * @param n
+	 *            amount
+	 */
+	public static void count(int counter, long n) {
+		RequestMetrics request = CURRENT.get();
+		if (request != null) {
+			request.add(counter, n);
+		}
+	}
+
+	/**
+	 * Opens a phase of the current request, if any.
+	 *
+	 * @param phase
+	 *            e.g. FORMATION
+	 */
+	public static void startPhase(int phase) {
+		RequestMetrics request = CURRENT.get();
+		if (request != null) {
+			request.startPhase(phase);
+		}
+	}
+
+	/**
+	 * Closes the innermost phase of the current request, if any.
+	 */
+	public static void endPhase() {
+		RequestMetrics request = CURRENT.get();
+		if (request != null) {
+			request.endPhase();
+		}
+	}
+
+	/**
+	 * Called by end. Adds the request to the cumulative metrics.
+	 */
+	private synchronized void add(RequestMetrics request) {
+		request.addTo(cumulative);
+		requests++;
+		lastRequest = request;
+		if (slowestRequest == null
+				|| request.getTotalTime() > slowestRequest.getTotalTime()) {
+			slowestRequest = request;
+		}
+	}
+
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	public synchronized long getMCDsAttempted() {
+		return cumulative.getMCDsAttempted();
+	}
+
+	public synchronized long getMCDsAccepted() {
+		return cumulative.getMCDsAccepted();
+	}
+
+	public synchronized long getMaxExtendMappingDepth() {
+		return cumulative.getMaxExtendMappingDepth();
+	}
+
+	public synchronized long getMappingClones() {
+		return cumulative.getMappingClones();
+	}
+
+	public synchronized long getCanBeMappedCalls() {
+		return cumulative.getCanBeMappedCalls();
+	}
+
+	public synchronized long getPrefixesExplored() {
+		return cumulative.getPrefixesExplored();
+	}
+
+	public synchronized long getPrefixesPruned() {
+		return cumulative.getPrefixesPruned();
+	}
+
+	public synchronized long getRewritingsEmitted() {
+		return cumulative.getRewritingsEmitted();
+	}
+
+	public synchronized double getParseTime() {
+		return cumulative.getParseTime();
+	}
+
+	public synchronized double getFormationTime() {
+		return cumulative.getFormationTime();
+	}
+
+	public synchronized double getCombinationTime() {
+		return cumulative.getCombinationTime();
+	}
+
+	public synchronized double getOutputTime() {
+		return cumulative.getOutputTime();
+	}
+
+	public synchronized RequestMetrics getLastRequest() {
+		return lastRequest;
+	}
+
+	public synchronized RequestMetrics getSlowestRequest() {
+		return slowestRequest;
+	}
+
+	public synchronized void reset() {
+		cumulative = new RequestMetrics("cumulative");
+		requests = 0;
+		lastRequest = null;
+		slowestRequest = null;
+	}
+}
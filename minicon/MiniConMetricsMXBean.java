@@ -0,0 +1,58 @@
+package minicon;
+
+/**
+ * Interface MiniConMetricsMXBean is the management interface of
+ * MiniConMetrics. The attributes without prefix are cumulative, i.e. summed
+ * over every request that has ended since the start or the last reset; the
+ * maximal extendMapping depth is the maximum over these requests. The times
+ * are in milliseconds.
+ *
+ * LastRequest and SlowestRequest are the metrics of single requests, as
+ * composite data with the same items.
+ */
+public interface MiniConMetricsMXBean {
+
+	/** number of requests that have ended */
+	long getRequests();
+
+	/** number of MCDs whose MiniCon property was checked */
+	long getMCDsAttempted();
+
+	/** number of MCDs that fulfill the MiniCon property */
+	long getMCDsAccepted();
+
+	/** deepest recursion of MCD.extendMapping */
+	long getMaxExtendMappingDepth();
+
+	/** number of mappings cloned */
+	long getMappingClones();
+
+	/** number of tests whether a subgoal can be mapped to a view predicate */
+	long getCanBeMappedCalls();
+
+	/** number of prefixes of rewritings the organiser has extended */
+	long getPrefixesExplored();
+
+	/** number of prefixes of rewritings the organiser has cut off */
+	long getPrefixesPruned();
+
+	/** number of rewritings returned */
+	long getRewritingsEmitted();
+
+	double getParseTime();
+
+	double getFormationTime();
+
+	double getCombinationTime();
+
+	double getOutputTime();
+
+	/** metrics of the request that ended last, null before the first */
+	RequestMetrics getLastRequest();
+
+	/** metrics of the request that took longest, null before the first */
+	RequestMetrics getSlowestRequest();
+
+	/** sets the cumulative metrics back to zero and forgets the requests */
+	void reset();
+}
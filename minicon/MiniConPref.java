@@ -30,7 +30,9 @@ import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 import preference.Organiser;
+import preference.PreferenceProfile;
 import preference.PreferencesFileParser;
+import preference.RewritingScore;
 import datalog.DatalogQuery;
 
 /**
@@ -46,8 +48,17 @@ import datalog.DatalogQuery;
  */
 public class MiniConPref {
 	
-	private static int testID;	
-	private static long numberOfRequiredRewritings;
+	/** ranks of the views */
+	private PreferenceProfile profile;
+	
+	/** number of rewritings returned, all rewritings by default */
+	private long numberOfRequiredRewritings = 999999999999999999L;
+	
+	/** score of the best-first enumeration, null for the rank tier order */
+	private RewritingScore score;
+	
+	/** true if the best rewritings are searched depth-first with branch and bound */
+	private boolean depthFirst;
 
 	/** query Object used by algorithm */
 	private DatalogQuery query;
@@ -86,19 +97,43 @@ public class MiniConPref {
 	 * -sql : SQL input mode;
 	 * 
 	 * -r : remove redundancies
+	 * 
+	 * The arguments of MiniConPref are testId [numberOfRequiredRewritings
+	 * [sum|min|product [dfs]]]; with a score, the best rewritings according
+	 * to this score are returned, searched best first or, with dfs, depth
+	 * first with branch and bound.
 	 */
 	public static void main(String[] args) throws Exception {
 		System.out.println("MiniCon WALO Algorithm");
 		
+		int testID;
+		long numberOfRequiredRewritings;
+		RewritingScore score = null;
+		boolean depthFirst = false;
+		
 		//testID = 5;
 		//numberOfRequiredRewritings = 4;
 		
 		//**/ args = new String[]{"1"};
 		
-		if (args.length < 1 || args.length > 2){
-			System.out.println("USAGE: java minicon.MiniConPref testId [numberOfRequiredRewritings]");
+		if (args.length < 1 || args.length > 4){
+			System.out.println("USAGE: java minicon.MiniConPref testId [numberOfRequiredRewritings [sum|min|product [dfs]]]");
 			System.exit(1);
 		}
+		if (args.length == 4){
+			if (!args[3].equalsIgnoreCase("dfs")){
+				System.out.println("Unknown search: " + args[3]);
+				System.exit(1);
+			}
+			depthFirst = true;
+		}
+		if (args.length >= 3){
+			score = RewritingScore.forName(args[2]);
+			if (score == null){
+				System.out.println("Unknown score: " + args[2]);
+				System.exit(1);
+			}
+		}
 		if (args.length == 1){
 			testID = Integer.valueOf(args[0]).intValue();
 			numberOfRequiredRewritings = 999999999999999999L; // all rewritings are desired !
@@ -112,6 +147,10 @@ public class MiniConPref {
 		MiniConPref mc = InputHandlerPref.handleArguments(new String[]{"-f", "testcases.xml", "" + testID});		
 		
 		if (mc != null) {
+			mc.setPreferences(PreferencesFileParser.loadProfile("preferences.xml", testID));
+			mc.setNumberOfRequiredRewritings(numberOfRequiredRewritings);
+			mc.setScore(score);
+			mc.setDepthFirst(depthFirst);
 			mc.printQuery(); 			// commented for time evaluation
 			mc.printViews();			// commented for time evaluation			
 			mc.startMiniCon();
@@ -123,11 +162,58 @@ public class MiniConPref {
 	}
 
 	
+	/**
+	 * Sets the preference profile that ranks the views. It must be set before
+	 * startMiniCon is called.
+	 * 
+	 * @param profile
+	 *            ranks of the views
+	 */
+	public void setPreferences(PreferenceProfile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Sets the number of rewritings that are returned.
+	 * 
+	 * @param numberOfRequiredRewritings
+	 *            maximal number of rewritings
+	 */
+	public void setNumberOfRequiredRewritings(long numberOfRequiredRewritings) {
+		this.numberOfRequiredRewritings = numberOfRequiredRewritings;
+	}
+
+	/**
+	 * Sets the score of the best-first enumeration of the rewritings.
+	 * 
+	 * @param score
+	 *            aggregation of the view ranks, null for the order of the rank
+	 *            tiers
+	 */
+	public void setScore(RewritingScore score) {
+		this.score = score;
+	}
+
+	/**
+	 * Sets the search of the best rewritings when a score is set: depth-first
+	 * with branch and bound instead of best-first. Both return the exact top
+	 * N; the depth-first search keeps less in memory.
+	 * 
+	 * @param depthFirst
+	 *            true for the branch and bound search
+	 */
+	public void setDepthFirst(boolean depthFirst) {
+		this.depthFirst = depthFirst;
+	}
+
 	/**
 	 * The method will execute the actual algorithm. Three method calls will be
 	 * performed regarding to the three parts of the algorithm. 1. forming MCDs,
 	 * 2. combining MCDs, 3. remove redundancies; the last call depends on
 	 * whether argument -r is provided
+	 * 
+	 * The settings are kept in the MiniConPref object and the views are only
+	 * read, so several objects can run at the same time on the same views.
 	 */
 	public void startMiniCon() {
 		
@@ -135,10 +221,14 @@ public class MiniConPref {
 		// set the MCD preferences ...
 		try {
 			
-			PreferencesFileParser.setViewsPreferences (views, "preferences.xml", testID); 
-			Organiser.createOrganiser(views, query); 
+			Organiser organiser = new Organiser(views, query, profile); 
 			
-			rewritings = Organiser.getDesiredNumberOfRewritings(query, numberOfRequiredRewritings);	
+			if (score == null)
+				rewritings = organiser.getDesiredNumberOfRewritings(numberOfRequiredRewritings);
+			else if (depthFirst)
+				rewritings = organiser.getBoundedRewritings(numberOfRequiredRewritings, score);
+			else
+				rewritings = organiser.getBestRewritings(numberOfRequiredRewritings, score);
 				
 		} catch (Exception e) {
 			e.printStackTrace();
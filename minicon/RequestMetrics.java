@@ -0,0 +1,245 @@
+package minicon;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class RequestMetrics holds the counters and phase times of one request,
+ * e.g. one test case of a batch or one REWRITE of the server, or the sums
+ * over all requests (see MiniConMetrics).
+ *
+ * The counters can be raised by the threads of a pool that work for the
+ * request. The phases are only opened and closed by the thread of the
+ * request. The time between two changes of the phase is added to the
+ * innermost open phase, so that the time of the MCDs formed during the
+ * search of an organiser counts as formation and not as combination.
+ */
+public class RequestMetrics {
+
+	/** name of the request, e.g. "testcase 7" */
+	private String name;
+
+	/** start of the request, from System.nanoTime */
+	private long start;
+
+	/** duration of the request in nanoseconds, set when it ends */
+	private long elapsed;
+
+	/** counters, indexed by the counter constants of MiniConMetrics */
+	private AtomicLongArray counters = new AtomicLongArray(
+			MiniConMetrics.NUMBER_OF_COUNTERS);
+
+	/** times in nanoseconds, indexed by the phase constants of MiniConMetrics */
+	private AtomicLongArray times = new AtomicLongArray(
+			MiniConMetrics.NUMBER_OF_PHASES);
+
+	/** open phases, the innermost last */
+	private int[] phases = new int[4];
+
+	/** number of open phases */
+	private int openPhases;
+
+	/** time of the last change of the phase */
+	private long phaseStart;
+
+	/** request that was current on the thread before this one */
+	RequestMetrics previous;
+
+	/**
+	 * RequestMetrics constructor
+	 *
+	 * @param name
+	 *            name of the request
+	 */
+	RequestMetrics(String name) {
+		this.name = name;
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * Adds to a counter.
+	 *
+	 * @param counter
+	 *            e.g. MiniConMetrics.MCDS_ATTEMPTED
+	 * @param n
+	 *            amount
+	 */
+	public void add(int counter, long n) {
+		if (n != 0) {
+			counters.addAndGet(counter, n);
+		}
+	}
+
+	/**
+	 * Raises a counter that holds a maximum to the value, if it is lower.
+	 *
+	 * @param counter
+	 *            e.g. MiniConMetrics.EXTEND_MAPPING_DEPTH
+	 * @param value
+	 *            value
+	 */
+	public void max(int counter, long value) {
+		long current = counters.get(counter);
+		while (value > current
+				&& !counters.compareAndSet(counter, current, value)) {
+			current = counters.get(counter);
+		}
+	}
+
+	/**
+	 * Opens a phase inside the phases that are open.
+	 *
+	 * @param phase
+	 *            e.g. MiniConMetrics.FORMATION
+	 */
+	public void startPhase(int phase) {
+		long now = System.nanoTime();
+		if (openPhases > 0) {
+			times.addAndGet(phases[openPhases - 1], now - phaseStart);
+		}
+		if (openPhases == phases.length) {
+			int[] grown = new int[2 * phases.length];
+			System.arraycopy(phases, 0, grown, 0, openPhases);
+			phases = grown;
+		}
+		phases[openPhases++] = phase;
+		phaseStart = now;
+	}
+
+	/**
+	 * Closes the innermost open phase.
+	 */
+	public void endPhase() {
+		if (openPhases > 0) {
+			long now = System.nanoTime();
+			times.addAndGet(phases[--openPhases], now - phaseStart);
+			phaseStart = now;
+		}
+	}
+
+	/**
+	 * Called by MiniConMetrics.end. Closes the open phases and fixes the
+	 * duration of the request.
+	 */
+	void finish() {
+		while (openPhases > 0) {
+			endPhase();
+		}
+		elapsed = System.nanoTime() - start;
+	}
+
+	/**
+	 * Called by MiniConMetrics.end. Adds the counters and times of the
+	 * request to the given sums.
+	 *
+	 * @param sums
+	 *            cumulative metrics
+	 */
+	void addTo(RequestMetrics sums) {
+		for (int i = 0; i < MiniConMetrics.NUMBER_OF_COUNTERS; i++) {
+			if (i == MiniConMetrics.EXTEND_MAPPING_DEPTH) {
+				sums.max(i, counters.get(i));
+			} else {
+				sums.add(i, counters.get(i));
+			}
+		}
+		for (int i = 0; i < MiniConMetrics.NUMBER_OF_PHASES; i++) {
+			sums.times.addAndGet(i, times.get(i));
+		}
+		sums.elapsed += elapsed;
+	}
+
+	/**
+	 * Returns the value of a counter.
+	 *
+	 * @param counter
+	 *            e.g. MiniConMetrics.MCDS_ACCEPTED
+	 * @return value
+	 */
+	public long get(int counter) {
+		return counters.get(counter);
+	}
+
+	/**
+	 * Returns the time of a phase.
+	 *
+	 * @param phase
+	 *            e.g. MiniConMetrics.PARSE
+	 * @return time in milliseconds
+	 */
+	public double getTime(int phase) {
+		return times.get(phase) / 1000000.0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/** duration of the request in milliseconds, 0 while it runs */
+	public double getTotalTime() {
+		return elapsed / 1000000.0;
+	}
+
+	public long getMCDsAttempted() {
+		return get(MiniConMetrics.MCDS_ATTEMPTED);
+	}
+
+	public long getMCDsAccepted() {
+		return get(MiniConMetrics.MCDS_ACCEPTED);
+	}
+
+	public long getMaxExtendMappingDepth() {
+		return get(MiniConMetrics.EXTEND_MAPPING_DEPTH);
+	}
+
+	public long getMappingClones() {
+		return get(MiniConMetrics.MAPPING_CLONES);
+	}
+
+	public long getCanBeMappedCalls() {
+		return get(MiniConMetrics.CAN_BE_MAPPED_CALLS);
+	}
+
+	public long getPrefixesExplored() {
+		return get(MiniConMetrics.PREFIXES_EXPLORED);
+	}
+
+	public long getPrefixesPruned() {
+		return get(MiniConMetrics.PREFIXES_PRUNED);
+	}
+
+	public long getRewritingsEmitted() {
+		return get(MiniConMetrics.REWRITINGS_EMITTED);
+	}
+
+	public double getParseTime() {
+		return getTime(MiniConMetrics.PARSE);
+	}
+
+	public double getFormationTime() {
+		return getTime(MiniConMetrics.FORMATION);
+	}
+
+	public double getCombinationTime() {
+		return getTime(MiniConMetrics.COMBINATION);
+	}
+
+	public double getOutputTime() {
+		return getTime(MiniConMetrics.OUTPUT);
+	}
+
+	/**
+	 * Overwrites Object method. Returns the metrics on one line.
+	 */
+	public String toString() {
+		return name + ": " + getMCDsAttempted() + " MCDs attempted, "
+				+ getMCDsAccepted() + " accepted, depth "
+				+ getMaxExtendMappingDepth() + ", " + getMappingClones()
+				+ " clones, " + getCanBeMappedCalls() + " canBeMapped, "
+				+ getPrefixesExplored() + " prefixes explored, "
+				+ getPrefixesPruned() + " pruned, " + getRewritingsEmitted()
+				+ " rewritings, parse " + getParseTime() + " ms, formation "
+				+ getFormationTime() + " ms, combination "
+				+ getCombinationTime() + " ms, output " + getOutputTime()
+				+ " ms, total " + getTotalTime() + " ms";
+	}
+}
@@ -57,9 +57,9 @@ public class Rewriting {
 		this.mcds.addAll(mcds);
 		this.query = query;
 
-		setRewritingMapping();
+		List<Mapping> rewritingMaps = setRewritingMapping();
 		addInterpretedPredicates();
-		setRewritingQuery();
+		setRewritingQuery(rewritingMaps);
 	}
 
 	/**
@@ -86,29 +86,34 @@ public class Rewriting {
 	 * (represent) to that the view variable has been mapped before from the
 	 * rewriting mapping. Add to representative mapping "query elem ->
 	 * represent". Also add "view variable -> represent" to rewriting mapping.
+	 * 
+	 * The rewriting mappings are only needed to create the rewriting query, so
+	 * they are returned instead of being kept by the rewriting.
+	 * 
+	 * @return rewriting mappings - view head variables to query variable or
+	 *         constant; the ith mapping belongs to the ith MCD
 	 */
-	private void setRewritingMapping() {
+	private List<Mapping> setRewritingMapping() {
+		List<Mapping> rewritingMaps = new ArrayList<Mapping>();
 
 		// temporary mapping to have a representatives for each query variable
 		Mapping represents = new Mapping();
 
 		for (MCD mcd : mcds) {
 
-			// get reference for rewritingMapping from mappings object of class
-			// MCD
-			Mapping rewritingMap = mcd.mappings.rewritingMap;
-
-			// list of variables that are already mapped
-			List<Variable> alreadyMapped = new ArrayList<Variable>();
+			// rewriting mapping of the MCD, it belongs to this rewriting only
+			// because the same MCD can be part of several rewritings
+			Mapping rewritingMap = new Mapping();
+			rewritingMaps.add(rewritingMap);
 
 			for (int i = 0; i < mcd.mappings.varMapSize(); i++) {
 
 				PredicateElement queryElem = mcd.mappings.getVarMapArgument(i);
 				Variable viewVar = mcd.mappings.getVarMapValue(i);
 
-				// view variable has not been mapped before
-				if (!alreadyMapped.contains(viewVar)) {
-					alreadyMapped.add(viewVar);
+				// view variable has not been mapped before, i.e. it is not
+				// yet an argument of the rewriting mapping
+				if (!rewritingMap.containsArgument(viewVar)) {
 
 					// there is no yet a representative for the query variable
 					if (!represents.containsArgument(queryElem)) {
@@ -145,6 +150,7 @@ public class Rewriting {
 
 			}
 		}
+		return rewritingMaps;
 	}
 
 	/**
@@ -189,8 +195,10 @@ public class Rewriting {
 	 * 
 	 * 3. Add interpreted predicates to the rewriting.
 	 * 
+	 * @param rewritingMaps
+	 *            rewriting mappings of the MCDs, from setRewritingMapping
 	 */
-	private void setRewritingQuery() {
+	private void setRewritingQuery(List<Mapping> rewritingMaps) {
 
 		rewriting = new DatalogQuery(query.getName());
 
@@ -198,11 +206,12 @@ public class Rewriting {
 			rewriting.addHeadVariable(headVar);
 		}
 
-		for (MCD mcd : mcds) {
+		for (int i = 0; i < mcds.size(); i++) {
+			MCD mcd = mcds.get(i);
 
 			Predicate view = new Predicate(mcd.view.getName());
 			rewriting.addPredicate(view);
-			Mapping rewritingMap = mcd.mappings.rewritingMap;
+			Mapping rewritingMap = rewritingMaps.get(i);
 			for (Variable var : mcd.view.getHeadVariables()) {
 
 				PredicateElement rwVar = rewritingMap
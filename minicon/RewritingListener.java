@@ -0,0 +1,18 @@
+package minicon;
+
+/**
+ * Interface RewritingListener is used to receive the rewritings of the query
+ * as soon as they are found by the combination step of the algorithm, i.e.
+ * without waiting until all the rewritings have been computed.
+ */
+public interface RewritingListener {
+
+	/**
+	 * Called every time a valid rewriting of the query has been found.
+	 *
+	 * @param rewriting
+	 *            rewriting that has been found
+	 */
+	public void rewritingFound(Rewriting rewriting);
+
+}
@@ -0,0 +1,549 @@
+package minicon;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.xml.sax.SAXException;
+
+import preference.Organiser;
+import preference.PreferenceProfile;
+import preference.PreferenceStore;
+import preference.RankTierIndex;
+import preference.RewritingScore;
+import datalog.DatalogQuery;
+
+/**
+ * Class RewritingServer keeps LOIR resident in one JVM and rewrites queries
+ * on request, instead of starting MiniConPref once for every query.
+ *
+ * The server listens on the loopback interface only. The test case file is
+ * indexed once (see TestCaseCatalog) and the views of a test case, with their
+ * ViewIndex and an MCDCache, are parsed on the first request for it and then
+ * kept. The cache only saves work: MCDs cached for one subgoal are remapped
+ * to every other subgoal with the same pattern, so the answer to a request
+ * does not depend on the requests served before. The preferences are kept in
+ * a PreferenceStore that reloads the file when it changes, views a preference
+ * does not rank get a default rank; the rank tiers of a catalog and a
+ * preference are built on the first request and built again when the
+ * preference has been reloaded.
+ *
+ * Every connection is served by a thread of its own, so requests of
+ * different connections run at the same time. A connection can send several
+ * requests, one per line; the answer of a request is sent before the next
+ * request is read. The protocol is line-based text:
+ *
+ * REWRITE testId [pref=ID] [n=N] [score=sum|min|product] [search=dfs]
+ * [query=DATALOG]
+ *
+ * rewrites the query of the test case, or the given Datalog query, over the
+ * views of the test case, with the ranks of the preference (by default the
+ * one with the id of the test case), like MiniConPref. query= must come last,
+ * the rest of the line is the query. Every rewriting is sent on a line
+ * "REWRITING r" as soon as it has been found, followed by "END count"; in the
+ * order of the rank tiers, i.e. without score, the rewritings are searched
+ * one at a time while they are sent. An invalid request is answered with
+ * "ERROR message".
+ *
+ * PING is answered with PONG, QUIT closes the connection.
+ *
+ * Every REWRITE is a request of MiniConMetrics, whose MBean is registered
+ * when the server starts: parse covers the views of a test case requested for
+ * the first time and the query, output the sending of the rewritings.
+ */
+public class RewritingServer implements Closeable {
+
+	/** port of the server if none is given */
+	public static final int DEFAULT_PORT = 7707;
+
+	/** test cases, i.e. the queries and their views */
+	private TestCaseCatalog testcases;
+
+	/** preferences, reloaded when the file changes */
+	private PreferenceStore preferences;
+
+	/** views of every test case requested so far, by test case id */
+	private ConcurrentHashMap<String, Catalog> catalogs;
+
+	/** socket of the server, null until it is started */
+	private ServerSocket serverSocket;
+
+	/** threads of the connections */
+	private ExecutorService connections;
+
+	/** sockets of the open connections */
+	private Set<Socket> sockets;
+
+	/** number of requests served */
+	private AtomicInteger requests;
+
+	/**
+	 * RewritingServer constructor, with PreferenceStore.DEFAULT_RANK for the
+	 * views a preference does not rank.
+	 *
+	 * @param testcaseFile
+	 *            XML file with test cases
+	 * @param preferencesFile
+	 *            XML file of the preferences
+	 * @throws IOException
+	 *             if a file cannot be read
+	 * @throws XMLStreamException
+	 *             if the test case file is not well-formed
+	 * @throws SAXException
+	 *             if the preferences file is not well-formed
+	 */
+	public RewritingServer(String testcaseFile, String preferencesFile)
+			throws IOException, XMLStreamException, SAXException {
+		this(testcaseFile, preferencesFile, PreferenceStore.DEFAULT_RANK);
+	}
+
+	/**
+	 * RewritingServer constructor. The test case file is indexed and the
+	 * preferences file is loaded; the server is not started yet.
+	 *
+	 * @param testcaseFile
+	 *            XML file with test cases
+	 * @param preferencesFile
+	 *            XML file of the preferences
+	 * @param defaultRank
+	 *            rank of the views a preference does not rank, NaN if they
+	 *            have no rank
+	 * @throws IOException
+	 *             if a file cannot be read
+	 * @throws XMLStreamException
+	 *             if the test case file is not well-formed
+	 * @throws SAXException
+	 *             if the preferences file is not well-formed
+	 */
+	public RewritingServer(String testcaseFile, String preferencesFile,
+			double defaultRank) throws IOException, XMLStreamException,
+			SAXException {
+		this.testcases = TestCaseCatalog.open(testcaseFile);
+		this.preferences = new PreferenceStore(preferencesFile, defaultRank);
+		this.catalogs = new ConcurrentHashMap<String, Catalog>();
+		this.requests = new AtomicInteger();
+		this.sockets = Collections
+				.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+	}
+
+	/**
+	 * Starts the server: the socket is bound to the port of the loopback
+	 * interface, the preferences file is watched and connections are
+	 * accepted by a thread of their own.
+	 *
+	 * @param port
+	 *            port of the server, 0 for any free port
+	 * @throws IOException
+	 *             if the socket cannot be bound
+	 */
+	public synchronized void start(int port) throws IOException {
+		if (serverSocket != null) {
+			throw new IllegalStateException("Server already started");
+		}
+		serverSocket = new ServerSocket(port, 50, InetAddress
+				.getLoopbackAddress());
+		connections = Executors.newCachedThreadPool(new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "loir-connection-"
+						+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		preferences.startWatching();
+		MiniConMetrics.register();
+
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				accept();
+			}
+		}, "loir-server");
+		acceptor.start();
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 *
+	 * @return port, -1 if the server is not started
+	 */
+	public synchronized int getPort() {
+		return serverSocket == null ? -1 : serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Returns the number of requests served since the server was created.
+	 *
+	 * @return number of requests
+	 */
+	public int getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Stops the server. The connections that are open are closed, a request
+	 * that is being answered is cut off.
+	 */
+	public synchronized void close() throws IOException {
+		if (serverSocket != null) {
+			serverSocket.close();
+			connections.shutdown();
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+		preferences.close();
+	}
+
+	/**
+	 * Called by the thread of the server. Accepts connections until the
+	 * socket is closed and hands every one to a thread of its own.
+	 */
+	private void accept() {
+		while (true) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketException e) {
+				return; // closed
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			}
+			connections.execute(new Runnable() {
+				public void run() {
+					serve(socket);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Called by the thread of a connection. Reads the requests of the
+	 * connection, one per line, and answers them until the client sends QUIT
+	 * or closes the connection.
+	 *
+	 * @param socket
+	 *            socket of the connection
+	 */
+	private void serve(Socket socket) {
+		sockets.add(socket);
+		try {
+			try {
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						socket.getInputStream(), "UTF-8"));
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(socket
+						.getOutputStream(), "UTF-8"));
+				String line;
+				while ((line = in.readLine()) != null) {
+					line = line.trim();
+					if (line.equalsIgnoreCase("QUIT")) {
+						break;
+					} else if (line.equalsIgnoreCase("PING")) {
+						out.println("PONG");
+					} else if (line.length() > 0) {
+						handle(line, out);
+					}
+					out.flush();
+				}
+			} finally {
+				sockets.remove(socket);
+				socket.close();
+			}
+		} catch (IOException e) {
+			// the client has gone, nothing to answer
+		}
+	}
+
+	/**
+	 * Called by serve. Answers one request. Errors of the request are sent to
+	 * the client, the connection stays open.
+	 *
+	 * @param line
+	 *            request
+	 * @param out
+	 *            writer of the connection
+	 */
+	private void handle(String line, PrintWriter out) {
+		requests.incrementAndGet();
+		RequestMetrics metrics = MiniConMetrics.begin(line.length() > 200 ? line
+				.substring(0, 200) : line);
+		try {
+			metrics.startPhase(MiniConMetrics.PARSE);
+			Request request = new Request(line);
+			Catalog catalog = getCatalog(request.testID);
+			DatalogQuery query = catalog.query;
+			if (request.query != null) {
+				query = InputHandlerPref.parse(request.query);
+				if (query == null) {
+					throw new IllegalArgumentException("Cannot parse query: "
+							+ request.query);
+				}
+			}
+			metrics.endPhase();
+
+			metrics.startPhase(MiniConMetrics.COMBINATION);
+			Organiser organiser = new Organiser(catalog
+					.getRankTiers(request.prefID), query);
+			organiser.setMCDCache(catalog.mcdCache);
+
+			long count = 0;
+			if (request.score == null) {
+				// the rewritings are searched one at a time while they are sent
+				Iterator<Rewriting> rewritings = organiser.getRewritings();
+				while (count < request.numberOfRewritings
+						&& rewritings.hasNext()) {
+					Rewriting rewriting = rewritings.next();
+					metrics.startPhase(MiniConMetrics.OUTPUT);
+					out.println("REWRITING " + rewriting);
+					out.flush();
+					metrics.endPhase();
+					count++;
+				}
+			} else {
+				List<Rewriting> rewritings = request.depthFirst ? organiser
+						.getBoundedRewritings(request.numberOfRewritings,
+								request.score) : organiser.getBestRewritings(
+						request.numberOfRewritings, request.score);
+				metrics.startPhase(MiniConMetrics.OUTPUT);
+				for (Rewriting rewriting : rewritings) {
+					out.println("REWRITING " + rewriting);
+					count++;
+				}
+			}
+			out.println("END " + count);
+
+		} catch (Exception e) {
+			out.println("ERROR "
+					+ String.valueOf(e.getMessage()).replace('\n', ' '));
+		} finally {
+			MiniConMetrics.end(metrics);
+		}
+	}
+
+	/**
+	 * Called by handle. Returns the views of the test case; they are parsed
+	 * on the first request for the test case.
+	 *
+	 * @param testID
+	 *            id of the test case
+	 * @return views of the test case
+	 * @throws IOException
+	 *             if the test case file cannot be read
+	 * @throws XMLStreamException
+	 *             if the test case is not well-formed
+	 */
+	private Catalog getCatalog(String testID) throws IOException,
+			XMLStreamException {
+		Catalog catalog = catalogs.get(testID);
+		if (catalog == null) {
+			TestCase testcase = testcases.getTestCase(testID);
+			if (testcase == null) {
+				throw new IllegalArgumentException("No test case " + testID);
+			}
+			// two first requests may both parse the test case, one is kept
+			Catalog parsed = new Catalog(testcase);
+			catalog = catalogs.putIfAbsent(testID, parsed);
+			if (catalog == null) {
+				catalog = parsed;
+			}
+		}
+		return catalog;
+	}
+
+	/**
+	 * Class Catalog holds what is kept resident for the views of one test
+	 * case: its query, the views and their indexes, an MCD cache shared by
+	 * the requests over these views, and the rank tiers of every preference.
+	 */
+	private class Catalog {
+
+		/** query of the test case */
+		final DatalogQuery query;
+
+		/** index of the views */
+		final ViewIndex viewIndex;
+
+		/** MCDs formed for the requests over the views */
+		final MCDCache mcdCache;
+
+		/** rank tiers of the views, by preference id */
+		final Map<Integer, RankTierIndex> rankTiers;
+
+		/** profile each rank tier index was built from, by preference id */
+		final Map<Integer, PreferenceProfile> profiles;
+
+		Catalog(TestCase testcase) {
+			this.query = InputHandlerPref.parse(testcase.getQuery());
+			List<DatalogQuery> views = new ArrayList<DatalogQuery>();
+			for (String view : testcase.getViews()) {
+				views.add(InputHandlerPref.parse(view));
+			}
+			this.viewIndex = new ViewIndex(views);
+			this.mcdCache = new MCDCache();
+			this.rankTiers = new HashMap<Integer, RankTierIndex>();
+			this.profiles = new HashMap<Integer, PreferenceProfile>();
+		}
+
+		/**
+		 * Returns the rank tiers of the views for the preference. They are
+		 * built again if the preference has been reloaded since.
+		 *
+		 * @param prefID
+		 *            id of the preference
+		 * @return rank tiers of the views
+		 */
+		synchronized RankTierIndex getRankTiers(int prefID) {
+			// getProfile never returns null, a missing preference would rank no view
+			if (!preferences.getPreferenceIds().contains(prefID)) {
+				throw new IllegalArgumentException("No preference " + prefID);
+			}
+			PreferenceProfile profile = preferences.getProfile(prefID);
+			RankTierIndex tiers = rankTiers.get(prefID);
+			if (tiers == null || profiles.get(prefID) != profile) {
+				tiers = new RankTierIndex(viewIndex, profile);
+				rankTiers.put(prefID, tiers);
+				profiles.put(prefID, profile);
+			}
+			return tiers;
+		}
+	}
+
+	/**
+	 * Class Request is a parsed REWRITE request.
+	 */
+	private static class Request {
+
+		/** id of the test case */
+		String testID;
+
+		/** id of the preference, the test case id by default */
+		int prefID;
+
+		/** maximal number of rewritings, all by default */
+		long numberOfRewritings = Long.MAX_VALUE;
+
+		/** score of the best rewritings, null for the rank tier order */
+		RewritingScore score;
+
+		/** true for the branch and bound search of the best rewritings */
+		boolean depthFirst;
+
+		/** Datalog query, null for the query of the test case */
+		String query;
+
+		Request(String line) {
+			int queryStart = line.indexOf("query=");
+			if (queryStart >= 0) {
+				query = line.substring(queryStart + "query=".length()).trim();
+				line = line.substring(0, queryStart);
+			}
+
+			String[] words = line.trim().split("\\s+");
+			if (!words[0].equalsIgnoreCase("REWRITE") || words.length < 2) {
+				throw new IllegalArgumentException("Unknown request: " + line);
+			}
+			testID = words[1];
+			String pref = testID;
+
+			for (int i = 2; i < words.length; i++) {
+				int separator = words[i].indexOf('=');
+				String key = separator < 0 ? words[i] : words[i].substring(0,
+						separator);
+				String value = separator < 0 ? "" : words[i]
+						.substring(separator + 1);
+				if (key.equalsIgnoreCase("pref")) {
+					pref = value;
+				} else if (key.equalsIgnoreCase("n")) {
+					numberOfRewritings = Long.parseLong(value);
+				} else if (key.equalsIgnoreCase("score")) {
+					score = RewritingScore.forName(value);
+					if (score == null) {
+						throw new IllegalArgumentException("Unknown score: "
+								+ value);
+					}
+				} else if (key.equalsIgnoreCase("search")) {
+					if (!value.equalsIgnoreCase("dfs")
+							&& !value.equalsIgnoreCase("best")) {
+						throw new IllegalArgumentException("Unknown search: "
+								+ value);
+					}
+					depthFirst = value.equalsIgnoreCase("dfs");
+				} else {
+					throw new IllegalArgumentException("Unknown parameter: "
+							+ words[i]);
+				}
+			}
+			prefID = Integer.parseInt(pref);
+		}
+	}
+
+	/**
+	 * Starts a server on the given port, with testcases.xml and
+	 * preferences.xml of the base directory by default. The server runs
+	 * until the JVM is stopped.
+	 *
+	 * @param args
+	 *            [-defaultRank RANK] [port [testcasesFile [preferencesFile]]];
+	 *            -defaultRank is the rank of the views a preference does not
+	 *            rank, 0 by default, NaN to answer ERROR for them
+	 */
+	public static void main(String[] args) throws Exception {
+		double defaultRank = PreferenceStore.DEFAULT_RANK;
+		int first = 0;
+		if (args.length >= 2 && args[0].equals("-defaultRank")) {
+			defaultRank = Double.parseDouble(args[1]);
+			first = 2;
+		}
+		if (args.length - first > 3
+				|| (args.length > first && args[first].startsWith("-"))) {
+			System.out
+					.println("USAGE: java minicon.RewritingServer [-defaultRank RANK] [port [testcasesFile [preferencesFile]]]");
+			System.exit(1);
+		}
+		int port = args.length > first ? Integer.parseInt(args[first])
+				: DEFAULT_PORT;
+		String testcaseFile = args.length > first + 1 ? args[first + 1]
+				: "testcases.xml";
+		String preferencesFile = args.length > first + 2 ? args[first + 2]
+				: "preferences.xml";
+
+		final RewritingServer server = new RewritingServer(testcaseFile,
+				preferencesFile, defaultRank);
+		server.start(port);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				try {
+					server.close();
+				} catch (IOException e) {
+					// the JVM stops anyway
+				}
+			}
+		});
+		System.out.println("LOIR server listening on "
+				+ InetAddress.getLoopbackAddress().getHostAddress() + ":"
+				+ server.getPort());
+	}
+}
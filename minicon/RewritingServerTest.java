@@ -0,0 +1,82 @@
+package minicon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Class RewritingServerTest checks that the answer of a RewritingServer to a
+ * request does not depend on the requests served before, i.e. on what the
+ * catalogs of the server, their MCDCache and rank tiers, hold already. Every
+ * request is sent to a new server, then again on the same connection and on
+ * a second connection, and the three answers must be equal.
+ *
+ * Run with java minicon.RewritingServerTest from the directory of
+ * testcases.xml and preferences.xml; prints OK, or the first difference and
+ * exits with status 1.
+ */
+public class RewritingServerTest {
+
+	/** requests, among them queries whose subgoals have the same pattern */
+	private static final String[] REQUESTS = {
+			"REWRITE 1 query=Q(X, Y) :- A1(X, Y), A1(Y, X)",
+			"REWRITE 1 query=Q(X, Y) :- A1(X, Y), A1(Y, Z), A1(Z, X)",
+			"REWRITE 1", "REWRITE 1 n=3 score=sum",
+			"REWRITE 1 n=3 score=min search=dfs", "REWRITE 3", "REWRITE 5" };
+
+	public static void main(String[] args) throws Exception {
+		for (String request : REQUESTS) {
+			// a new server has empty catalogs
+			RewritingServer server = new RewritingServer("testcases.xml",
+					"preferences.xml");
+			server.start(0);
+			try {
+				Socket first = connect(server);
+				Socket second = connect(server);
+				String answer = send(first, request);
+				String repeated = send(first, request);
+				String other = send(second, request);
+				if (!answer.equals(repeated) || !answer.equals(other)) {
+					System.out.println("FAILED: " + request
+							+ "\nfirst answer:\n" + answer + "repeated:\n"
+							+ repeated + "other connection:\n" + other);
+					System.exit(1);
+				}
+				first.close();
+				second.close();
+			} finally {
+				server.close();
+			}
+		}
+		System.out.println("OK");
+	}
+
+	private static Socket connect(RewritingServer server) throws IOException {
+		return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+	}
+
+	/**
+	 * Sends the request and returns the lines of the answer, up to the END
+	 * or ERROR line.
+	 */
+	private static String send(Socket socket, String request)
+			throws IOException {
+		PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket
+				.getInputStream()));
+		out.println(request);
+
+		StringBuffer answer = new StringBuffer();
+		String line;
+		while ((line = in.readLine()) != null) {
+			answer.append(line).append('\n');
+			if (line.startsWith("END") || line.startsWith("ERROR")) {
+				break;
+			}
+		}
+		return answer.toString();
+	}
+}
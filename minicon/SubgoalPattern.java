@@ -0,0 +1,253 @@
+package minicon;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import datalog.CompiledQuery;
+import datalog.Constant;
+import datalog.DatalogQuery;
+import datalog.InterpretedPredicate;
+import datalog.Predicate;
+import datalog.PredicateElement;
+import datalog.Variable;
+
+/**
+ * Class SubgoalPattern is the canonical form of everything the MCDs formed for
+ * a query subgoal depend on, apart from the view. Two subgoals with the same
+ * pattern, in the same or in different queries, get the same MCDs for a view,
+ * up to the renaming of the query variables.
+ *
+ * An MCD is only extended to other subgoals through query variables that are
+ * mapped to existential view variables, and such a variable cannot be a head
+ * variable of the query. The pattern therefore covers the component of the
+ * subgoal, i.e. the subgoals that are connected to it by existential query
+ * variables, in the order of the query body, and the interpreted predicates
+ * on the variables of the component. Variables are numbered in the order of
+ * their first occurrence and marked if they are head variables; constants are
+ * kept as they are.
+ *
+ * The pattern also keeps the predicates and elements of the component in the
+ * canonical order, so that MCDs formed for one query can be translated to
+ * another query with the same pattern.
+ */
+public class SubgoalPattern {
+
+	/** query of the subgoal */
+	private DatalogQuery query;
+
+	/** subgoal the pattern was built for */
+	private Predicate subgoal;
+
+	/** predicates of the component in the order of the query body */
+	private List<Predicate> predicates;
+
+	/** interpreted predicates on variables of the component */
+	private List<InterpretedPredicate> interpretedPredicates;
+
+	/** variables and constants of the component in canonical order */
+	private List<PredicateElement> elements;
+
+	/** canonical form as a String */
+	private String key;
+
+	/**
+	 * SubgoalPattern constructor
+	 *
+	 * @param query
+	 *            query of the subgoal
+	 * @param subgoal
+	 *            query subgoal
+	 */
+	public SubgoalPattern(DatalogQuery query, Predicate subgoal) {
+		this.query = query;
+		this.subgoal = subgoal;
+		this.predicates = new ArrayList<Predicate>();
+		this.interpretedPredicates = new ArrayList<InterpretedPredicate>();
+		this.elements = new ArrayList<PredicateElement>();
+
+		CompiledQuery compiled = query.getCompiled();
+		List<Predicate> body = query.getPredicates();
+
+		// component of the subgoal, connected by existential variables
+		BitSet component = new BitSet(body.size());
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		int start = query.indexOfPredicate(subgoal);
+		component.set(start);
+		queue.add(start);
+
+		while (!queue.isEmpty()) {
+			for (Variable var : body.get(queue.poll()).getVariables()) {
+				if (!compiled.isHeadVariable(var)) {
+					BitSet occurrences = new BitSet(body.size());
+					compiled.addOccurrences(var, occurrences);
+					occurrences.andNot(component);
+					for (int i = occurrences.nextSetBit(0); i >= 0; i = occurrences
+							.nextSetBit(i + 1)) {
+						component.set(i);
+						queue.add(i);
+					}
+				}
+			}
+		}
+
+		Map<PredicateElement, Integer> numbers = new HashMap<PredicateElement, Integer>();
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = component.nextSetBit(0); i >= 0; i = component
+				.nextSetBit(i + 1)) {
+			Predicate pred = body.get(i);
+			predicates.add(pred);
+
+			if (i == start) {
+				builder.append('*');
+			}
+			builder.append(pred.name).append('(');
+			for (PredicateElement elem : pred.getElements()) {
+				appendElement(builder, elem, numbers, compiled);
+				builder.append(',');
+			}
+			builder.append(");");
+		}
+
+		for (InterpretedPredicate interpPred : query.getInterpretedPredicates()) {
+			if (numbers.containsKey(interpPred.getVariable())) {
+				interpretedPredicates.add(interpPred);
+				appendElement(builder, interpPred.getLeft(), numbers, compiled);
+				builder.append(interpPred.getComparator());
+				appendElement(builder, interpPred.getRight(), numbers, compiled);
+				builder.append(';');
+			}
+		}
+		key = builder.toString();
+	}
+
+	/**
+	 * Called by the constructor. Appends the canonical form of an element and
+	 * adds the element to the list of elements on its first occurrence.
+	 *
+	 * @param builder
+	 *            canonical form that is built
+	 * @param elem
+	 *            variable or constant
+	 * @param numbers
+	 *            number of every element already seen
+	 * @param compiled
+	 *            compiled query
+	 */
+	private void appendElement(StringBuilder builder, PredicateElement elem,
+			Map<PredicateElement, Integer> numbers, CompiledQuery compiled) {
+		if (elem instanceof Constant) {
+			builder.append('\'').append(elem.name).append('\'');
+			if (!numbers.containsKey(elem)) {
+				numbers.put(elem, elements.size());
+				elements.add(elem);
+			}
+			return;
+		}
+
+		Integer number = numbers.get(elem);
+		if (number == null) {
+			number = elements.size();
+			numbers.put(elem, number);
+			elements.add(elem);
+			builder.append('#').append(number);
+			if (compiled.isHeadVariable(elem)) {
+				builder.append('!');
+			}
+		} else {
+			builder.append('#').append(number);
+		}
+	}
+
+	/**
+	 * Returns the query of the subgoal.
+	 *
+	 * @return query
+	 */
+	public DatalogQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * Returns the subgoal the pattern was built for. Symmetric subgoals of one
+	 * query, e.g. R(X) and R(Y) in Q(X, Y) :- R(X), R(Y), have the same key,
+	 * which does not tell them apart.
+	 *
+	 * @return query subgoal
+	 */
+	public Predicate getSubgoal() {
+		return subgoal;
+	}
+
+	/**
+	 * Returns the canonical form.
+	 *
+	 * @return String that is equal for subgoals with the same pattern
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns, for every predicate of the component, the predicate at the
+	 * same position in the other pattern. The patterns must be equal.
+	 *
+	 * @param other
+	 *            pattern with the same key
+	 * @return map from predicates of this pattern to those of the other
+	 */
+	Map<Predicate, Predicate> mapPredicates(SubgoalPattern other) {
+		Map<Predicate, Predicate> map = new IdentityHashMap<Predicate, Predicate>();
+		for (int i = 0; i < predicates.size(); i++) {
+			map.put(predicates.get(i), other.predicates.get(i));
+		}
+		return map;
+	}
+
+	/**
+	 * Returns, for every interpreted predicate of the pattern, the one at the
+	 * same position in the other pattern. The patterns must be equal.
+	 *
+	 * @param other
+	 *            pattern with the same key
+	 * @return map from interpreted predicates of this pattern to those of the
+	 *         other
+	 */
+	Map<InterpretedPredicate, InterpretedPredicate> mapInterpretedPredicates(
+			SubgoalPattern other) {
+		Map<InterpretedPredicate, InterpretedPredicate> map = new IdentityHashMap<InterpretedPredicate, InterpretedPredicate>();
+		for (int i = 0; i < interpretedPredicates.size(); i++) {
+			map.put(interpretedPredicates.get(i),
+					other.interpretedPredicates.get(i));
+		}
+		return map;
+	}
+
+	/**
+	 * Returns, for every element of the pattern, the element at the same
+	 * position in the other pattern. The patterns must be equal.
+	 *
+	 * @param other
+	 *            pattern with the same key
+	 * @return map from elements of this pattern to those of the other
+	 */
+	Map<PredicateElement, PredicateElement> mapElements(SubgoalPattern other) {
+		Map<PredicateElement, PredicateElement> map = new HashMap<PredicateElement, PredicateElement>();
+		for (int i = 0; i < elements.size(); i++) {
+			map.put(elements.get(i), other.elements.get(i));
+		}
+		return map;
+	}
+
+	/**
+	 * Overwrites Object method. Returns the canonical form.
+	 */
+	public String toString() {
+		return key;
+	}
+}
@@ -0,0 +1,83 @@
+package minicon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class TestCase holds the strings of one test case of an XML test case file,
+ * as read by TestCaseCatalog. A Datalog test case has a query and views; a SQL
+ * test case has a database schema, a SQL query and SQL views. The strings
+ * still have to be parsed, e.g. by InputHandler.parseInput.
+ */
+public class TestCase {
+
+	/** id of the test case */
+	private String id;
+
+	/** Datalog query, null for a SQL test case */
+	private String query;
+
+	/** Datalog views */
+	private List<String> views;
+
+	/** relations of the database schema */
+	private List<String> schema;
+
+	/** SQL query, null for a Datalog test case */
+	private String sqlQuery;
+
+	/** SQL views */
+	private List<String> sqlViews;
+
+	/**
+	 * TestCase constructor
+	 */
+	TestCase() {
+		this.views = new ArrayList<String>();
+		this.schema = new ArrayList<String>();
+		this.sqlViews = new ArrayList<String>();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	void setId(String id) {
+		this.id = id;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	void setQuery(String query) {
+		this.query = query;
+	}
+
+	public List<String> getViews() {
+		return views;
+	}
+
+	public List<String> getSchema() {
+		return schema;
+	}
+
+	public String getSQLQuery() {
+		return sqlQuery;
+	}
+
+	void setSQLQuery(String sqlQuery) {
+		this.sqlQuery = sqlQuery;
+	}
+
+	public List<String> getSQLViews() {
+		return sqlViews;
+	}
+
+	/**
+	 * Overwrites Object method. Returns the id of the test case.
+	 */
+	public String toString() {
+		return "testcase " + id;
+	}
+}
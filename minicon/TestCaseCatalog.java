@@ -0,0 +1,570 @@
+package minicon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Class TestCaseCatalog reads test cases from an XML test case file without
+ * building a DOM of the whole file.
+ *
+ * On first use, the file is scanned once for the start of every testcase
+ * element and its id, and the byte offset of every test case is stored in an
+ * index file next to the test case file (the name of the file followed by
+ * ".index"). Later, also in later runs of the program, a test case is read by
+ * seeking to its offset and parsing only its element with a StAX reader. The
+ * index is rebuilt when the length or the modification time of the file
+ * changes.
+ *
+ * streamTestCases reads every test case in one pass over the file, for
+ * batch runs.
+ *
+ * The scan for the offsets works on the bytes of the file, so the file must
+ * be in an encoding in which the markup is ASCII, e.g. UTF-8 or ISO-8859-1.
+ * As with the DOM, the first testcase with a given id is the one that is
+ * read.
+ */
+public class TestCaseCatalog {
+
+	/** first entry of an index file, changed when the format changes */
+	private static final String INDEX_FORMAT = "LOIR testcase index 1";
+
+	/** catalog of every file opened, by absolute path */
+	private static final Map<String, TestCaseCatalog> catalogs = new ConcurrentHashMap<String, TestCaseCatalog>();
+
+	/** test case file */
+	private File file;
+
+	/** index file */
+	private File indexFile;
+
+	/** length of the test case file when the index was built */
+	private long length;
+
+	/** modification time of the test case file when the index was built */
+	private long lastModified;
+
+	/** encoding of the test case file */
+	private String encoding;
+
+	/** byte offset of every test case, by id, in the order of the file */
+	private Map<String, Long> offsets;
+
+	/**
+	 * TestCaseCatalog constructor. The index is loaded, or built if it does
+	 * not exist or is out of date.
+	 *
+	 * @param testcaseFile
+	 *            XML file with test cases
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws XMLStreamException
+	 *             if the beginning of the file is not well-formed
+	 */
+	public TestCaseCatalog(String testcaseFile) throws IOException,
+			XMLStreamException {
+		this.file = new File(testcaseFile).getAbsoluteFile();
+		this.indexFile = new File(file.getPath() + ".index");
+		if (!loadIndex()) {
+			buildIndex();
+		}
+	}
+
+	/**
+	 * Returns the catalog of the file. A catalog is created once for every
+	 * file and then shared, e.g. by the runs of a batch.
+	 *
+	 * @param testcaseFile
+	 *            XML file with test cases
+	 * @return catalog of the file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws XMLStreamException
+	 *             if the beginning of the file is not well-formed
+	 */
+	public static TestCaseCatalog open(String testcaseFile)
+			throws IOException, XMLStreamException {
+		String path = new File(testcaseFile).getAbsolutePath();
+		TestCaseCatalog catalog = catalogs.get(path);
+		if (catalog == null) {
+			catalog = new TestCaseCatalog(path);
+			catalogs.put(path, catalog);
+		}
+		return catalog;
+	}
+
+	/**
+	 * Returns the ids of the test cases in the order of the file.
+	 *
+	 * @return set of ids
+	 * @throws IOException
+	 *             if the file has changed and cannot be read again
+	 * @throws XMLStreamException
+	 *             if the file has changed and is not well-formed
+	 */
+	public synchronized Set<String> getIds() throws IOException,
+			XMLStreamException {
+		checkIndex();
+		return Collections.unmodifiableSet(offsets.keySet());
+	}
+
+	/**
+	 * Reads the test case with the given id. Only the element of the test
+	 * case is parsed.
+	 *
+	 * @param id
+	 *            id of the test case
+	 * @return test case, null if the file has no test case with this id
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws XMLStreamException
+	 *             if the element of the test case is not well-formed
+	 */
+	public TestCase getTestCase(String id) throws IOException,
+			XMLStreamException {
+		Long offset;
+		String encoding;
+		synchronized (this) {
+			checkIndex();
+			offset = offsets.get(id);
+			encoding = this.encoding;
+		}
+		if (offset == null) {
+			return null;
+		}
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			in.getChannel().position(offset);
+			XMLStreamReader reader = XMLInputFactory.newInstance()
+					.createXMLStreamReader(new BufferedInputStream(in),
+							encoding);
+			try {
+				reader.nextTag(); // start of the testcase element
+				return readTestCase(reader);
+			} finally {
+				reader.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads every test case of the file, in one pass, and hands it to the
+	 * listener. Only one test case is held in memory at a time.
+	 *
+	 * @param listener
+	 *            receives the test cases in the order of the file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws XMLStreamException
+	 *             if the file is not well-formed
+	 */
+	public void streamTestCases(TestCaseListener listener) throws IOException,
+			XMLStreamException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			XMLStreamReader reader = XMLInputFactory.newInstance()
+					.createXMLStreamReader(in);
+			try {
+				while (reader.hasNext()) {
+					if (reader.next() == XMLStreamConstants.START_ELEMENT
+							&& reader.getLocalName().equals("testcase")) {
+						listener.testCaseRead(readTestCase(reader));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Called by getTestCase and streamTestCases. Reads the element of a test
+	 * case; the reader is at its start tag and is left at its end tag.
+	 *
+	 * As with the DOM, the first id, query, SQLquery and DBschema elements
+	 * below the testcase element are used, and every view and SQLview
+	 * element.
+	 *
+	 * @param reader
+	 *            reader at the start tag of a testcase element
+	 * @return test case
+	 * @throws XMLStreamException
+	 *             if the element is not well-formed
+	 */
+	private static TestCase readTestCase(XMLStreamReader reader)
+			throws XMLStreamException {
+		TestCase testcase = new TestCase();
+		int depth = 1;
+		int schemaDepth = -1; // depth of the children of DBschema
+		boolean schemaRead = false;
+
+		while (depth > 0) {
+			int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+
+				if (depth == schemaDepth) {
+					testcase.getSchema().add(readText(reader));
+				} else if (name.equals("id") && testcase.getId() == null) {
+					testcase.setId(readText(reader));
+				} else if (name.equals("query") && testcase.getQuery() == null) {
+					testcase.setQuery(readText(reader));
+				} else if (name.equals("view")) {
+					testcase.getViews().add(readText(reader));
+				} else if (name.equals("SQLquery")
+						&& testcase.getSQLQuery() == null) {
+					testcase.setSQLQuery(readText(reader));
+				} else if (name.equals("SQLview")) {
+					testcase.getSQLViews().add(readText(reader));
+				} else {
+					depth++;
+					if (name.equals("DBschema") && !schemaRead) {
+						schemaRead = true;
+						schemaDepth = depth;
+					}
+				}
+
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == schemaDepth) {
+					schemaDepth = -1;
+				}
+				depth--;
+			}
+		}
+		return testcase;
+	}
+
+	/**
+	 * Called by readTestCase. Returns the text of an element and of all its
+	 * descendants, like the text content of a DOM node; the reader is at the
+	 * start tag of the element and is left at its end tag.
+	 *
+	 * @param reader
+	 *            reader at a start tag
+	 * @return text of the element
+	 * @throws XMLStreamException
+	 *             if the element is not well-formed
+	 */
+	private static String readText(XMLStreamReader reader)
+			throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.CHARACTERS
+					|| event == XMLStreamConstants.CDATA
+					|| event == XMLStreamConstants.SPACE
+					|| event == XMLStreamConstants.ENTITY_REFERENCE) {
+				text.append(reader.getText());
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Called by getIds and getTestCase. Builds the index again if the file
+	 * has changed since it was built.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws XMLStreamException
+	 *             if the beginning of the file is not well-formed
+	 */
+	private void checkIndex() throws IOException, XMLStreamException {
+		if (file.length() != length || file.lastModified() != lastModified) {
+			buildIndex();
+		}
+	}
+
+	/**
+	 * Called by the constructor. Loads the index file if it belongs to the
+	 * current version of the test case file.
+	 *
+	 * @return true if the index has been loaded
+	 */
+	private boolean loadIndex() {
+		if (!indexFile.isFile()) {
+			return false;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(indexFile)));
+			try {
+				if (!in.readUTF().equals(INDEX_FORMAT)
+						|| in.readLong() != file.length()
+						|| in.readLong() != file.lastModified()) {
+					return false;
+				}
+				String encoding = in.readUTF();
+				int size = in.readInt();
+				Map<String, Long> offsets = new LinkedHashMap<String, Long>();
+				for (int i = 0; i < size; i++) {
+					offsets.put(in.readUTF(), in.readLong());
+				}
+
+				this.length = file.length();
+				this.lastModified = file.lastModified();
+				this.encoding = encoding;
+				this.offsets = offsets;
+				return true;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false; // the index is built again
+		}
+	}
+
+	/**
+	 * Called by the constructor and checkIndex. Scans the test case file for
+	 * the offsets of the test cases and stores them in the index file. If the
+	 * index file cannot be written, the index is only kept in memory.
+	 *
+	 * @throws IOException
+	 *             if the test case file cannot be read
+	 * @throws XMLStreamException
+	 *             if the beginning of the file is not well-formed
+	 */
+	private void buildIndex() throws IOException, XMLStreamException {
+		long length = file.length();
+		long lastModified = file.lastModified();
+		String encoding = readEncoding();
+		Map<String, Long> offsets = new LinkedHashMap<String, Long>();
+
+		ByteScanner scanner = new ByteScanner(new FileInputStream(file));
+		try {
+			long testcaseStart = -1;
+			int c;
+			while ((c = scanner.read()) >= 0) {
+				if (c != '<') {
+					continue;
+				}
+				long start = scanner.position() - 1;
+				String name = scanner.readName(encoding);
+
+				if (name.equals("!--")) {
+					scanner.skipPast("-->");
+				} else if (name.equals("![CDATA[")) {
+					scanner.skipPast("]]>");
+				} else if (name.equals("?")) {
+					scanner.skipPast("?>");
+				} else if (name.equals("testcase")) {
+					testcaseStart = start;
+				} else if (name.equals("id") && testcaseStart >= 0) {
+					String id = scanner.readText(encoding);
+					if (!offsets.containsKey(id)) {
+						offsets.put(id, testcaseStart);
+					}
+					testcaseStart = -1; // only the first id of a test case
+				}
+			}
+		} finally {
+			scanner.close();
+		}
+
+		this.length = length;
+		this.lastModified = lastModified;
+		this.encoding = encoding;
+		this.offsets = offsets;
+		writeIndex();
+	}
+
+	/**
+	 * Called by buildIndex. Returns the encoding of the test case file, as
+	 * declared or detected by a StAX reader.
+	 *
+	 * @return encoding, UTF-8 if it is unknown
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws XMLStreamException
+	 *             if the beginning of the file is not well-formed
+	 */
+	private String readEncoding() throws IOException, XMLStreamException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			XMLStreamReader reader = XMLInputFactory.newInstance()
+					.createXMLStreamReader(in);
+			try {
+				String encoding = reader.getCharacterEncodingScheme();
+				if (encoding == null) {
+					encoding = reader.getEncoding();
+				}
+				return encoding != null ? encoding : "UTF-8";
+			} finally {
+				reader.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Called by buildIndex. Writes the index file; the index stays in memory
+	 * only if the file cannot be written.
+	 */
+	private void writeIndex() {
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(indexFile)));
+			try {
+				out.writeUTF(INDEX_FORMAT);
+				out.writeLong(length);
+				out.writeLong(lastModified);
+				out.writeUTF(encoding);
+				out.writeInt(offsets.size());
+				for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+					out.writeUTF(offset.getKey());
+					out.writeLong(offset.getValue());
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			indexFile.delete(); // an incomplete index must not be loaded
+		}
+	}
+
+	/**
+	 * Class ByteScanner reads the bytes of a file through a buffer and keeps
+	 * track of the offset of the next byte.
+	 */
+	private static class ByteScanner {
+
+		/** stream of the file */
+		private InputStream in;
+
+		/** buffer of the stream */
+		private byte[] buffer = new byte[1 << 16];
+
+		/** number of bytes in the buffer */
+		private int size;
+
+		/** position of the next byte in the buffer */
+		private int next;
+
+		/** offset of the first byte of the buffer in the file */
+		private long bufferOffset;
+
+		/** bytes of a name or text */
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		ByteScanner(InputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * Returns the next byte, -1 at the end of the file.
+		 */
+		int read() throws IOException {
+			if (next == size) {
+				bufferOffset += size;
+				size = in.read(buffer);
+				next = 0;
+				if (size <= 0) {
+					size = 0;
+					return -1;
+				}
+			}
+			return buffer[next++] & 0xff;
+		}
+
+		/**
+		 * Returns the offset of the next byte in the file.
+		 */
+		long position() {
+			return bufferOffset + next;
+		}
+
+		/**
+		 * Reads the name of a tag after '<' up to a blank, '/' or '>', which
+		 * is consumed as well. The name of an end tag is empty. For a
+		 * comment, a CDATA section or a processing instruction only "!--",
+		 * "![CDATA[" or "?" is read, so that the rest can be skipped.
+		 */
+		String readName(String encoding) throws IOException {
+			bytes.reset();
+			int c;
+			int first = -1;
+			while ((c = read()) >= 0 && c != '>' && c != '/' && c != ' '
+					&& c != '\t' && c != '\r' && c != '\n') {
+				bytes.write(c);
+				if (first < 0) {
+					first = c;
+				}
+				if (first == '?') {
+					return "?";
+				}
+				// the name is only decoded at the lengths of "!--" and "![CDATA["
+				if (first == '!' && (bytes.size() == 3 || bytes.size() == 8)) {
+					String name = bytes.toString("ISO-8859-1");
+					if (name.equals("!--") || name.equals("![CDATA[")) {
+						return name;
+					}
+				}
+			}
+			return bytes.toString(encoding);
+		}
+
+		/**
+		 * Reads the text up to the next '<', which is consumed as well.
+		 */
+		String readText(String encoding) throws IOException {
+			bytes.reset();
+			int c;
+			while ((c = read()) >= 0 && c != '<') {
+				bytes.write(c);
+			}
+			return bytes.toString(encoding);
+		}
+
+		/**
+		 * Skips the bytes up to the end of the given ASCII string.
+		 */
+		void skipPast(String end) throws IOException {
+			StringBuilder last = new StringBuilder(); // last bytes read
+			int c;
+			while ((c = read()) >= 0) {
+				last.append((char) c);
+				if (last.length() > end.length()) {
+					last.deleteCharAt(0);
+				}
+				if (last.length() == end.length()
+						&& last.toString().equals(end)) {
+					return;
+				}
+			}
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}
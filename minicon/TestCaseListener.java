@@ -0,0 +1,18 @@
+package minicon;
+
+/**
+ * Interface TestCaseListener is used to receive the test cases of a file one
+ * at a time while TestCaseCatalog streams through the file, i.e. without
+ * holding every test case in memory.
+ */
+public interface TestCaseListener {
+
+	/**
+	 * Called for every test case of the file, in the order of the file.
+	 *
+	 * @param testcase
+	 *            test case that has been read
+	 */
+	public void testCaseRead(TestCase testcase);
+
+}
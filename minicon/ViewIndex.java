@@ -0,0 +1,152 @@
+package minicon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import datalog.DatalogQuery;
+import datalog.Predicate;
+
+/**
+ * Class ViewIndex is an inverted index of a set of views. For every predicate
+ * name and number of elements it stores the views that contain such a
+ * predicate, together with these view predicates.
+ *
+ * A query subgoal can only be mapped to a view predicate with the same name
+ * and number of elements, so the index is used to find the views and view
+ * predicates that can host a subgoal without scanning every predicate of
+ * every view. The remaining condition of Predicate.canBeMapped, i.e. that
+ * constants at the same position are equal, is then only checked on the few
+ * predicates found in the index.
+ *
+ * The index is built once for a list of views and must be rebuilt if the
+ * views change.
+ */
+public class ViewIndex {
+
+	/**
+	 * for every key built from name ID and arity, the views containing
+	 * predicates with this name and arity, in the order of the view list, and
+	 * for each view these predicates in the order of the view body
+	 */
+	private Map<Long, LinkedHashMap<DatalogQuery, List<Predicate>>> index;
+
+	/** indexed views, in the order of the view list */
+	private List<DatalogQuery> views;
+
+	/**
+	 * ViewIndex constructor
+	 *
+	 * @param views
+	 *            list of views to be indexed
+	 */
+	public ViewIndex(List<DatalogQuery> views) {
+		index = new HashMap<Long, LinkedHashMap<DatalogQuery, List<Predicate>>>();
+		this.views = new ArrayList<DatalogQuery>(views);
+
+		for (DatalogQuery view : views) {
+			for (Predicate viewPred : view.getPredicates()) {
+				Long key = key(viewPred);
+
+				LinkedHashMap<DatalogQuery, List<Predicate>> hosts = index
+						.get(key);
+				if (hosts == null) {
+					hosts = new LinkedHashMap<DatalogQuery, List<Predicate>>();
+					index.put(key, hosts);
+				}
+
+				List<Predicate> preds = hosts.get(view);
+				if (preds == null) {
+					preds = new ArrayList<Predicate>();
+					hosts.put(view, preds);
+				}
+				preds.add(viewPred);
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of a predicate in the index. Predicates with the same
+	 * key have the same name and number of elements, i.e. they belong to the
+	 * same abstract service.
+	 *
+	 * @param pred
+	 *            query subgoal or view predicate
+	 * @return key holding the ID of the name in the upper and the number of
+	 *         elements in the lower 32 bits
+	 */
+	public static Long key(Predicate pred) {
+		return ((long) pred.getNameId() << 32) | pred.numberOfElements();
+	}
+
+	/**
+	 * Returns the indexed views in the order of the view list.
+	 *
+	 * @return list of views, must not be modified
+	 */
+	public List<DatalogQuery> getViews() {
+		return views;
+	}
+
+	/**
+	 * Returns the views that contain at least one predicate the subgoal can
+	 * be mapped to. The views are returned in the order of the view list.
+	 *
+	 * @param subgoal
+	 *            query subgoal
+	 * @return list of views that can cover the subgoal
+	 */
+	public List<DatalogQuery> getViews(Predicate subgoal) {
+		List<DatalogQuery> views = new ArrayList<DatalogQuery>();
+		LinkedHashMap<DatalogQuery, List<Predicate>> hosts = index
+				.get(key(subgoal));
+
+		if (hosts != null) {
+			long calls = 0;
+			for (Map.Entry<DatalogQuery, List<Predicate>> host : hosts
+					.entrySet()) {
+				for (Predicate viewPred : host.getValue()) {
+					calls++;
+					if (subgoal.canBeMapped(viewPred)) {
+						views.add(host.getKey());
+						break;
+					}
+				}
+			}
+			MiniConMetrics.count(MiniConMetrics.CAN_BE_MAPPED_CALLS, calls);
+		}
+		return views;
+	}
+
+	/**
+	 * Returns the predicates of the view the subgoal can be mapped to, in the
+	 * order of the view body. Same result as testing Predicate.canBeMapped on
+	 * every predicate of the view.
+	 *
+	 * @param subgoal
+	 *            query subgoal
+	 * @param view
+	 *            view of the index
+	 * @return list of view predicates
+	 */
+	public List<Predicate> getMappingPartners(Predicate subgoal,
+			DatalogQuery view) {
+		List<Predicate> partners = new ArrayList<Predicate>();
+		LinkedHashMap<DatalogQuery, List<Predicate>> hosts = index
+				.get(key(subgoal));
+
+		if (hosts != null && hosts.containsKey(view)) {
+			List<Predicate> viewPreds = hosts.get(view);
+			for (Predicate viewPred : viewPreds) {
+				if (subgoal.canBeMapped(viewPred)) {
+					partners.add(viewPred);
+				}
+			}
+			MiniConMetrics.count(MiniConMetrics.CAN_BE_MAPPED_CALLS, viewPreds
+					.size());
+		}
+		return partners;
+	}
+}
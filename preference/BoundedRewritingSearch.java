@@ -0,0 +1,281 @@
+package preference;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import minicon.MCD;
+import minicon.MiniConMetrics;
+import minicon.RequestMetrics;
+import minicon.Rewriting;
+import datalog.DatalogQuery;
+
+/**
+ * Class BoundedRewritingSearch returns the exact top N rewritings of a query
+ * by a depth-first branch and bound search.
+ *
+ * The search tree is the one of RewritingIterator: an MCD is always chosen
+ * for the first query subgoal that is not covered yet, the MCDs of a subgoal
+ * are tried in rank order, and an MCD is only appended to a prefix if it
+ * covers none of its subgoals and its constant mappings are consistent with
+ * those of the prefix.
+ *
+ * Before the search, the highest rank of the coverage domain of every
+ * subgoal is computed. With it, RewritingScore.bound gives an optimistic
+ * score of every completion of a prefix. The scores of the N best rewritings
+ * found so far are kept in a bounded min-heap; once it is full, a prefix
+ * whose bound is not above the Nth best score cannot improve the result and
+ * its subtree is not searched.
+ *
+ * Rewritings with the same score are ordered by the order in which the
+ * search finds them, i.e. their position in the search tree, which is also
+ * the tie order of RewritingRanker. A subtree whose bound only equals the
+ * Nth best score can therefore be cut: its rewritings are found after those
+ * in the heap and lose the tie. Both searches return the same rewritings.
+ *
+ * Unlike RewritingRanker, the search keeps no frontier of partial rewritings,
+ * only the current path, so its memory does not grow with the number of
+ * prefixes; it relies on the rank order of the MCDs to find good rewritings
+ * early and raise the Nth best score quickly.
+ *
+ * The prefixes searched and cut are counted in the metrics of the current
+ * request (see MiniConMetrics).
+ */
+public class BoundedRewritingSearch {
+
+	/** order of the results: lowest score first, then latest found first */
+	private static final Comparator<Result> HEAP_ORDER = new Comparator<Result>() {
+		public int compare(Result r1, Result r2) {
+			int cmp = Double.compare(r1.score, r2.score);
+			if (cmp == 0) {
+				cmp = r1.sequence > r2.sequence ? -1
+						: (r1.sequence == r2.sequence ? 0 : 1);
+			}
+			return cmp;
+		}
+	};
+
+	/** organiser of the query, provides the MCDs and ranks */
+	private Organiser organiser;
+
+	/** query that is rewritten */
+	private DatalogQuery query;
+
+	/** score of the rewritings */
+	private RewritingScore score;
+
+	/**
+	 * for every query subgoal, the MCDs that can be chosen for it; null until
+	 * the subgoal is expanded for the first time
+	 */
+	private List<List<MCD>> candidates;
+
+	/**
+	 * for every query subgoal, the highest rank of the views of its coverage
+	 * domain, which is at least the rank of every candidate MCD
+	 */
+	private double[] maxRanks;
+
+	/** number of subgoals of the query */
+	private int numberOfSubgoals;
+
+	/** number of rewritings to return */
+	private long n;
+
+	/** N best rewritings found so far, the worst one first */
+	private PriorityQueue<Result> best;
+
+	/** number of rewritings found, used to break ties */
+	private long sequence;
+
+	/** number of prefixes extended, for the metrics */
+	private long explored;
+
+	/** number of prefixes not extended, for the metrics */
+	private long pruned;
+
+	/**
+	 * BoundedRewritingSearch constructor
+	 *
+	 * @param organiser
+	 *            organiser of the query that is rewritten
+	 * @param score
+	 *            aggregation of the view ranks
+	 */
+	public BoundedRewritingSearch(Organiser organiser, RewritingScore score) {
+		this.organiser = organiser;
+		this.query = organiser.getQuery();
+		this.score = score;
+		this.numberOfSubgoals = query.numberOfPredicates();
+		this.candidates = new ArrayList<List<MCD>>(Collections
+				.<List<MCD>> nCopies(numberOfSubgoals, null));
+		this.maxRanks = new double[numberOfSubgoals];
+		for (int i = 0; i < numberOfSubgoals; i++) {
+			maxRanks[i] = organiser.getMaxRank(query.getPredicates().get(i));
+		}
+	}
+
+	/**
+	 * Returns the N rewritings with the highest score. Rewritings with equal
+	 * scores are returned in the order in which they were found, i.e. in
+	 * search tree order, like RewritingRanker returns them.
+	 *
+	 * @param n
+	 *            number of rewritings
+	 * @return best rewritings in decreasing order of their score, fewer than
+	 *         N if the query has fewer rewritings, none for a query without
+	 *         subgoals
+	 */
+	public List<Rewriting> getBestRewritings(long n) {
+		List<Rewriting> rewritings = new ArrayList<Rewriting>();
+		if (n <= 0) {
+			return rewritings;
+		}
+		this.n = n;
+		this.best = new PriorityQueue<Result>(11, HEAP_ORDER);
+		this.sequence = 0;
+		this.explored = 0;
+		this.pruned = 0;
+
+		// a query without subgoals has no rewriting, as with RewritingRanker
+		if (numberOfSubgoals > 0) {
+			search(new ArrayList<MCD>(), new BitSet(), score.initial());
+		}
+
+		List<Result> results = new ArrayList<Result>(best);
+		Collections.sort(results, Collections.reverseOrder(HEAP_ORDER));
+		for (Result result : results) {
+			rewritings.add(new Rewriting(result.mcds, query));
+		}
+
+		RequestMetrics request = MiniConMetrics.current();
+		if (request != null) {
+			request.add(MiniConMetrics.PREFIXES_EXPLORED, explored);
+			request.add(MiniConMetrics.PREFIXES_PRUNED, pruned);
+			request.add(MiniConMetrics.REWRITINGS_EMITTED, rewritings.size());
+		}
+		return rewritings;
+	}
+
+	/**
+	 * Called by getBestRewritings. Searches the subtree of the prefix. Every
+	 * MCD of the first uncovered subgoal that can extend the prefix is
+	 * appended in turn, unless the bound of the extended prefix shows that it
+	 * cannot reach the N best rewritings.
+	 *
+	 * @param prefix
+	 *            MCDs chosen so far
+	 * @param covered
+	 *            query subgoals covered by the prefix
+	 * @param prefixScore
+	 *            score of the prefix
+	 */
+	private void search(List<MCD> prefix, BitSet covered, double prefixScore) {
+		int subgoal = covered.nextClearBit(0);
+		if (subgoal >= numberOfSubgoals) {
+			best.add(new Result(new ArrayList<MCD>(prefix), prefixScore,
+					sequence++));
+			if (best.size() > n) {
+				best.poll();
+			}
+			return;
+		}
+
+		for (MCD mcd : getCandidates(subgoal)) {
+			if (!canExtend(prefix, covered, mcd)) {
+				pruned++;
+				continue;
+			}
+
+			double extendedScore = score.add(prefixScore, organiser
+					.getRank(mcd.getView()));
+			BitSet extendedCovered = (BitSet) covered.clone();
+			extendedCovered.or(mcd.getSubgoalMask());
+
+			if (best.size() >= n) {
+				BitSet uncovered = (BitSet) extendedCovered.clone();
+				uncovered.flip(0, numberOfSubgoals);
+				// the Nth best score is read for every MCD, the previous subtrees may have raised it;
+				// a tie is cut too, the rewritings of the subtree would be found last
+				if (score.bound(extendedScore, uncovered, maxRanks) <= best
+						.peek().score) {
+					pruned++;
+					continue;
+				}
+			}
+
+			explored++;
+			prefix.add(mcd);
+			search(prefix, extendedCovered, extendedScore);
+			prefix.remove(prefix.size() - 1);
+		}
+	}
+
+	/**
+	 * Called by search. Tests whether the MCD can be appended to the prefix:
+	 * it must not cover a subgoal that is already covered, and its constant
+	 * mappings must be consistent with those of every MCD of the prefix.
+	 *
+	 * @param prefix
+	 *            MCDs chosen so far
+	 * @param covered
+	 *            query subgoals covered by the prefix
+	 * @param mcd
+	 *            MCD to be appended
+	 * @return true if the MCD can be appended
+	 */
+	private static boolean canExtend(List<MCD> prefix, BitSet covered, MCD mcd) {
+		if (covered.intersects(mcd.getSubgoalMask())) {
+			return false;
+		}
+		for (MCD prefixMCD : prefix) {
+			if (!Organiser.haveConsistentConstants(mcd, prefixMCD)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called by search. Returns the MCDs that can be chosen for the subgoal,
+	 * in rank order; they are computed by the organiser on first access.
+	 *
+	 * @param subgoal
+	 *            position of the subgoal in the query
+	 * @return MCDs of the coverage domain of the subgoal
+	 */
+	private List<MCD> getCandidates(int subgoal) {
+		List<MCD> mcds = candidates.get(subgoal);
+		if (mcds == null) {
+			mcds = organiser.getCandidateMCDs(query.getPredicates()
+					.get(subgoal));
+			candidates.set(subgoal, mcds);
+		}
+		return mcds;
+	}
+
+	/**
+	 * Class Result is a complete rewriting found by the search, given by its
+	 * MCDs, with its score.
+	 */
+	private static class Result {
+
+		/** MCDs of the rewriting */
+		List<MCD> mcds;
+
+		/** score of the rewriting */
+		double score;
+
+		/** number of the rewriting, used to break ties */
+		long sequence;
+
+		Result(List<MCD> mcds, double score, long sequence) {
+			this.mcds = mcds;
+			this.score = score;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package preference;
+
+import java.util.Comparator;
+
+/**
+ * Class DomainOrder compares rewritings by their vectors of scores, one score
+ * per preference domain (see MultiDomainProfile). compare returns a positive
+ * value if the first vector is better.
+ *
+ * An order must be monotone: a vector that is at least as high as another in
+ * every domain is not worse. MultiDomainRanker relies on it to stop the
+ * enumeration of rewritings early, as the threshold algorithm does.
+ */
+public abstract class DomainOrder implements Comparator<double[]> {
+
+	/**
+	 * prioritization semantics: the scores of the first domain are compared
+	 * first, the scores of the next domain only break ties
+	 */
+	public static final DomainOrder LEXICOGRAPHIC = new DomainOrder(
+			"lexicographic") {
+
+		public int compare(double[] v1, double[] v2) {
+			for (int i = 0; i < v1.length; i++) {
+				int cmp = Double.compare(v1[i], v2[i]);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return 0;
+		}
+	};
+
+	/** name of the order */
+	private String name;
+
+	/**
+	 * DomainOrder constructor
+	 *
+	 * @param name
+	 *            name of the order
+	 */
+	protected DomainOrder(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the order of the weighted sums of the scores.
+	 *
+	 * @param weights
+	 *            weight of every domain, in the order of the domains
+	 * @return order of the weighted sums
+	 * @throws IllegalArgumentException
+	 *             if a weight is negative, the order would not be monotone
+	 */
+	public static DomainOrder weighted(final double... weights) {
+		for (double weight : weights) {
+			if (!(weight >= 0)) {
+				throw new IllegalArgumentException("Negative weight: "
+						+ weight);
+			}
+		}
+
+		return new DomainOrder("weighted") {
+
+			public int compare(double[] v1, double[] v2) {
+				return Double.compare(sum(v1), sum(v2));
+			}
+
+			private double sum(double[] v) {
+				double sum = 0;
+				for (int i = 0; i < v.length; i++) {
+					// avoids NaN for a weight of 0 and an infinite score
+					if (weights[i] != 0) {
+						sum += weights[i] * v[i];
+					}
+				}
+				return sum;
+			}
+		};
+	}
+
+	/**
+	 * Returns true if the first vector dominates the second in the Pareto
+	 * sense: it is at least as high in every domain and higher in one.
+	 *
+	 * @param v1
+	 *            first vector of scores
+	 * @param v2
+	 *            second vector of scores
+	 * @return true if v1 dominates v2
+	 */
+	public static boolean dominates(double[] v1, double[] v2) {
+		boolean higher = false;
+		for (int i = 0; i < v1.length; i++) {
+			if (v1[i] < v2[i]) {
+				return false;
+			}
+			if (v1[i] > v2[i]) {
+				higher = true;
+			}
+		}
+		return higher;
+	}
+
+	/**
+	 * Overwrites Object method. Returns the name of the order.
+	 */
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,179 @@
+package preference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import datalog.DatalogQuery;
+
+/**
+ * Class MultiDomainProfile holds the preferences of one user over several
+ * domains, e.g. cost, quality or response time. Every domain ranks the views
+ * of the catalog like a PreferenceProfile, so every view has a vector of
+ * ranks, one per domain.
+ *
+ * The domains are ordered by priority: the first one is the most important.
+ * The order is used by the lexicographic order of DomainOrder, i.e. the
+ * prioritization semantics; prioritize returns the same profile with another
+ * order of the domains.
+ *
+ * In the preferences file, every numeric attribute of a view element is the
+ * rank of the view in the domain of the attribute name; the attribute "rank"
+ * is the domain of the single-domain PreferenceProfile. The other attributes,
+ * e.g. a comment or a provider, are not domains.
+ */
+public class MultiDomainProfile {
+
+	/** identifier of the profile, i.e. the preference id */
+	private int id;
+
+	/** names of the domains, in decreasing order of priority */
+	private List<String> domains;
+
+	/** ranks of every domain, in the order of the domains */
+	private List<PreferenceProfile> profiles;
+
+	/**
+	 * MultiDomainProfile constructor
+	 *
+	 * @param id
+	 *            identifier of the profile
+	 * @param profiles
+	 *            ranks of every domain, by domain name, in decreasing order
+	 *            of priority
+	 */
+	public MultiDomainProfile(int id,
+			LinkedHashMap<String, PreferenceProfile> profiles) {
+		if (profiles.isEmpty()) {
+			throw new IllegalArgumentException("Preference " + id
+					+ " has no domain");
+		}
+		this.id = id;
+		this.domains = new ArrayList<String>(profiles.keySet());
+		this.profiles = new ArrayList<PreferenceProfile>(profiles.values());
+	}
+
+	/**
+	 * Returns the identifier of the profile.
+	 *
+	 * @return preference id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the names of the domains in decreasing order of priority.
+	 *
+	 * @return list of domain names
+	 */
+	public List<String> getDomains() {
+		return Collections.unmodifiableList(domains);
+	}
+
+	/**
+	 * Returns the number of domains.
+	 *
+	 * @return number of domains
+	 */
+	public int numberOfDomains() {
+		return domains.size();
+	}
+
+	/**
+	 * Returns the ranks of the ith domain.
+	 *
+	 * @param i
+	 *            position of the domain in the order of priority
+	 * @return ranks of the domain
+	 */
+	public PreferenceProfile getProfile(int i) {
+		return profiles.get(i);
+	}
+
+	/**
+	 * Returns the ranks of the domain with the given name.
+	 *
+	 * @param domain
+	 *            name of the domain
+	 * @return ranks of the domain, null if the profile has no such domain
+	 */
+	public PreferenceProfile getProfile(String domain) {
+		int i = domains.indexOf(domain);
+		return i < 0 ? null : profiles.get(i);
+	}
+
+	/**
+	 * Returns the vector of the ranks of the view.
+	 *
+	 * @param view
+	 *            view of the catalog
+	 * @return rank of the view in every domain, in the order of the domains
+	 * @throws IllegalArgumentException
+	 *             if a domain has no rank for the view
+	 */
+	public double[] getRanks(DatalogQuery view) {
+		double[] ranks = new double[profiles.size()];
+		for (int i = 0; i < ranks.length; i++) {
+			ranks[i] = profiles.get(i).getRank(view);
+		}
+		return ranks;
+	}
+
+	/**
+	 * Returns a profile with the given domains, in the given order of
+	 * priority. The domains that are not given are left out.
+	 *
+	 * @param domains
+	 *            names of domains of this profile
+	 * @return new profile
+	 * @throws IllegalArgumentException
+	 *             if this profile has no domain with one of the names
+	 */
+	public MultiDomainProfile prioritize(String... domains) {
+		LinkedHashMap<String, PreferenceProfile> profiles = new LinkedHashMap<String, PreferenceProfile>();
+		for (String domain : domains) {
+			PreferenceProfile profile = getProfile(domain);
+			if (profile == null) {
+				throw new IllegalArgumentException("No domain " + domain
+						+ " in preference " + id);
+			}
+			profiles.put(domain, profile);
+		}
+		return new MultiDomainProfile(id, profiles);
+	}
+
+	/**
+	 * Returns the profile of every preference given by its ranks per domain
+	 * and view, as read from a preferences file.
+	 *
+	 * @param preferences
+	 *            for every preference id, for every domain name, the rank
+	 *            of every view by view name
+	 * @param defaultRank
+	 *            rank of the views a domain does not rank, NaN if they have
+	 *            no rank
+	 * @return profile of every preference, by preference id
+	 */
+	static Map<Integer, MultiDomainProfile> create(
+			Map<Integer, ? extends Map<String, ? extends Map<String, Double>>> preferences,
+			double defaultRank) {
+		Map<Integer, MultiDomainProfile> result = new LinkedHashMap<Integer, MultiDomainProfile>();
+		for (Map.Entry<Integer, ? extends Map<String, ? extends Map<String, Double>>> preference : preferences
+				.entrySet()) {
+			LinkedHashMap<String, PreferenceProfile> profiles = new LinkedHashMap<String, PreferenceProfile>();
+			for (Map.Entry<String, ? extends Map<String, Double>> domain : preference
+					.getValue().entrySet()) {
+				profiles.put(domain.getKey(), new PreferenceProfile(preference
+						.getKey(), domain.getValue(), defaultRank));
+			}
+			if (!profiles.isEmpty()) {
+				result.put(preference.getKey(), new MultiDomainProfile(
+						preference.getKey(), profiles));
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,295 @@
+package preference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import minicon.MCD;
+import minicon.MiniConMetrics;
+import minicon.Rewriting;
+import datalog.DatalogQuery;
+
+/**
+ * Class MultiDomainRanker selects rewritings of a query by their vectors of
+ * scores over several preference domains: the k best rewritings for a
+ * DomainOrder, or the Pareto skyline.
+ *
+ * The rewritings are not all enumerated and scored. As in the threshold
+ * algorithm, every domain has a sorted list of the rewritings, here a
+ * RewritingRanker stream that returns them best first for the ranks of the
+ * domain. The lists are read in turn, one rewriting each; a rewriting seen
+ * for the first time is scored in every domain. The last scores read from
+ * the lists form the threshold vector: a rewriting that has not been seen in
+ * any list has no higher score than the threshold in any domain. The search
+ * stops as soon as
+ *
+ * - for the k best rewritings: the kth best rewriting seen is not worse than
+ * the threshold, since the order is monotone;
+ *
+ * - for the skyline: a rewriting seen dominates the threshold, so it also
+ * dominates every rewriting not seen;
+ *
+ * or when one list is exhausted, since then every rewriting has been seen.
+ */
+public class MultiDomainRanker {
+
+	/** organiser of the query, provides the MCDs */
+	private Organiser organiser;
+
+	/** query that is rewritten */
+	private DatalogQuery query;
+
+	/** ranks of the views in every domain */
+	private MultiDomainProfile profile;
+
+	/** score of a rewriting in one domain */
+	private RewritingScore score;
+
+	/**
+	 * MultiDomainRanker constructor
+	 *
+	 * @param organiser
+	 *            organiser of the query that is rewritten
+	 * @param profile
+	 *            ranks of the views in every domain
+	 * @param score
+	 *            aggregation of the view ranks in one domain
+	 */
+	public MultiDomainRanker(Organiser organiser, MultiDomainProfile profile,
+			RewritingScore score) {
+		this.organiser = organiser;
+		this.query = organiser.getQuery();
+		this.profile = profile;
+		this.score = score;
+	}
+
+	/**
+	 * Returns the k best rewritings for the order. Rewritings with equal
+	 * vectors are returned in the order in which they were found.
+	 *
+	 * @param k
+	 *            number of rewritings
+	 * @param order
+	 *            monotone order of the score vectors
+	 * @return best rewritings in decreasing order, fewer than k if the query
+	 *         has fewer rewritings
+	 */
+	public List<Rewriting> getBestRewritings(long k, final DomainOrder order) {
+		List<Rewriting> rewritings = new ArrayList<Rewriting>();
+		if (k <= 0) {
+			return rewritings;
+		}
+
+		// worst of the best candidates first
+		final Comparator<Candidate> candidateOrder = new Comparator<Candidate>() {
+			public int compare(Candidate c1, Candidate c2) {
+				int cmp = order.compare(c1.scores, c2.scores);
+				if (cmp == 0) {
+					cmp = c1.sequence > c2.sequence ? -1
+							: (c1.sequence == c2.sequence ? 0 : 1);
+				}
+				return cmp;
+			}
+		};
+		PriorityQueue<Candidate> best = new PriorityQueue<Candidate>(11,
+				candidateOrder);
+
+		Search search = new Search();
+		Candidate candidate;
+		while ((candidate = search.next()) != null) {
+			best.add(candidate);
+			if (best.size() > k) {
+				best.poll();
+			}
+
+			if (best.size() == k
+					&& order.compare(best.peek().scores, search.threshold) >= 0) {
+				break;
+			}
+		}
+
+		List<Candidate> result = new ArrayList<Candidate>(best);
+		Collections.sort(result, Collections.reverseOrder(candidateOrder));
+		for (Candidate c : result) {
+			rewritings.add(new Rewriting(c.mcds, query));
+		}
+		MiniConMetrics.count(MiniConMetrics.REWRITINGS_EMITTED, rewritings.size());
+		return rewritings;
+	}
+
+	/**
+	 * Returns the Pareto skyline of the rewritings, i.e. every rewriting
+	 * whose score vector is not dominated by the vector of another one.
+	 *
+	 * @return rewritings of the skyline, in decreasing lexicographic order of
+	 *         their vectors and then in the order in which they were found
+	 */
+	public List<Rewriting> getSkylineRewritings() {
+		List<Candidate> skyline = new ArrayList<Candidate>();
+
+		Search search = new Search();
+		Candidate candidate;
+		while ((candidate = search.next()) != null) {
+			addToSkyline(skyline, candidate);
+
+			if (dominatesThreshold(skyline, search)) {
+				break;
+			}
+		}
+
+		Collections.sort(skyline, new Comparator<Candidate>() {
+			public int compare(Candidate c1, Candidate c2) {
+				int cmp = DomainOrder.LEXICOGRAPHIC.compare(c2.scores,
+						c1.scores);
+				if (cmp == 0) {
+					cmp = c1.sequence < c2.sequence ? -1
+							: (c1.sequence == c2.sequence ? 0 : 1);
+				}
+				return cmp;
+			}
+		});
+
+		List<Rewriting> rewritings = new ArrayList<Rewriting>();
+		for (Candidate c : skyline) {
+			rewritings.add(new Rewriting(c.mcds, query));
+		}
+		MiniConMetrics.count(MiniConMetrics.REWRITINGS_EMITTED, rewritings.size());
+		return rewritings;
+	}
+
+	/**
+	 * Called by getSkylineRewritings. Adds the candidate to the skyline if no
+	 * candidate of the skyline dominates it, and removes the candidates it
+	 * dominates.
+	 *
+	 * @param skyline
+	 *            candidates that dominate each other
+	 * @param candidate
+	 *            new candidate
+	 */
+	private static void addToSkyline(List<Candidate> skyline,
+			Candidate candidate) {
+		for (Candidate c : skyline) {
+			if (DomainOrder.dominates(c.scores, candidate.scores)) {
+				return;
+			}
+		}
+		for (int i = skyline.size() - 1; i >= 0; i--) {
+			if (DomainOrder.dominates(candidate.scores, skyline.get(i).scores)) {
+				skyline.remove(i);
+			}
+		}
+		skyline.add(candidate);
+	}
+
+	/**
+	 * Called by getSkylineRewritings. Returns true if a candidate of the
+	 * skyline dominates the threshold, so that no rewriting that has not
+	 * been seen can be in the skyline.
+	 *
+	 * @param skyline
+	 *            current skyline
+	 * @param search
+	 *            search with the current threshold
+	 * @return true if the search can stop
+	 */
+	private static boolean dominatesThreshold(List<Candidate> skyline,
+			Search search) {
+		for (Candidate c : skyline) {
+			if (DomainOrder.dominates(c.scores, search.threshold)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Class Search reads the sorted lists of the domains in turn and returns
+	 * every rewriting once, when it is seen for the first time, with its
+	 * scores in every domain. It keeps the threshold vector up to date.
+	 */
+	private class Search {
+
+		/** sorted list of the rewritings of every domain */
+		private RewritingRanker.Stream[] streams;
+
+		/** last score read from the list of every domain */
+		private double[] threshold;
+
+		/** rewritings already seen, as lists of MCDs */
+		private Set<List<MCD>> seen;
+
+		/** domain whose list is read next */
+		private int nextDomain;
+
+		/** true once a list is exhausted, i.e. every rewriting was seen */
+		private boolean complete;
+
+		/** number of candidates returned */
+		private long sequence;
+
+		Search() {
+			int domains = profile.numberOfDomains();
+			streams = new RewritingRanker.Stream[domains];
+			threshold = new double[domains];
+			for (int i = 0; i < domains; i++) {
+				streams[i] = new RewritingRanker(organiser, score, profile
+						.getProfile(i)).getStream();
+				threshold[i] = Double.POSITIVE_INFINITY;
+			}
+			seen = new HashSet<List<MCD>>();
+		}
+
+		/**
+		 * Returns the next rewriting that has not been seen yet. Once a list
+		 * is exhausted, every rewriting has been seen.
+		 *
+		 * @return new candidate, null if every rewriting has been seen
+		 */
+		Candidate next() {
+			while (!complete) {
+				int domain = nextDomain;
+				nextDomain = (nextDomain + 1) % streams.length;
+
+				List<MCD> mcds = streams[domain].next();
+				threshold[domain] = streams[domain].getLastScore();
+				if (mcds == null) {
+					complete = true;
+				} else if (seen.add(mcds)) {
+					double[] scores = new double[streams.length];
+					for (int i = 0; i < scores.length; i++) {
+						scores[i] = score.score(mcds, profile.getProfile(i));
+					}
+					return new Candidate(mcds, scores, sequence++);
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Class Candidate is a rewriting that has been seen, given by its MCDs,
+	 * with its scores in every domain.
+	 */
+	private static class Candidate {
+
+		/** MCDs of the rewriting */
+		List<MCD> mcds;
+
+		/** score in every domain */
+		double[] scores;
+
+		/** number of the candidate, used to break ties */
+		long sequence;
+
+		Candidate(List<MCD> mcds, double[] scores, long sequence) {
+			this.mcds = mcds;
+			this.scores = scores;
+			this.sequence = sequence;
+		}
+	}
+}
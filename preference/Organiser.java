@@ -30,195 +30,293 @@
 package preference;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 import datalog.DatalogQuery;
 import datalog.Predicate;
 import datalog.PredicateElement;
 import minicon.MCD;
+import minicon.MCDCache;
 import minicon.MCDMappings;
 import minicon.Mapping;
+import minicon.MiniConMetrics;
 import minicon.Rewriting;
+import minicon.SubgoalPattern;
+import minicon.ViewIndex;
 
+/**
+ * Class Organiser stores the views of the coverage domain of every query
+ * subgoal according to the user's preferences, and computes the rewritings
+ * of the query from the views in rank order.
+ * 
+ * An organiser is created for one query, one catalog of views and one
+ * preference profile, and holds no static state. The views, their ViewIndex
+ * and the profile are only read, so they can be shared by organisers that
+ * rewrite different queries at the same time. The rank tiers of the catalog
+ * are kept in a RankTierIndex, which can be shared as well; the organiser
+ * reads the tiers of its subgoals once, when it is created. The MCDs formed
+ * for the query are cached in the organiser. An organiser itself must only
+ * be used by one thread at a time.
+ */
 public class Organiser {
 	
-private static Hashtable<Predicate, LinkedHashMap <String, List<DatalogQuery>>> organiser;
+	// rank tiers of the coverage domain of every subgoal, in decreasing order of the rank
+	private Hashtable<Predicate, SortedMap <Double, List<DatalogQuery>>> organiser;
+
+	// index of the views: coverage domains and mapping partners are looked up in it
+	private ViewIndex viewIndex;
+	
+	// query that is rewritten
+	private DatalogQuery query;
+	
+	// rank tiers of the catalog, may be shared
+	private RankTierIndex rankTiers;
+	
+	// rank of every view of the coverage domains, as read from the tiers
+	private Map<DatalogQuery, Double> ranks;
+	
+	// views of the coverage domain of every subgoal, in rank order, computed on first access
+	private Map<Predicate, List<DatalogQuery>> sortedCoverageDomains;
+	
+	// MCDs of every subgoal and view, computed on first access
+	private Map<Predicate, Map<DatalogQuery, List<MCD>>> mcds;
 	
-	public static void createOrganiser (List<DatalogQuery> views, DatalogQuery query){
-		LinkedHashMap <String, List<DatalogQuery>> abstractService; 
-		List<DatalogQuery> coverageDomain;
+	// cache of MCDs shared with the organisers of other queries, may be null
+	private MCDCache mcdCache;
+	
+	// pattern of every subgoal, used as key of the cache of MCDs
+	private Map<Predicate, SubgoalPattern> patterns;
+	
+	public Organiser (List<DatalogQuery> views, DatalogQuery query, PreferenceProfile profile){
+		this(new ViewIndex(views), query, profile);
+	}
+	
+	public Organiser (ViewIndex viewIndex, DatalogQuery query, PreferenceProfile profile){
+		this(new RankTierIndex(viewIndex, profile), query);
+	}
+	
+	/**
+	 * Organiser constructor. The rank tiers of the coverage domain of every
+	 * query subgoal are read from the rank tier index, so they are neither
+	 * grouped nor sorted again for every query.
+	 * 
+	 * @param rankTiers
+	 *            rank tiers of the catalog of views, may be shared
+	 * @param query
+	 *            query that is rewritten
+	 */
+	public Organiser (RankTierIndex rankTiers, DatalogQuery query){
+		this.rankTiers = rankTiers;
+		this.viewIndex = rankTiers.getViewIndex();
+		this.query = query;
+		this.ranks = new HashMap<DatalogQuery, Double>();
+		this.sortedCoverageDomains = new HashMap<Predicate, List<DatalogQuery>>();
+		this.mcds = new HashMap<Predicate, Map<DatalogQuery, List<MCD>>>();
 		
-		organiser = new  Hashtable<Predicate, LinkedHashMap <String, List<DatalogQuery>>>();		
+		organiser = new  Hashtable<Predicate, SortedMap <Double, List<DatalogQuery>>>();		
 		
 		for (int i = 0; i < query.getPredicates().size(); i++){ 
 			Predicate subGoal = query.getPredicates().get(i); 			
-			coverageDomain = getCoverageDomain(subGoal, views); 		
-			abstractService = new LinkedHashMap<String, List<DatalogQuery>>(); 
-			abstractService.putAll(rankViews(coverageDomain)); 
+			SortedMap <Double, List<DatalogQuery>> abstractService = rankTiers.getTiers(subGoal); 
+			for (Map.Entry<Double, List<DatalogQuery>> tier : abstractService.entrySet()){
+				for (DatalogQuery view : tier.getValue())
+					ranks.put(view, tier.getKey());
+			}
 			organiser.put(subGoal, abstractService);
 		}				
 	}
 	
-	public static Hashtable<Predicate, LinkedHashMap <String, List<DatalogQuery>>> getOrganiser (){
+	public Hashtable<Predicate, SortedMap <Double, List<DatalogQuery>>> getOrganiser (){
 		return organiser;
 	}	
+	
+	public DatalogQuery getQuery (){
+		return query;
+	}
+	
+	/**
+	 * Sets the cache in which the MCDs of a subgoal and a view are looked up
+	 * before they are formed. The cache can be shared by organisers of
+	 * different queries over the same views.
+	 * 
+	 * @param mcdCache
+	 *            cache of MCDs, null to form every MCD
+	 */
+	public void setMCDCache (MCDCache mcdCache){
+		this.mcdCache = mcdCache;
+	}
+	
+	// the rank of the view when the organiser was created
+	public double getRank (DatalogQuery view){
+		Double rank = ranks.get(view);
+		if (rank == null)   // not in a coverage domain of the query
+			return rankTiers.getRank(view);
+		return rank;
+	}
 		 
-	public static List<Rewriting> getDesiredNumberOfRewritings (DatalogQuery query, long desiredNumberOfRewritings){ 
+	public List<Rewriting> getDesiredNumberOfRewritings (long desiredNumberOfRewritings){ 
 		List<Rewriting> rewritings = new ArrayList<Rewriting>();
-				
-		try {
-			setDesiredNumberOfRewriting(rewritings, new ArrayList<MCD>(), query.getPredicates(), query, desiredNumberOfRewritings);
-		} catch (Exception e) {
-			// The desired number of rewriting is reached
+		Iterator<Rewriting> iterator = getRewritings();
+		
+		// stop as soon as the desired number of rewritings is reached
+		while (rewritings.size() < desiredNumberOfRewritings && iterator.hasNext()){
+			rewritings.add(iterator.next());
 		}
 		
 		return rewritings;	
 	}
 	
-	private static void setDesiredNumberOfRewriting(List<Rewriting> rewritings, List<MCD> rewritingPrefix, List<Predicate> subGoals, DatalogQuery query, long desiredNumberOfRewritings) throws Exception{
-		
-		if (rewritings.size() >= desiredNumberOfRewritings)
-			throw new Exception("The desired number of rewriting is reached ...");
-		
-		if (subGoals.size() == 0){
-			if (isRewriting(rewritingPrefix, query))
-				rewritings.add(new Rewriting(rewritingPrefix, query));
-		} else {
-			List<MCD> sortedCoverageDomain = getMCDs(getSortedCoverageDomain(subGoals.get(0)), /*subGoals*/ subGoals.get(0), query);
-			
-			// REMOVE DUPLICATE ???			
-			//sortedCoverageDomain = removeDuplicates(sortedCoverageDomain);
-									
-			for (int i = 0 ; i < sortedCoverageDomain.size(); i++){
-				MCD mcd = sortedCoverageDomain.get(i);
-				List<MCD> newRewritingPrefix = new ArrayList<MCD>(rewritingPrefix);
-				newRewritingPrefix.add(mcd);
-				List<Predicate> remainingPredicatesToCover = getRemainingPredicatesToCover(mcd, subGoals);
-				setDesiredNumberOfRewriting(rewritings, newRewritingPrefix, remainingPredicatesToCover, query, desiredNumberOfRewritings);
-			}
-		}
-	}	
+	/**
+	 * Returns the rewritings of the query in the order of the rank tiers, i.e.
+	 * in the same order as getDesiredNumberOfRewritings. A rewriting is only
+	 * searched when the caller asks for it, so the caller can stop at any time
+	 * without deciding on the number of rewritings in advance.
+	 * 
+	 * @return iterator over the rewritings
+	 */
+	public Iterator<Rewriting> getRewritings (){
+		return new RewritingIterator(this);
+	}
 	
-	private static List<Predicate> getRemainingPredicatesToCover(MCD mcd, List<Predicate> subGoals){
-		List<Predicate> remainingPredicatesToCover = new ArrayList<Predicate>();
-		for (int i = 0; i < subGoals.size(); i++){
-			if (! mcd.getSubgoals().contains(subGoals.get(i)))
-				remainingPredicatesToCover.add(subGoals.get(i));
-		}
-		
-		return remainingPredicatesToCover;
+	/**
+	 * Returns the N rewritings with the highest score, where the score
+	 * aggregates the ranks of the views of a rewriting. Unlike
+	 * getDesiredNumberOfRewritings, which returns the first N rewritings of a
+	 * depth-first search through the rank tiers, the rewritings are enumerated
+	 * best first by a RewritingRanker, so the result is the exact top N.
+	 * 
+	 * @param desiredNumberOfRewritings
+	 *            N
+	 * @param score
+	 *            aggregation of the view ranks, e.g. RewritingScore.SUM
+	 * @return best rewritings in decreasing order of their score
+	 */
+	public List<Rewriting> getBestRewritings (long desiredNumberOfRewritings, RewritingScore score){
+		return new RewritingRanker(this, score).getBestRewritings(desiredNumberOfRewritings);
 	}
 	
-	private static List<DatalogQuery> getSortedCoverageDomain (Predicate abstractService){
-		//if (abstractService.isCoverageDomainProcessed()) // If it's already computed !
-			//return abstractService.getSortedCoverageDomain();
-		if (abstractService.isCoverageDomainProcessed()) // If it's already computed !
-			return abstractService.getCoverageDomain();
-		
-		// else : the coverage domain for this abstract service is not yet processed !
-		LinkedHashMap<String, List<DatalogQuery>> rankedViews = organiser.get(abstractService);
-		List<DatalogQuery> result = new ArrayList<DatalogQuery>();
-		String rank;
-		Iterator <String> iterator = rankedViews.keySet().iterator();
-
-		while (iterator.hasNext()){
-					rank = iterator.next();
-					result.addAll(rankedViews.get(rank));
-				}	
-		//if (abstractService.getSortedCoverageDomain() == null) // always the case
-			//abstractService.setSortedCoverageDomain(result);
-		abstractService.setCoverageDomain(result);
-		
-		return result;
+	/**
+	 * Returns the N rewritings with the highest score, like getBestRewritings,
+	 * but by a depth-first branch and bound search through the rank tiers
+	 * (see BoundedRewritingSearch): a prefix whose best possible completion
+	 * cannot beat the current Nth best rewriting is not extended. The search
+	 * only keeps the current path in memory.
+	 * 
+	 * @param desiredNumberOfRewritings
+	 *            N
+	 * @param score
+	 *            aggregation of the view ranks, e.g. RewritingScore.MIN
+	 * @return best rewritings in decreasing order of their score
+	 */
+	public List<Rewriting> getBoundedRewritings (long desiredNumberOfRewritings, RewritingScore score){
+		return new BoundedRewritingSearch(this, score).getBestRewritings(desiredNumberOfRewritings);
 	}
-		
-	private static List<DatalogQuery> getCoverageDomain(Predicate abstractService, List<DatalogQuery> views){
-		List<DatalogQuery> coverageDomain = new LinkedList<DatalogQuery>();
-		
-		for (int i = 0; i < views.size(); i++){
-			DatalogQuery view = views.get(i);
-			List<Predicate> coveredSubGoals = view.getPredicates();
-			for (int j = 0; j < coveredSubGoals.size(); j++ ){
-				if (coveredSubGoals.get(j).name.equals(abstractService.name)){
-					coverageDomain.add(view);
-					j = coveredSubGoals.size();
-				}
-			}			
-		}
-
-		return coverageDomain;
+	
+	/**
+	 * Returns the k best rewritings over several preference domains. The
+	 * score of a rewriting in every domain is aggregated with the given
+	 * score, and the vectors of scores are compared with the given order,
+	 * e.g. DomainOrder.LEXICOGRAPHIC for prioritization semantics.
+	 * 
+	 * @param k
+	 *            number of rewritings
+	 * @param profile
+	 *            ranks of the views in every domain
+	 * @param score
+	 *            aggregation of the view ranks in one domain
+	 * @param order
+	 *            order of the score vectors
+	 * @return best rewritings in decreasing order
+	 */
+	public List<Rewriting> getBestRewritings (long k, MultiDomainProfile profile, RewritingScore score, DomainOrder order){
+		return new MultiDomainRanker(this, profile, score).getBestRewritings(k, order);
 	}
 	
-	private static LinkedHashMap <String, List<DatalogQuery>> rankViews (List<DatalogQuery> views){
-		LinkedHashMap <String, List<DatalogQuery>> rank = new LinkedHashMap <String, List<DatalogQuery>>();
-		
-		if (views.size() > 0){
-			
-			List<DatalogQuery> viewList = new LinkedList<DatalogQuery>();
-			viewList.add(0, views.get(0)); 
-			rank.put("" + views.get(0).getRank(), viewList);
-			
-			for (int i = 1 ; i < views.size(); i++){
-				
-				if (rank.keySet().contains(views.get(i).getRank()+"")){ // le rank existe d�j�
-					rank.get(views.get(i).getRank()+"").add(views.get(i));
-				} else {
-					viewList = new LinkedList<DatalogQuery>();
-					viewList.add(0, views.get(i));
-					rank.put("" + views.get(i).getRank(), viewList);
-				}
-			}
-			
+	/**
+	 * Returns the Pareto skyline of the rewritings over several preference
+	 * domains, i.e. the rewritings whose vector of scores is not dominated by
+	 * the vector of another rewriting.
+	 * 
+	 * @param profile
+	 *            ranks of the views in every domain
+	 * @param score
+	 *            aggregation of the view ranks in one domain
+	 * @return rewritings of the skyline, in lexicographic order of their
+	 *         score vectors
+	 */
+	public List<Rewriting> getSkylineRewritings (MultiDomainProfile profile, RewritingScore score){
+		return new MultiDomainRanker(this, profile, score).getSkylineRewritings();
+	}
+	
+	// the MCDs of the sorted coverage domain of the subgoal, without duplicates, in rank order
+	// (their time counts as formation in the metrics of the current request)
+	List<MCD> getCandidateMCDs(Predicate subGoal){
+		MiniConMetrics.startPhase(MiniConMetrics.FORMATION);
+		try {
+			return removeDuplicates(getMCDs(getSortedCoverageDomain(subGoal), subGoal));
+		} finally {
+			MiniConMetrics.endPhase();
 		}
-		
-		sortRankedViews(rank); // sort, for each subgoal, the ranks
-		
-		return rank;
 	}
 	
-	private static void sortRankedViews (LinkedHashMap <String, List<DatalogQuery>> ranks){
-		LinkedHashMap <String, List<DatalogQuery>> temp = new LinkedHashMap<String, List<DatalogQuery>> ();		
-		LinkedList<String> rankValues = new LinkedList<String>();
-		for (String rank: ranks.keySet()){
-			rankValues.add(rank);
+	// the highest rank of the coverage domain of the subgoal, negative infinity if it is empty
+	double getMaxRank(Predicate subGoal){
+		SortedMap <Double, List<DatalogQuery>> rankedViews = organiser.get(subGoal);
+		if (rankedViews.isEmpty())
+			return Double.NEGATIVE_INFINITY;
+		return rankedViews.firstKey();   // the tiers are in decreasing order
+	}
+	
+	// the highest rank in the domain of the views of the coverage domain of the subgoal, negative infinity if it is empty
+	double getMaxRank(Predicate subGoal, PreferenceProfile domain){
+		double maxRank = Double.NEGATIVE_INFINITY;
+		for (DatalogQuery view : getSortedCoverageDomain(subGoal)){
+			maxRank = Math.max(maxRank, domain.getRank(view));
 		}
-		
-		sortDoubleString (rankValues); // decreasing ...
-		
-		for (int i = 0; i < rankValues.size(); i++)
-			temp.put(rankValues.get(i), ranks.get(rankValues.get(i)));
-		
-		ranks.clear();
-		ranks.putAll(temp);
+		return maxRank;
 	}
 	
-	private static void sortDoubleString (List<String> rankValues){ // decreasing ...
-		boolean exchange;// = false;
-		int n = rankValues.size();		
+	private List<DatalogQuery> getSortedCoverageDomain (Predicate abstractService){
+		List<DatalogQuery> result = sortedCoverageDomains.get(abstractService);
+		if (result != null) // If it's already computed !
+			return result;
 		
-		do {
-			exchange = false;
-			for (int i = 0 ; i < (n - 1); i++){
-				if (Double.valueOf(rankValues.get(i)).doubleValue() < Double.valueOf(rankValues.get(i+1)).doubleValue()){					
-					String tampon = rankValues.get(i);
-					rankValues.set(i, rankValues.get(i+1));
-					rankValues.set(i+1, tampon);
-					exchange = true;
-				}
-			}
-			n--;
-		} while (exchange);
+		// else : the coverage domain for this abstract service is not yet processed !
+		SortedMap<Double, List<DatalogQuery>> rankedViews = organiser.get(abstractService);
+		result = new ArrayList<DatalogQuery>();
+		for (List<DatalogQuery> tier : rankedViews.values())
+			result.addAll(tier);
+		sortedCoverageDomains.put(abstractService, result);
+		
+		return result;
 	}
-	
-	private static List<MCD> getMCDs(DatalogQuery view,  Predicate subGoal, DatalogQuery query){
 		
-		if (subGoal.isMCDProcessed(view))   // the MCDs for this view and subgoal are already processed 
-			return subGoal.getMCDsRelatedToView(view);
+	private List<MCD> getMCDs(DatalogQuery view,  Predicate subGoal){
+		
+		Map<DatalogQuery, List<MCD>> subGoalMCDs = this.mcds.get(subGoal);
+		if (subGoalMCDs == null){
+			subGoalMCDs = new HashMap<DatalogQuery, List<MCD>>();
+			this.mcds.put(subGoal, subGoalMCDs);
+		}
+		if (subGoalMCDs.containsKey(view))   // the MCDs for this view and subgoal are already processed 
+			return subGoalMCDs.get(view);
 		//else
 		
+		SubgoalPattern pattern = null;
+		if (mcdCache != null){   // the MCDs may have been formed for another query 
+			pattern = getPattern(subGoal);
+			List<MCD> cached = mcdCache.get(pattern, view);
+			if (cached != null){
+				subGoalMCDs.put(view, cached);
+				return cached;
+			}
+		}
+		
 		List<MCD> mcds = new ArrayList<MCD> ();
 				
 		List<MCDMappings> mappings = createMapping(subGoal, view);
@@ -228,7 +326,7 @@ private static Hashtable<Predicate, LinkedHashMap <String, List<DatalogQuery>>>
 		for (MCDMappings map : mappings) {
 			
 			// create MCD
-			MCD mcd = new MCD(subGoal, query, view, map);
+			MCD mcd = new MCD(subGoal, query, view, map, viewIndex);
 
 			// MCD can be extend to fulfill properties
 			if (mcd.fulfillProperty()) {
@@ -236,24 +334,38 @@ private static Hashtable<Predicate, LinkedHashMap <String, List<DatalogQuery>>>
 			}
 		}
 		
-		subGoal.setMCDsRelatedToView(view, mcds);
+		subGoalMCDs.put(view, mcds);
+		if (mcdCache != null)
+			mcdCache.put(pattern, view, mcds);
 		
 		return mcds;
 	}
 	
-	private static List<MCD> getMCDs (List<DatalogQuery> views, Predicate subGoal, DatalogQuery query){
+	// the pattern of the subgoal, computed on first access
+	private SubgoalPattern getPattern (Predicate subGoal){
+		if (patterns == null)
+			patterns = new HashMap<Predicate, SubgoalPattern>();
+		SubgoalPattern pattern = patterns.get(subGoal);
+		if (pattern == null){
+			pattern = new SubgoalPattern(query, subGoal);
+			patterns.put(subGoal, pattern);
+		}
+		return pattern;
+	}
+	
+	private List<MCD> getMCDs (List<DatalogQuery> views, Predicate subGoal){
 		List<MCD> mcds = new ArrayList<MCD>();
 
 		for (DatalogQuery view : views){			
-			List<MCD> list = getMCDs(view, subGoal, query); 
+			List<MCD> list = getMCDs(view, subGoal); 
 			mcds.addAll(list);
 		}
 		return mcds;
 	}
 	/**
-	 * Called by formMCDs. The given query subgoal is tested if it can be mapped
-	 * to every predicate of the view. If a mapping is possible, a new mapping
-	 * object is added to the list of mappings.
+	 * Called by getMCDs. The view predicates the given query subgoal can be
+	 * mapped to are looked up in the view index. For each of them, a new
+	 * mapping object is added to the list of mappings.
 	 * 
 	 * @param subgoal
 	 *            current query subgoal
@@ -261,81 +373,42 @@ private static Hashtable<Predicate, LinkedHashMap <String, List<DatalogQuery>>>
 	 *            current view
 	 * @return list of possible mappings
 	 */
-	private static List<MCDMappings> createMapping(Predicate subgoal, DatalogQuery view) {
-		List<Predicate> viewPredicates = view.getPredicates();
+	private List<MCDMappings> createMapping(Predicate subgoal, DatalogQuery view) {
 		List<MCDMappings> mappings = new ArrayList<MCDMappings>();
 
-		for (Predicate viewPred : viewPredicates) {
-
-			if (subgoal.canBeMapped(viewPred)) {
-				mappings.add(new MCDMappings(subgoal, viewPred));
-			}
+		for (Predicate viewPred : viewIndex.getMappingPartners(subgoal, view)) {
+			mappings.add(new MCDMappings(subgoal, viewPred));
 		}
 		return mappings;
 	}
 	
-	private static boolean isRewriting(List<MCD> mcds, DatalogQuery query) {
-		int countPredicates = 0;
-
-		for (MCD mcd : mcds) {
-			countPredicates += mcd.numberOfSubgoals();
-		}
-
-		// compare total number of predicates with number of query subgoals
-		if (countPredicates != query.numberOfPredicates()) {
-			return false;
-		}
-
-		// test pairwise disjoint
-		for (int i = 0; i < mcds.size(); i++) {
-			for (int j = 0; j < mcds.size(); j++) {
-				if (i != j) {
-					MCD mcd1 = mcds.get(i);
-					MCD mcd2 = mcds.get(j);
-					if (!mcd1.isDisjoint(mcd2)) {
-						return false;
-					}
-				}
-			}
-		}
-
-		// x exists in C1 and C2 ==> it must be mapped to the same constant
-		for (int i = 0; i < mcds.size(); i++) {
-			MCD mcd1 = mcds.get(i);
-			Mapping constMap1 = mcd1.mappings.constMap;
-			for (int j = 0; j < mcds.size(); j++) {
-				if (i != j) {
-					MCD mcd2 = mcds.get(j);
-					Mapping constMap2 = mcd2.mappings.constMap;
-					for (PredicateElement elem : constMap1.arguments) {
-						if ((constMap2.containsArgument(elem) && !(constMap1
-								.getFirstMatchingValue(elem).equals(constMap2
-								.getFirstMatchingValue(elem))))) {
-							return false;
-						}
-					}
-				}
+	/**
+	 * Called when an MCD is appended to a prefix of a rewriting. Returns true
+	 * if the MCDs do not map the same query element to different constants,
+	 * i.e. x exists in C1 and C2 ==> it must be mapped to the same constant.
+	 * 
+	 * @param mcd1
+	 *            first MCD
+	 * @param mcd2
+	 *            second MCD
+	 * @return true if the constant mappings of the MCDs are consistent
+	 */
+	static boolean haveConsistentConstants(MCD mcd1, MCD mcd2) {
+		Mapping constMap1 = mcd1.mappings.constMap;
+		Mapping constMap2 = mcd2.mappings.constMap;
+		for (PredicateElement elem : constMap1.arguments) {
+			if (constMap2.containsArgument(elem)
+					&& !(constMap1.getFirstMatchingValue(elem)
+							.equals(constMap2.getFirstMatchingValue(elem)))) {
+				return false;
 			}
 		}
 		return true;
 	}
 
 	private static List<MCD> removeDuplicates(List<MCD> mcds) {
-		List<MCD> noDuplicates = new ArrayList<MCD>();
-
-		for (MCD mcd : mcds) {
-			boolean contains = false;
-
-			for (MCD noDup : noDuplicates) {
-				if (mcd.equals(noDup)) {
-					contains = true;
-				}
-			}
-			if (!contains) {
-				noDuplicates.add(mcd);
-			}
-		}
-		return noDuplicates;
+		// keeps the first MCD of every group of duplicates, in rank order
+		return new ArrayList<MCD>(new LinkedHashSet<MCD>(mcds));
 	}
 
 }
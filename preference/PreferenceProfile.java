@@ -0,0 +1,147 @@
+package preference;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import datalog.DatalogQuery;
+import datalog.SymbolTable;
+
+/**
+ * Class PreferenceProfile holds the preferences of one user, i.e. the rank of
+ * every view of the catalog. The higher the rank, the more the view is
+ * preferred.
+ *
+ * A profile is immutable, so the same profile can be used by several
+ * rewritings at the same time. The ranks are kept in the profile and not in
+ * the views, so that views can be shared by rewritings with different
+ * profiles.
+ *
+ * The ranks are stored in an array indexed by the ID of the view name in the
+ * relation symbol table (see DatalogQuery.getNameId), so looking up a rank
+ * neither hashes nor compares the name. A profile can have a default rank,
+ * which is the rank of the views the profile does not rank.
+ */
+public class PreferenceProfile {
+
+	/** identifier of the profile, i.e. the preference id */
+	private int id;
+
+	/** rank of every view, by name ID; NaN if the view has no rank */
+	private double[] ranks;
+
+	/** rank of the views without a rank, NaN if there is none */
+	private double defaultRank;
+
+	/**
+	 * PreferenceProfile constructor, without default rank
+	 *
+	 * @param id
+	 *            identifier of the profile
+	 * @param ranks
+	 *            rank of every view, by view name; the map is copied
+	 */
+	public PreferenceProfile(int id, Map<String, Double> ranks) {
+		this(id, ranks, Double.NaN);
+	}
+
+	/**
+	 * PreferenceProfile constructor
+	 *
+	 * @param id
+	 *            identifier of the profile
+	 * @param ranks
+	 *            rank of every view, by view name; the map is copied
+	 * @param defaultRank
+	 *            rank of the views that are not in the map, NaN if they
+	 *            have no rank
+	 */
+	public PreferenceProfile(int id, Map<String, Double> ranks,
+			double defaultRank) {
+		this.id = id;
+		this.defaultRank = defaultRank;
+
+		SymbolTable relations = SymbolTable.relations();
+		int[] nameIds = new int[ranks.size()];
+		double[] values = new double[ranks.size()];
+		int length = 0;
+		int i = 0;
+		for (Map.Entry<String, Double> rank : ranks.entrySet()) {
+			nameIds[i] = relations.intern(rank.getKey());
+			values[i] = rank.getValue();
+			length = Math.max(length, nameIds[i] + 1);
+			i++;
+		}
+
+		this.ranks = new double[length];
+		Arrays.fill(this.ranks, Double.NaN);
+		for (i = 0; i < nameIds.length; i++) {
+			this.ranks[nameIds[i]] = values[i];
+		}
+	}
+
+	/**
+	 * Returns the identifier of the profile.
+	 *
+	 * @return preference id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the default rank of the profile.
+	 *
+	 * @return rank of the views without a rank, NaN if there is none
+	 */
+	public double getDefaultRank() {
+		return defaultRank;
+	}
+
+	/**
+	 * Returns the rank of the view, or the default rank if the profile does
+	 * not rank the view.
+	 *
+	 * @param view
+	 *            view of the catalog
+	 * @return rank of the view
+	 * @throws IllegalArgumentException
+	 *             if the profile has neither a rank for the view nor a
+	 *             default rank
+	 */
+	public double getRank(DatalogQuery view) {
+		double rank = getOwnRank(view);
+		if (Double.isNaN(rank)) {
+			rank = defaultRank;
+		}
+		if (Double.isNaN(rank)) {
+			throw new IllegalArgumentException("No rank for view "
+					+ view.getName() + " in preference " + id);
+		}
+		return rank;
+	}
+
+	/**
+	 * Returns true if the profile has a rank for the view, its own or the
+	 * default rank.
+	 *
+	 * @param view
+	 *            view of the catalog
+	 * @return true if getRank returns a rank for the view
+	 */
+	public boolean hasRank(DatalogQuery view) {
+		return !Double.isNaN(getOwnRank(view)) || !Double.isNaN(defaultRank);
+	}
+
+	/**
+	 * Called by getRank and hasRank. Returns the rank the profile gives to
+	 * the view.
+	 *
+	 * @param view
+	 *            view of the catalog
+	 * @return rank of the view, NaN if the profile does not rank it
+	 */
+	private double getOwnRank(DatalogQuery view) {
+		int nameId = view.getNameId();
+		return nameId < ranks.length ? ranks[nameId] : Double.NaN;
+	}
+}
@@ -0,0 +1,249 @@
+package preference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Class PreferenceStore keeps every preference profile of a preferences file
+ * in memory. The file is parsed once, in one pass, instead of once for every
+ * rewriting; a profile is then looked up by its preference id.
+ *
+ * The store can watch the file and reload it when it changes. The profiles
+ * of the new file are built apart and then replace the old ones in one step,
+ * so a caller gets either an old or a new profile, never a mix. Profiles are
+ * immutable, so a rewriting that runs while the file is reloaded keeps the
+ * profile it started with and is not blocked. If the new file cannot be
+ * parsed, e.g. because it is still being written, the old profiles are kept
+ * until the next change.
+ *
+ * Views that a preference does not rank get the default rank of the store,
+ * if it has one.
+ */
+public class PreferenceStore implements Closeable {
+
+	/**
+	 * default rank of BatchRunner and RewritingServer: a view without a rank
+	 * comes after every view the preference ranks
+	 */
+	public static final double DEFAULT_RANK = 0.0;
+
+	/** preferences file */
+	private final Path file;
+
+	/** rank of the views without a rank, NaN if there is none */
+	private final double defaultRank;
+
+	/** profile of every preference, by preference id; replaced on reload */
+	private volatile Map<Integer, PreferenceProfile> profiles;
+
+	/** number of times the file has been loaded */
+	private volatile long loads;
+
+	/** watch service of the directory of the file, null if not watching */
+	private WatchService watchService;
+
+	/** thread waiting for changes of the file, null if not watching */
+	private Thread watcher;
+
+	/**
+	 * PreferenceStore constructor, without default rank
+	 *
+	 * @param preferencesFile
+	 *            XML file of the preferences
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws SAXException
+	 *             if the file is not well-formed
+	 */
+	public PreferenceStore(String preferencesFile) throws IOException,
+			SAXException {
+		this(preferencesFile, Double.NaN);
+	}
+
+	/**
+	 * PreferenceStore constructor. The profiles are loaded from the file.
+	 *
+	 * @param preferencesFile
+	 *            XML file of the preferences
+	 * @param defaultRank
+	 *            rank of the views a preference does not rank, NaN if they
+	 *            have no rank
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws SAXException
+	 *             if the file is not well-formed
+	 */
+	public PreferenceStore(String preferencesFile, double defaultRank)
+			throws IOException, SAXException {
+		this.file = Paths.get(preferencesFile).toAbsolutePath();
+		this.defaultRank = defaultRank;
+		reload();
+	}
+
+	/**
+	 * Returns the profile of a preference. A preference that is not in the
+	 * file gets an empty profile, as with PreferencesFileParser.loadProfile,
+	 * in which every view has the default rank.
+	 *
+	 * @param prefID
+	 *            id of the preference
+	 * @return profile of the preference
+	 */
+	public PreferenceProfile getProfile(int prefID) {
+		PreferenceProfile profile = profiles.get(prefID);
+		if (profile == null) {
+			profile = new PreferenceProfile(prefID,
+					new HashMap<String, Double>(), defaultRank);
+		}
+		return profile;
+	}
+
+	/**
+	 * Returns the ids of the preferences of the file.
+	 *
+	 * @return set of preference ids, must not be modified
+	 */
+	public Set<Integer> getPreferenceIds() {
+		return profiles.keySet();
+	}
+
+	/**
+	 * Returns the number of preferences of the file.
+	 *
+	 * @return number of profiles
+	 */
+	public int size() {
+		return profiles.size();
+	}
+
+	/**
+	 * Returns the number of times the file has been loaded, the first load
+	 * included.
+	 *
+	 * @return number of loads
+	 */
+	public long getLoads() {
+		return loads;
+	}
+
+	/**
+	 * Loads the file again and replaces the profiles. The old profiles are
+	 * kept if the file cannot be loaded.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws SAXException
+	 *             if the file is not well-formed
+	 */
+	public synchronized void reload() throws IOException, SAXException {
+		Map<Integer, PreferenceProfile> newProfiles = PreferencesFileParser
+				.loadProfiles(file.toString(), defaultRank);
+		profiles = Collections.unmodifiableMap(newProfiles);
+		loads++;
+	}
+
+	/**
+	 * Starts a daemon thread that reloads the file whenever it is created or
+	 * modified. Does nothing if the file is already watched.
+	 *
+	 * @throws IOException
+	 *             if the directory of the file cannot be watched
+	 */
+	public synchronized void startWatching() throws IOException {
+		if (watcher != null) {
+			return;
+		}
+
+		final WatchService service = FileSystems.getDefault()
+				.newWatchService();
+		file.getParent().register(service,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+
+		watchService = service;
+		watcher = new Thread("PreferenceStore " + file.getFileName()) {
+			public void run() {
+				watch(service);
+			}
+		};
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Called by the thread started by startWatching. Waits for events of the
+	 * directory of the file and reloads the file if one of them concerns it,
+	 * until the watch service is closed.
+	 *
+	 * @param service
+	 *            watch service of the directory
+	 */
+	private void watch(WatchService service) {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (file.getFileName().equals(event.context())) {
+						changed = true;
+					}
+				}
+				key.reset();
+
+				if (changed) {
+					try {
+						reload();
+					} catch (IOException e) {
+						System.err.println("Preferences not reloaded: " + e);
+					} catch (SAXException e) {
+						System.err.println("Preferences not reloaded: " + e);
+					} catch (RuntimeException e) {
+						// e.g. a rank that is not a number, the thread must go on
+						System.err.println("Preferences not reloaded: " + e);
+					}
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// stopWatching was called
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops the thread started by startWatching. The profiles stay
+	 * available.
+	 *
+	 * @throws IOException
+	 *             if the watch service cannot be closed
+	 */
+	public synchronized void stopWatching() throws IOException {
+		if (watcher == null) {
+			return;
+		}
+		watchService.close();
+		watchService = null;
+		watcher = null;
+	}
+
+	/**
+	 * Stops watching the file, see stopWatching.
+	 */
+	public void close() throws IOException {
+		stopWatching();
+	}
+}
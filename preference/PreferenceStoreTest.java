@@ -0,0 +1,83 @@
+package preference;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import minicon.InputHandler;
+import datalog.DatalogQuery;
+
+/**
+ * Class PreferenceStoreTest checks that a watched PreferenceStore survives a
+ * preferences file it cannot parse: a file with a rank that is not a number
+ * is written, then a valid one, and the store must load the valid one.
+ *
+ * Run with java preference.PreferenceStoreTest; prints OK, or the failure
+ * and exits with status 1.
+ */
+public class PreferenceStoreTest {
+
+	/** time to wait for a reload, in milliseconds */
+	private static final long TIMEOUT = 10000;
+
+	public static void main(String[] args) throws Exception {
+		File directory = Files.createTempDirectory("loir-prefs").toFile();
+		File file = new File(directory, "preferences.xml");
+		DatalogQuery view = InputHandler.parse("V1(A, B) :- R1(A, B)");
+
+		write(file, "0.2");
+		PreferenceStore store = new PreferenceStore(file.getPath());
+		store.startWatching();
+		try {
+			check(store.getLoads() == 1, "first load");
+			check(store.getProfile(1).getRank(view) == 0.2, "first rank");
+
+			write(file, "abc");
+			// the bad file must neither be loaded nor stop the watcher
+			Thread.sleep(1000);
+			check(store.getLoads() == 1, "bad file not loaded");
+			check(store.getProfile(1).getRank(view) == 0.2,
+					"old rank kept after bad file");
+
+			write(file, "0.7");
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while (store.getProfile(1).getRank(view) != 0.7
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			check(store.getProfile(1).getRank(view) == 0.7,
+					"good file loaded after bad file");
+			check(store.getLoads() >= 2, "loads after good file");
+		} finally {
+			store.close();
+			file.delete();
+			directory.delete();
+		}
+		System.out.println("OK");
+	}
+
+	/**
+	 * Writes a preferences file with one preference that ranks one view.
+	 */
+	private static void write(File file, String rank) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		try {
+			out.write("<preferences>\n\t<preference id = \"1\">\n"
+					+ "\t\t<view name = \"V1\" rank = \"" + rank + "\"/>\n"
+					+ "\t</preference>\n</preferences>\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void check(boolean condition, String what) {
+		if (!condition) {
+			System.out.println("FAILED: " + what);
+			System.exit(1);
+		}
+	}
+}
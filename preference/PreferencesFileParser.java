@@ -30,11 +30,14 @@ package preference;
 
 import java.io.IOException;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.Attributes;
 
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import org.xml.sax.SAXException;
@@ -45,32 +48,144 @@ import datalog.DatalogQuery;
 
 public class PreferencesFileParser extends DefaultHandler {
 	
-	private static Hashtable<String, String> viewsRanks;//  = new Hashtable<String, String>();
-	private static int preferenceID;
+	// the ranks and the preference id belong to one parser, so several files can be parsed at the same time
+	private Hashtable<String, Double> viewsRanks = new Hashtable<String, Double>();
+	private int preferenceID;
 	boolean isCorrespondingPreferenceID = false;
 	
+	// true if every preference of the file is read, in one pass
+	private boolean allPreferences = false;
+	
+	// the ranks of every preference read, by preference id
+	private Map<Integer, Hashtable<String, Double>> preferences = new LinkedHashMap<Integer, Hashtable<String, Double>>();
+	
+	// the ranks of every preference read, by preference id and then by domain, i.e. by view attribute
+	private Map<Integer, LinkedHashMap<String, Hashtable<String, Double>>> domains = new LinkedHashMap<Integer, LinkedHashMap<String, Hashtable<String, Double>>>();
+	
+	private PreferencesFileParser (int prefID){
+		this.preferenceID = prefID;
+	}
+	
+	private PreferencesFileParser (){
+		this.allPreferences = true;
+	}
+	
 	// creer un tableau associatif <vue, rank>, le remplir dans les methodes du parser !!
 	// parcourir la liste des vues et leur associer leurs ranks
 	
 	public static void setViewsPreferences (List<DatalogQuery> views, String preferencesFile, int prefID) throws IOException, SAXException{
 		
-		preferenceID = prefID;		
-		viewsRanks = new Hashtable<String, String>();
+		PreferenceProfile profile = loadProfile(preferencesFile, prefID);
+		
+		for (int i = 0 ; i < views.size(); i++){
+			views.get(i).setRank(profile.getRank(views.get(i)));
+		}
+	}
+	
+	/**
+	 * Reads the preference with the given id from the preferences file. Unlike
+	 * setViewsPreferences, the views are not changed: the ranks are returned
+	 * as a profile that is given to the organiser.
+	 * 
+	 * @param preferencesFile
+	 *            XML file of the preferences
+	 * @param prefID
+	 *            id of the preference
+	 * @return ranks of the views of the preference
+	 */
+	public static PreferenceProfile loadProfile (String preferencesFile, int prefID){
+		
+		PreferencesFileParser handler = new PreferencesFileParser(prefID);
 		
 		SAXParserFactory sfactory = SAXParserFactory.newInstance();
 		try {
 			SAXParser parser = sfactory.newSAXParser();
 			XMLReader xmlparser = parser.getXMLReader();
-			xmlparser.setContentHandler(new PreferencesFileParser());
+			xmlparser.setContentHandler(handler);
 			xmlparser.parse(preferencesFile);
 			
 		} catch (Exception e) {
 			e.printStackTrace();
 		}	
 		
-		for (int i = 0 ; i < views.size(); i++){
-			views.get(i).setRank(Double.parseDouble(viewsRanks.get(views.get(i).getName())));
+		return new PreferenceProfile(prefID, handler.viewsRanks);
+	}
+	
+	/**
+	 * Reads every preference of the preferences file in one pass. Called by
+	 * PreferenceStore, which keeps the profiles in memory instead of parsing
+	 * the file again for every request.
+	 * 
+	 * @param preferencesFile
+	 *            XML file of the preferences
+	 * @param defaultRank
+	 *            rank of the views a preference does not rank, NaN if they
+	 *            have no rank
+	 * @return profile of every preference, by preference id
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws SAXException
+	 *             if the file is not well-formed
+	 */
+	public static Map<Integer, PreferenceProfile> loadProfiles (String preferencesFile, double defaultRank) throws IOException, SAXException{
+		
+		PreferencesFileParser handler = new PreferencesFileParser();
+		
+		SAXParserFactory sfactory = SAXParserFactory.newInstance();
+		try {
+			SAXParser parser = sfactory.newSAXParser();
+			XMLReader xmlparser = parser.getXMLReader();
+			xmlparser.setContentHandler(handler);
+			xmlparser.setErrorHandler(handler);   // errors are thrown, not printed
+			xmlparser.parse(preferencesFile);
+			
+		} catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		}
+		
+		Map<Integer, PreferenceProfile> profiles = new LinkedHashMap<Integer, PreferenceProfile>();
+		for (Map.Entry<Integer, Hashtable<String, Double>> preference : handler.preferences.entrySet()){
+			profiles.put(preference.getKey(), new PreferenceProfile(preference.getKey(), preference.getValue(), defaultRank));
 		}
+		return profiles;
+	}
+	
+	/**
+	 * Reads every preference of the preferences file in one pass, with the
+	 * ranks of the views in every domain. Every attribute of a view element
+	 * other than its name is the rank of the view in the domain of the
+	 * attribute name, e.g. &lt;view name="v1" rank="3" cost="1" quality="5"/&gt;.
+	 * The domains are in the order in which they first appear in the
+	 * preference.
+	 * 
+	 * @param preferencesFile
+	 *            XML file of the preferences
+	 * @param defaultRank
+	 *            rank of the views a domain does not rank, NaN if they have no
+	 *            rank
+	 * @return profile of every preference, by preference id
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws SAXException
+	 *             if the file is not well-formed
+	 */
+	public static Map<Integer, MultiDomainProfile> loadDomainProfiles (String preferencesFile, double defaultRank) throws IOException, SAXException{
+		
+		PreferencesFileParser handler = new PreferencesFileParser();
+		
+		SAXParserFactory sfactory = SAXParserFactory.newInstance();
+		try {
+			SAXParser parser = sfactory.newSAXParser();
+			XMLReader xmlparser = parser.getXMLReader();
+			xmlparser.setContentHandler(handler);
+			xmlparser.setErrorHandler(handler);   // errors are thrown, not printed
+			xmlparser.parse(preferencesFile);
+			
+		} catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		}
+		
+		return MultiDomainProfile.create(handler.domains, defaultRank);
 	}
 
 	public void startDocument() {
@@ -94,12 +209,46 @@ public class PreferencesFileParser extends DefaultHandler {
 		*/
 		
 		if (qName.equalsIgnoreCase("preference")){
-			if (attributes.getValue("id").equalsIgnoreCase("" + preferenceID))
+			if (allPreferences){
+				Integer id = Integer.valueOf(attributes.getValue("id").trim());
+				viewsRanks = preferences.get(id);
+				if (viewsRanks == null){
+					viewsRanks = new Hashtable<String, Double>();
+					preferences.put(id, viewsRanks);
+					domains.put(id, new LinkedHashMap<String, Hashtable<String, Double>>());
+				}
+				preferenceID = id;
+				isCorrespondingPreferenceID = true;
+			} else if (attributes.getValue("id").equalsIgnoreCase("" + preferenceID))
 				isCorrespondingPreferenceID = true;
 		}
 		
-		if (isCorrespondingPreferenceID && qName.equalsIgnoreCase("view")){
-			viewsRanks.put(attributes.getValue("name"), attributes.getValue("rank"));
+		// a view without rank is left out of the preference, it gets the default rank if there is one
+		if (isCorrespondingPreferenceID && qName.equalsIgnoreCase("view") && attributes.getValue("rank") != null){
+			viewsRanks.put(attributes.getValue("name"), Double.valueOf(attributes.getValue("rank")));
+		}
+		
+		// every other numeric attribute of the view is its rank in another domain,
+		// the others (e.g. comment = "...") only describe the view
+		if (allPreferences && isCorrespondingPreferenceID && qName.equalsIgnoreCase("view")){
+			LinkedHashMap<String, Hashtable<String, Double>> domainsRanks = domains.get(preferenceID);
+			for (int i = 0; i < attributes.getLength(); i++){
+				String domain = attributes.getQName(i);
+				if (domain.equalsIgnoreCase("name"))
+					continue;
+				Double rank;
+				try {
+					rank = Double.valueOf(attributes.getValue(i));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				Hashtable<String, Double> ranks = domainsRanks.get(domain);
+				if (ranks == null){
+					ranks = new Hashtable<String, Double>();
+					domainsRanks.put(domain, ranks);
+				}
+				ranks.put(attributes.getValue("name"), rank);
+			}
 		}
 	}
 	
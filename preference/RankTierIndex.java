@@ -0,0 +1,296 @@
+package preference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import minicon.ViewIndex;
+import datalog.DatalogQuery;
+import datalog.Predicate;
+
+/**
+ * Class RankTierIndex groups the views of a catalog into rank tiers, for every
+ * abstract service, i.e. every predicate name and number of elements. The
+ * tiers of a service are kept in decreasing order of their rank, and the
+ * views of a tier in the order of the catalog. The coverage domain of a query
+ * subgoal, ordered by rank, is then read from the tiers of its service
+ * without sorting.
+ *
+ * The index is built once for a catalog and a preference profile, in
+ * O(v log v) for v pairs of view and service. The rank of a single view can
+ * be changed afterwards; only the tiers of the services of this view are
+ * updated. Organisers read the tiers when they are created, so a change is
+ * seen by the organisers created after it. The index can be shared by
+ * organisers of different queries, also at the same time.
+ */
+public class RankTierIndex {
+
+	/** decreasing order of the ranks */
+	private static final Comparator<Double> DECREASING = Collections
+			.reverseOrder();
+
+	/** index of the catalog, used to test the mapping partners */
+	private ViewIndex viewIndex;
+
+	/** profile the ranks were taken from */
+	private PreferenceProfile profile;
+
+	/** position of every view in the catalog */
+	private Map<DatalogQuery, Integer> positions;
+
+	/** current rank of every ranked view */
+	private Map<DatalogQuery, Double> ranks;
+
+	/** tiers of every service, by ViewIndex key */
+	private Map<Long, Service> services;
+
+	/**
+	 * RankTierIndex constructor
+	 *
+	 * @param viewIndex
+	 *            index of the catalog of views
+	 * @param profile
+	 *            ranks of the views
+	 */
+	public RankTierIndex(ViewIndex viewIndex, PreferenceProfile profile) {
+		this.viewIndex = viewIndex;
+		this.profile = profile;
+		this.positions = new HashMap<DatalogQuery, Integer>();
+		this.ranks = new HashMap<DatalogQuery, Double>();
+		this.services = new HashMap<Long, Service>();
+
+		List<DatalogQuery> views = viewIndex.getViews();
+		for (int i = 0; i < views.size(); i++) {
+			DatalogQuery view = views.get(i);
+			positions.put(view, i);
+
+			if (profile.hasRank(view)) {
+				double rank = profile.getRank(view);
+				ranks.put(view, rank);
+				for (Long key : getServiceKeys(view)) {
+					// views come in catalog order, so they are appended
+					getService(key).getTier(rank).add(view);
+				}
+			} else {
+				for (Long key : getServiceKeys(view)) {
+					getService(key).unranked.add(view);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the catalog.
+	 *
+	 * @return view index
+	 */
+	public ViewIndex getViewIndex() {
+		return viewIndex;
+	}
+
+	/**
+	 * Returns the rank tiers of the coverage domain of the subgoal, i.e. of
+	 * the views with a predicate the subgoal can be mapped to.
+	 *
+	 * @param subgoal
+	 *            query subgoal
+	 * @return new map from rank to views, in decreasing order of the rank,
+	 *         with the views of a tier in catalog order
+	 * @throws IllegalArgumentException
+	 *             if a view of the coverage domain has no rank
+	 */
+	public synchronized SortedMap<Double, List<DatalogQuery>> getTiers(
+			Predicate subgoal) {
+		SortedMap<Double, List<DatalogQuery>> tiers = new TreeMap<Double, List<DatalogQuery>>(
+				DECREASING);
+		Service service = services.get(ViewIndex.key(subgoal));
+		if (service == null) {
+			return tiers;
+		}
+
+		for (DatalogQuery view : service.unranked) {
+			if (canHost(view, subgoal)) {
+				profile.getRank(view); // throws, the view has no rank
+			}
+		}
+
+		for (Map.Entry<Double, List<DatalogQuery>> tier : service.tiers
+				.entrySet()) {
+			List<DatalogQuery> views = new ArrayList<DatalogQuery>();
+			for (DatalogQuery view : tier.getValue()) {
+				if (canHost(view, subgoal)) {
+					views.add(view);
+				}
+			}
+			if (!views.isEmpty()) {
+				tiers.put(tier.getKey(), views);
+			}
+		}
+		return tiers;
+	}
+
+	/**
+	 * Returns the current rank of the view.
+	 *
+	 * @param view
+	 *            view of the catalog
+	 * @return rank of the view
+	 * @throws IllegalArgumentException
+	 *             if the view has no rank
+	 */
+	public synchronized double getRank(DatalogQuery view) {
+		Double rank = ranks.get(view);
+		if (rank == null) {
+			return profile.getRank(view);
+		}
+		return rank;
+	}
+
+	/**
+	 * Changes the rank of one view. The view is moved to the tier of its new
+	 * rank in every service it belongs to, at its catalog position.
+	 *
+	 * @param view
+	 *            view of the catalog
+	 * @param rank
+	 *            new rank
+	 * @throws IllegalArgumentException
+	 *             if the view is not in the catalog
+	 */
+	public synchronized void updateRank(DatalogQuery view, double rank) {
+		Integer position = positions.get(view);
+		if (position == null) {
+			throw new IllegalArgumentException("View " + view.getName()
+					+ " is not in the catalog");
+		}
+
+		Double oldRank = ranks.put(view, rank);
+		for (Long key : getServiceKeys(view)) {
+			Service service = services.get(key);
+			if (oldRank == null) {
+				service.unranked.remove(view);
+			} else {
+				List<DatalogQuery> oldTier = service.tiers.get(oldRank);
+				oldTier.remove(indexOf(oldTier, position));
+				if (oldTier.isEmpty()) {
+					service.tiers.remove(oldRank);
+				}
+			}
+
+			List<DatalogQuery> tier = service.getTier(rank);
+			tier.add(-indexOf(tier, position) - 1, view);
+		}
+	}
+
+	/**
+	 * Called by the constructor and updateRank. Returns the service of the
+	 * key, which is created if necessary.
+	 *
+	 * @param key
+	 *            ViewIndex key of a service
+	 * @return service
+	 */
+	private Service getService(Long key) {
+		Service service = services.get(key);
+		if (service == null) {
+			service = new Service();
+			services.put(key, service);
+		}
+		return service;
+	}
+
+	/**
+	 * Called by the constructor and updateRank. Returns the keys of the
+	 * services of the view predicates, without duplicates.
+	 *
+	 * @param view
+	 *            view of the catalog
+	 * @return keys in the order of the view body
+	 */
+	private static Set<Long> getServiceKeys(DatalogQuery view) {
+		Set<Long> keys = new LinkedHashSet<Long>();
+		for (Predicate viewPred : view.getPredicates()) {
+			keys.add(ViewIndex.key(viewPred));
+		}
+		return keys;
+	}
+
+	/**
+	 * Called by getTiers. Returns true if the view has a predicate the
+	 * subgoal can be mapped to.
+	 *
+	 * @param view
+	 *            view of a service of the subgoal
+	 * @param subgoal
+	 *            query subgoal
+	 * @return true if the view is in the coverage domain of the subgoal
+	 */
+	private boolean canHost(DatalogQuery view, Predicate subgoal) {
+		return !viewIndex.getMappingPartners(subgoal, view).isEmpty();
+	}
+
+	/**
+	 * Called by updateRank. Searches the position of a view in a tier, whose
+	 * views are in catalog order.
+	 *
+	 * @param tier
+	 *            views of a tier
+	 * @param position
+	 *            catalog position of the view
+	 * @return index of the view in the tier if it is there, otherwise
+	 *         (-(insertion point) - 1)
+	 */
+	private int indexOf(List<DatalogQuery> tier, int position) {
+		int low = 0;
+		int high = tier.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middlePosition = positions.get(tier.get(middle));
+			if (middlePosition < position) {
+				low = middle + 1;
+			} else if (middlePosition > position) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Class Service holds the rank tiers of one abstract service and the
+	 * views of the service without a rank.
+	 */
+	private static class Service {
+
+		/** views by rank, in decreasing order of the rank */
+		SortedMap<Double, List<DatalogQuery>> tiers = new TreeMap<Double, List<DatalogQuery>>(
+				DECREASING);
+
+		/** views without a rank, in catalog order */
+		List<DatalogQuery> unranked = new ArrayList<DatalogQuery>();
+
+		/**
+		 * Returns the tier of the rank, which is created if necessary.
+		 *
+		 * @param rank
+		 *            rank of the tier
+		 * @return views of the tier in catalog order
+		 */
+		List<DatalogQuery> getTier(double rank) {
+			List<DatalogQuery> tier = tiers.get(rank);
+			if (tier == null) {
+				tier = new ArrayList<DatalogQuery>();
+				tiers.put(rank, tier);
+			}
+			return tier;
+		}
+	}
+}
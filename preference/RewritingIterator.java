@@ -0,0 +1,215 @@
+package preference;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import minicon.MCD;
+import minicon.MiniConMetrics;
+import minicon.RequestMetrics;
+import minicon.Rewriting;
+import datalog.DatalogQuery;
+
+/**
+ * Class RewritingIterator returns the rewritings of a query one at a time, in
+ * the order of the organiser: the MCDs of the first subgoal that is not
+ * covered yet are tried in rank order, then the remaining subgoals are
+ * covered in the same way.
+ *
+ * The search keeps its own stack of frames instead of recursing, so it can
+ * stop after each rewriting and continue when the caller asks for the next
+ * one. A caller that has enough rewritings simply stops calling next; no
+ * rewriting is computed in advance.
+ *
+ * An MCD is only appended to a prefix if it covers none of the subgoals
+ * covered by the prefix and its constant mappings are consistent with those
+ * of every MCD of the prefix. Branches that cannot lead to a rewriting are
+ * thus cut as soon as they appear, and a prefix that covers every subgoal is
+ * a rewriting.
+ *
+ * The prefixes pushed and the MCDs that cannot be appended are counted as
+ * explored and pruned prefixes in the metrics of the current request (see
+ * MiniConMetrics), together with the rewritings returned.
+ */
+public class RewritingIterator implements Iterator<Rewriting> {
+
+	/** organiser of the query, provides the MCDs of the subgoals */
+	private Organiser organiser;
+
+	/** query that is rewritten */
+	private DatalogQuery query;
+
+	/** mask with a bit set for every query subgoal */
+	private BitSet allSubgoals;
+
+	/** frames of the search, the top frame is the current one */
+	private LinkedList<Frame> stack;
+
+	/** next rewriting, null if it has not been searched yet */
+	private Rewriting next;
+
+	/**
+	 * RewritingIterator constructor
+	 *
+	 * @param organiser
+	 *            organiser of the query that is rewritten
+	 */
+	public RewritingIterator(Organiser organiser) {
+		this.organiser = organiser;
+		this.query = organiser.getQuery();
+		this.allSubgoals = new BitSet();
+		this.allSubgoals.set(0, query.numberOfPredicates());
+		this.stack = new LinkedList<Frame>();
+		this.stack.push(new Frame(new ArrayList<MCD>(), new BitSet()));
+	}
+
+	/**
+	 * Returns true if there is another rewriting. The rewriting is searched
+	 * if necessary.
+	 */
+	public boolean hasNext() {
+		if (next == null) {
+			next = advance();
+		}
+		return next != null;
+	}
+
+	/**
+	 * Returns the next rewriting.
+	 *
+	 * @throws NoSuchElementException
+	 *             if there is no other rewriting
+	 */
+	public Rewriting next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Rewriting rewriting = next;
+		next = null;
+		return rewriting;
+	}
+
+	/**
+	 * Not supported, rewritings cannot be removed.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Called by hasNext. Continues the search until the next rewriting has
+	 * been found or the stack is empty.
+	 *
+	 * If the prefix of the top frame covers every subgoal, it is a rewriting
+	 * and the frame is popped. Otherwise, a frame for the next MCD of the
+	 * first uncovered subgoal that can extend the prefix is pushed, or the
+	 * frame is popped if all its MCDs have been tried.
+	 *
+	 * @return next rewriting, null if there is none
+	 */
+	private Rewriting advance() {
+		long explored = 0;
+		long pruned = 0;
+		Rewriting rewriting = null;
+
+		while (rewriting == null && !stack.isEmpty()) {
+			Frame frame = stack.peek();
+
+			if (frame.covered.equals(allSubgoals)) {
+				stack.pop();
+				rewriting = new Rewriting(frame.prefix, query);
+
+			} else {
+				if (frame.candidates == null) {
+					frame.candidates = organiser.getCandidateMCDs(query
+							.getPredicates().get(frame.covered.nextClearBit(0)));
+				}
+
+				if (frame.next < frame.candidates.size()) {
+					MCD mcd = frame.candidates.get(frame.next++);
+
+					if (canExtend(frame, mcd)) {
+						List<MCD> prefix = new ArrayList<MCD>(frame.prefix);
+						prefix.add(mcd);
+						BitSet covered = (BitSet) frame.covered.clone();
+						covered.or(mcd.getSubgoalMask());
+						stack.push(new Frame(prefix, covered));
+						explored++;
+					} else {
+						pruned++;
+					}
+				} else {
+					stack.pop();
+				}
+			}
+		}
+
+		RequestMetrics request = MiniConMetrics.current();
+		if (request != null) {
+			request.add(MiniConMetrics.PREFIXES_EXPLORED, explored);
+			request.add(MiniConMetrics.PREFIXES_PRUNED, pruned);
+			request.add(MiniConMetrics.REWRITINGS_EMITTED, rewriting == null ? 0 : 1);
+		}
+		return rewriting;
+	}
+
+	/**
+	 * Called by advance. Tests whether the MCD can be appended to the prefix
+	 * of the frame: it must not cover a subgoal that is already covered, and
+	 * its constant mappings must be consistent with those of every MCD of the
+	 * prefix.
+	 *
+	 * @param frame
+	 *            frame of the prefix
+	 * @param mcd
+	 *            MCD to be appended
+	 * @return true if the MCD can be appended
+	 */
+	private boolean canExtend(Frame frame, MCD mcd) {
+		if (frame.covered.intersects(mcd.getSubgoalMask())) {
+			return false;
+		}
+		for (MCD prefixMCD : frame.prefix) {
+			if (!Organiser.haveConsistentConstants(mcd, prefixMCD)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Class Frame is the state of the search for one prefix of a rewriting:
+	 * the MCDs chosen so far, the subgoals they cover, the MCDs of the first
+	 * uncovered subgoal and the position of the next one to try.
+	 */
+	private static class Frame {
+
+		/** MCDs chosen so far */
+		List<MCD> prefix;
+
+		/** query subgoals covered by the prefix */
+		BitSet covered;
+
+		/** MCDs of the first uncovered subgoal, null until needed */
+		List<MCD> candidates;
+
+		/** position of the next MCD to try */
+		int next;
+
+		/**
+		 * Frame constructor
+		 *
+		 * @param prefix
+		 *            MCDs chosen so far
+		 * @param covered
+		 *            query subgoals covered by the prefix
+		 */
+		Frame(List<MCD> prefix, BitSet covered) {
+			this.prefix = prefix;
+			this.covered = covered;
+		}
+	}
+}
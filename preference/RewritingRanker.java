@@ -0,0 +1,480 @@
+package preference;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import minicon.MCD;
+import minicon.MiniConMetrics;
+import minicon.RequestMetrics;
+import minicon.Rewriting;
+import datalog.DatalogQuery;
+import datalog.Predicate;
+
+/**
+ * Class RewritingRanker enumerates the rewritings of a query best first, i.e.
+ * in decreasing order of their score, and returns the exact top N.
+ *
+ * Partial rewritings are built as in Organiser: an MCD is always chosen for
+ * the first query subgoal that is not covered yet, among the MCDs of the
+ * subgoal's coverage domain. The partial rewritings are kept in a priority
+ * queue, the frontier, ordered by the upper bound of the scores of their
+ * completions (see RewritingScore). A complete rewriting has a bound equal to
+ * its score, so when it is taken from the frontier no rewriting with a higher
+ * score can be found any more.
+ *
+ * The scores of the N best complete rewritings found so far are kept in a
+ * bounded min-heap. Its smallest score is a threshold: partial rewritings
+ * whose bound is below it cannot reach the top N and are not added to the
+ * frontier.
+ *
+ * Rewritings with the same score are ordered by their position in the
+ * search tree, i.e. by the positions of their MCDs among the candidates of
+ * their subgoals, compared lexicographically. This is the order in which
+ * RewritingIterator and BoundedRewritingSearch find them, so that the
+ * searches return the same rewritings when ties cross the Nth place.
+ *
+ * The ranks are those of the organiser's profile, or those of one domain of
+ * a MultiDomainProfile. A ranker also provides a stream of all rewritings in
+ * decreasing order of their score, which is the sorted access used by
+ * MultiDomainRanker.
+ *
+ * The partial rewritings created are counted as explored prefixes in the
+ * metrics of the current request (see MiniConMetrics); the extensions that
+ * are inconsistent or cannot be completed, and the partial rewritings cut by
+ * the threshold, as pruned prefixes.
+ */
+public class RewritingRanker {
+
+	/** order of the frontier: highest bound first, then search tree order */
+	private static final Comparator<PartialRewriting> FRONTIER_ORDER = new Comparator<PartialRewriting>() {
+		public int compare(PartialRewriting p1, PartialRewriting p2) {
+			int cmp = Double.compare(p2.bound, p1.bound);
+			if (cmp == 0) {
+				cmp = comparePaths(p1.path, p2.path);
+			}
+			return cmp;
+		}
+	};
+
+	/** organiser of the query, provides the MCDs and ranks */
+	private Organiser organiser;
+
+	/** ranks of one domain, null for the ranks of the organiser */
+	private PreferenceProfile domain;
+
+	/** query that is rewritten */
+	private DatalogQuery query;
+
+	/** score of the rewritings */
+	private RewritingScore score;
+
+	/**
+	 * for every query subgoal, the MCDs that can be chosen for it; null until
+	 * the subgoal is expanded for the first time
+	 */
+	private List<List<MCD>> candidates;
+
+	/**
+	 * for every query subgoal, the highest rank of the views of its coverage
+	 * domain, which is at least the rank of every candidate MCD
+	 */
+	private double[] maxRanks;
+
+	/** mask with a bit set for every query subgoal */
+	private BitSet allSubgoals;
+
+	/**
+	 * RewritingRanker constructor
+	 *
+	 * The bounds are taken from the ranked coverage domains of the subgoals,
+	 * the MCDs of a subgoal are only formed when the subgoal is expanded.
+	 * 
+	 * @param organiser
+	 *            organiser of the query that is rewritten
+	 * @param score
+	 *            score of the rewritings
+	 */
+	public RewritingRanker(Organiser organiser, RewritingScore score) {
+		this(organiser, score, null);
+	}
+
+	/**
+	 * RewritingRanker constructor
+	 *
+	 * The MCDs are those of the organiser, the scores are computed with the
+	 * ranks of the given domain.
+	 *
+	 * @param organiser
+	 *            organiser of the query that is rewritten
+	 * @param score
+	 *            score of the rewritings
+	 * @param domain
+	 *            ranks of one domain, null for the ranks of the organiser
+	 */
+	public RewritingRanker(Organiser organiser, RewritingScore score,
+			PreferenceProfile domain) {
+		this.organiser = organiser;
+		this.domain = domain;
+		this.query = organiser.getQuery();
+		this.score = score;
+		this.allSubgoals = new BitSet();
+		this.allSubgoals.set(0, query.numberOfPredicates());
+		this.maxRanks = new double[query.numberOfPredicates()];
+		this.candidates = new ArrayList<List<MCD>>();
+
+		for (int i = 0; i < maxRanks.length; i++) {
+			Predicate subgoal = query.getPredicates().get(i);
+			maxRanks[i] = domain == null ? organiser.getMaxRank(subgoal)
+					: organiser.getMaxRank(subgoal, domain);
+			candidates.add(null);
+		}
+	}
+
+	/**
+	 * Returns the N rewritings with the highest score, in decreasing order of
+	 * the score. Rewritings with the same score are returned in search tree
+	 * order, like BoundedRewritingSearch returns them.
+	 *
+	 * @param desiredNumberOfRewritings
+	 *            N
+	 * @return best rewritings, fewer than N if the query has fewer rewritings
+	 */
+	public List<Rewriting> getBestRewritings(long desiredNumberOfRewritings) {
+		List<Rewriting> rewritings = new ArrayList<Rewriting>();
+		if (desiredNumberOfRewritings <= 0) {
+			return rewritings;
+		}
+
+		PriorityQueue<PartialRewriting> frontier = newFrontier();
+		PriorityQueue<Double> bestScores = new PriorityQueue<Double>();
+		long pruned = 0;
+
+		while (!frontier.isEmpty()
+				&& rewritings.size() < desiredNumberOfRewritings) {
+			PartialRewriting partial = frontier.poll();
+
+			if (partial.covered.equals(allSubgoals)) {
+				rewritings.add(new Rewriting(partial.getMCDs(), query));
+				continue;
+			}
+
+			// the N best scores are already better
+			if (bestScores.size() >= desiredNumberOfRewritings
+					&& partial.bound < bestScores.peek()) {
+				pruned++;
+				continue;
+			}
+
+			for (PartialRewriting next : extend(partial)) {
+				if (bestScores.size() >= desiredNumberOfRewritings
+						&& next.bound < bestScores.peek()) {
+					pruned++;
+					continue;
+				}
+				frontier.add(next);
+
+				if (next.covered.equals(allSubgoals)) {
+					bestScores.add(next.score);
+					if (bestScores.size() > desiredNumberOfRewritings) {
+						bestScores.poll();
+					}
+				}
+			}
+		}
+
+		RequestMetrics request = MiniConMetrics.current();
+		if (request != null) {
+			request.add(MiniConMetrics.PREFIXES_PRUNED, pruned);
+			request.add(MiniConMetrics.REWRITINGS_EMITTED, rewritings.size());
+		}
+		return rewritings;
+	}
+
+	/**
+	 * Returns a stream of all rewritings of the query in decreasing order of
+	 * their score. Used by MultiDomainRanker for the sorted access to the
+	 * rewritings of one domain.
+	 *
+	 * @return new stream
+	 */
+	Stream getStream() {
+		return new Stream();
+	}
+
+	/**
+	 * Called by getBestRewritings and Stream. Returns a frontier that holds
+	 * the root partial rewriting, unless the query cannot be rewritten.
+	 *
+	 * @return frontier
+	 */
+	private PriorityQueue<PartialRewriting> newFrontier() {
+		PriorityQueue<PartialRewriting> frontier = new PriorityQueue<PartialRewriting>(
+				11, FRONTIER_ORDER);
+		if (query.numberOfPredicates() > 0) {
+			PartialRewriting root = new PartialRewriting(null, null, 0,
+					new BitSet(), score.initial());
+			if (isAlive(root)) {
+				frontier.add(root);
+			}
+		}
+		return frontier;
+	}
+
+	/**
+	 * Called by getBestRewritings and Stream. Returns the partial rewritings
+	 * that extend the given one by an MCD of its first uncovered subgoal and
+	 * can still be completed.
+	 *
+	 * @param partial
+	 *            partial rewriting that is not complete
+	 * @return extensions in the order of the candidate MCDs
+	 */
+	private List<PartialRewriting> extend(PartialRewriting partial) {
+		List<PartialRewriting> extensions = new ArrayList<PartialRewriting>();
+		int firstUncovered = partial.covered.nextClearBit(0);
+		long pruned = 0;
+		List<MCD> mcds = getCandidates(firstUncovered);
+		for (int i = 0; i < mcds.size(); i++) {
+			MCD mcd = mcds.get(i);
+			if (!canExtend(partial, mcd)) {
+				pruned++;
+				continue;
+			}
+
+			BitSet covered = (BitSet) partial.covered.clone();
+			covered.or(mcd.getSubgoalMask());
+			PartialRewriting next = new PartialRewriting(partial, mcd, i,
+					covered, score.add(partial.score, getRank(mcd.getView())));
+
+			if (isAlive(next)) {
+				extensions.add(next);
+			} else {
+				pruned++;
+			}
+		}
+
+		RequestMetrics request = MiniConMetrics.current();
+		if (request != null) {
+			request.add(MiniConMetrics.PREFIXES_EXPLORED, extensions.size());
+			request.add(MiniConMetrics.PREFIXES_PRUNED, pruned);
+		}
+		return extensions;
+	}
+
+	/**
+	 * Called by extend. Returns the rank of the view in the domain of the
+	 * ranker.
+	 *
+	 * @param view
+	 *            view of an MCD
+	 * @return rank of the view
+	 */
+	private double getRank(DatalogQuery view) {
+		return domain == null ? organiser.getRank(view) : domain.getRank(view);
+	}
+
+	/**
+	 * Called by extend. Returns the MCDs that can be chosen for the
+	 * subgoal, which are formed by the organiser on first use.
+	 *
+	 * @param subgoal
+	 *            position of the subgoal in the query
+	 * @return MCDs in rank order
+	 */
+	private List<MCD> getCandidates(int subgoal) {
+		List<MCD> mcds = candidates.get(subgoal);
+		if (mcds == null) {
+			mcds = organiser.getCandidateMCDs(query.getPredicates().get(
+					subgoal));
+			candidates.set(subgoal, mcds);
+		}
+		return mcds;
+	}
+
+	/**
+	 * Called by newFrontier and extend. Returns false if the partial rewriting
+	 * cannot be completed because the coverage domain of its first uncovered
+	 * subgoal is empty.
+	 *
+	 * @param partial
+	 *            partial rewriting
+	 * @return true if the partial rewriting is complete or can be extended
+	 */
+	private boolean isAlive(PartialRewriting partial) {
+		int firstUncovered = partial.covered.nextClearBit(0);
+		return firstUncovered >= maxRanks.length
+				|| maxRanks[firstUncovered] != Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Called by extend. Tests whether the MCD can be added to the
+	 * partial rewriting, i.e. it covers no subgoal that is already covered,
+	 * and a query element mapped to a constant by the MCD is not mapped to
+	 * another constant by an MCD of the partial rewriting.
+	 *
+	 * @param partial
+	 *            partial rewriting
+	 * @param mcd
+	 *            MCD to be added
+	 * @return true if the MCD can be added
+	 */
+	private boolean canExtend(PartialRewriting partial, MCD mcd) {
+		if (partial.covered.intersects(mcd.getSubgoalMask())) {
+			return false;
+		}
+
+		for (PartialRewriting p = partial; p.mcd != null; p = p.previous) {
+			if (!Organiser.haveConsistentConstants(mcd, p.mcd)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called by FRONTIER_ORDER. Compares the positions of two partial
+	 * rewritings in the search tree: the first differing candidate position
+	 * decides, and a partial rewriting comes before its extensions.
+	 *
+	 * @param path1
+	 *            candidate positions of the MCDs of the first partial rewriting
+	 * @param path2
+	 *            candidate positions of the MCDs of the second one
+	 * @return negative if the first comes first, 0 if they are equal
+	 */
+	static int comparePaths(int[] path1, int[] path2) {
+		int length = Math.min(path1.length, path2.length);
+		for (int i = 0; i < length; i++) {
+			if (path1[i] != path2[i]) {
+				return path1[i] < path2[i] ? -1 : 1;
+			}
+		}
+		return path1.length - path2.length;
+	}
+
+	/**
+	 * Class Stream returns the rewritings of the query one at a time, best
+	 * first, without bound on their number. Every rewriting is returned as
+	 * the list of its MCDs, together with its score.
+	 */
+	class Stream {
+
+		/** partial rewritings that have not been expanded yet */
+		private PriorityQueue<PartialRewriting> frontier = newFrontier();
+
+		/** score of the last rewriting returned */
+		private double lastScore = Double.POSITIVE_INFINITY;
+
+		/**
+		 * Returns the next rewriting, i.e. the one with the highest score
+		 * among those not returned yet.
+		 *
+		 * @return MCDs of the rewriting in the order in which they were
+		 *         chosen, null if every rewriting has been returned
+		 */
+		List<MCD> next() {
+			while (!frontier.isEmpty()) {
+				PartialRewriting partial = frontier.poll();
+				if (partial.covered.equals(allSubgoals)) {
+					lastScore = partial.score;
+					return partial.getMCDs();
+				}
+				frontier.addAll(extend(partial));
+			}
+			lastScore = Double.NEGATIVE_INFINITY;
+			return null;
+		}
+
+		/**
+		 * Returns the score of the last rewriting returned by next. No
+		 * rewriting that has not been returned yet has a higher score.
+		 *
+		 * @return score, positive infinity before the first call of next and
+		 *         negative infinity once every rewriting has been returned
+		 */
+		double getLastScore() {
+			return lastScore;
+		}
+	}
+
+	/**
+	 * Class PartialRewriting is a node of the search: the MCDs chosen so far,
+	 * stored as a chain of the last MCD and the partial rewriting it extends,
+	 * the covered subgoals, the score and the bound of the completions.
+	 */
+	private class PartialRewriting {
+
+		/** partial rewriting extended by this one, null for the root */
+		PartialRewriting previous;
+
+		/** last MCD chosen, null for the root */
+		MCD mcd;
+
+		/** query subgoals covered by the MCDs */
+		BitSet covered;
+
+		/** score of the MCDs */
+		double score;
+
+		/** upper bound of the scores of the completions */
+		double bound;
+
+		/**
+		 * position of every MCD among the candidates of its subgoal, used to
+		 * break ties
+		 */
+		int[] path;
+
+		/**
+		 * PartialRewriting constructor
+		 *
+		 * @param previous
+		 *            partial rewriting that is extended, null for the root
+		 * @param mcd
+		 *            MCD that is added, null for the root
+		 * @param position
+		 *            position of the MCD among the candidates of its subgoal
+		 * @param covered
+		 *            covered query subgoals
+		 * @param score
+		 *            score of the MCDs
+		 */
+		PartialRewriting(PartialRewriting previous, MCD mcd, int position,
+				BitSet covered, double score) {
+			this.previous = previous;
+			this.mcd = mcd;
+			this.covered = covered;
+			this.score = score;
+			if (previous == null) {
+				this.path = new int[0];
+			} else {
+				this.path = new int[previous.path.length + 1];
+				System.arraycopy(previous.path, 0, path, 0, previous.path.length);
+				path[previous.path.length] = position;
+			}
+
+			BitSet uncovered = (BitSet) allSubgoals.clone();
+			uncovered.andNot(covered);
+			this.bound = RewritingRanker.this.score.bound(score, uncovered,
+					maxRanks);
+		}
+
+		/**
+		 * Returns the MCDs in the order in which they were chosen.
+		 *
+		 * @return list of MCDs
+		 */
+		List<MCD> getMCDs() {
+			List<MCD> mcds = new ArrayList<MCD>();
+			for (PartialRewriting p = this; p.mcd != null; p = p.previous) {
+				mcds.add(p.mcd);
+			}
+			Collections.reverse(mcds);
+			return mcds;
+		}
+	}
+}
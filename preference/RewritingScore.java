@@ -0,0 +1,183 @@
+package preference;
+
+import java.util.BitSet;
+import java.util.List;
+
+import minicon.MCD;
+
+/**
+ * Class RewritingScore aggregates the ranks of the views of a rewriting into
+ * one global score; a rewriting is better than another if its score is
+ * higher. The score of a rewriting is computed incrementally, one MCD at a
+ * time, starting from initial().
+ *
+ * For the best-first enumeration of rewritings, a score also provides an
+ * upper bound of the scores of all complete rewritings that extend a partial
+ * rewriting. The bound gets the highest rank of the MCDs that can cover every
+ * query subgoal. It relies on the fact that every MCD added to a partial
+ * rewriting is chosen for a subgoal that is not covered yet, its first one,
+ * so the MCDs still to be added are chosen for distinct uncovered subgoals.
+ * The bound must equal the score if no subgoal is uncovered.
+ *
+ * The predefined scores assume ranks that are not negative, as the ranks of
+ * preferences.xml.
+ */
+public abstract class RewritingScore {
+
+	/** sum of the view ranks */
+	public static final RewritingScore SUM = new RewritingScore("sum") {
+
+		public double initial() {
+			return 0;
+		}
+
+		public double add(double score, double rank) {
+			return score + rank;
+		}
+
+		public double bound(double score, BitSet uncovered, double[] maxRanks) {
+			double bound = score;
+			for (int i = uncovered.nextSetBit(0); i >= 0; i = uncovered
+					.nextSetBit(i + 1)) {
+				bound += Math.max(0, maxRanks[i]);
+			}
+			return bound;
+		}
+	};
+
+	/** rank of the worst view of the rewriting */
+	public static final RewritingScore MIN = new RewritingScore("min") {
+
+		public double initial() {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		public double add(double score, double rank) {
+			return Math.min(score, rank);
+		}
+
+		public double bound(double score, BitSet uncovered, double[] maxRanks) {
+			// the next MCD is chosen for the first uncovered subgoal
+			int first = uncovered.nextSetBit(0);
+			if (first < 0) {
+				return score;
+			}
+			return Math.min(score, maxRanks[first]);
+		}
+	};
+
+	/** product of the view ranks */
+	public static final RewritingScore PRODUCT = new RewritingScore("product") {
+
+		public double initial() {
+			return 1;
+		}
+
+		public double add(double score, double rank) {
+			return score * rank;
+		}
+
+		public double bound(double score, BitSet uncovered, double[] maxRanks) {
+			int first = uncovered.nextSetBit(0);
+			if (first < 0) {
+				return score;
+			}
+
+			// the next MCD is chosen for the first uncovered subgoal, the
+			// following ones can only increase the score with ranks above 1
+			double bound = score * maxRanks[first];
+			for (int i = uncovered.nextSetBit(first + 1); i >= 0; i = uncovered
+					.nextSetBit(i + 1)) {
+				bound *= Math.max(1, maxRanks[i]);
+			}
+			return bound;
+		}
+	};
+
+	/** name of the score, used on the command line */
+	private String name;
+
+	/**
+	 * RewritingScore constructor
+	 *
+	 * @param name
+	 *            name of the score
+	 */
+	protected RewritingScore(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the predefined score with the given name.
+	 *
+	 * @param name
+	 *            "sum", "min" or "product"
+	 * @return score, null if there is no score with this name
+	 */
+	public static RewritingScore forName(String name) {
+		for (RewritingScore score : new RewritingScore[] { SUM, MIN, PRODUCT }) {
+			if (score.name.equalsIgnoreCase(name)) {
+				return score;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the score of a rewriting without MCDs.
+	 *
+	 * @return initial score
+	 */
+	public abstract double initial();
+
+	/**
+	 * Returns the score of a rewriting after an MCD has been added.
+	 *
+	 * @param score
+	 *            score of the rewriting before adding the MCD
+	 * @param rank
+	 *            rank of the view of the MCD
+	 * @return new score
+	 */
+	public abstract double add(double score, double rank);
+
+	/**
+	 * Returns an upper bound of the scores of the complete rewritings that
+	 * extend a partial rewriting.
+	 *
+	 * @param score
+	 *            score of the partial rewriting
+	 * @param uncovered
+	 *            query subgoals not covered by the partial rewriting
+	 * @param maxRanks
+	 *            for every query subgoal, the highest rank of the MCDs that
+	 *            can be chosen for it
+	 * @return upper bound, equal to score if uncovered is empty
+	 */
+	public abstract double bound(double score, BitSet uncovered,
+			double[] maxRanks);
+
+	/**
+	 * Returns the score of a complete list of MCDs.
+	 *
+	 * @param mcds
+	 *            MCDs of a rewriting
+	 * @param profile
+	 *            ranks of the views
+	 * @return score of the rewriting
+	 */
+	public double score(List<MCD> mcds, PreferenceProfile profile) {
+		double score = initial();
+		for (MCD mcd : mcds) {
+			score = add(score, profile.getRank(mcd.getView()));
+		}
+		return score;
+	}
+
+	/**
+	 * Overwrites Object method. Returns the name of the score.
+	 */
+	public String toString() {
+		return name;
+	}
+}
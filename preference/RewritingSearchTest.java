@@ -0,0 +1,90 @@
+package preference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import minicon.InputHandler;
+import minicon.Rewriting;
+import datalog.DatalogQuery;
+
+/**
+ * Class RewritingSearchTest checks that the best-first search of
+ * RewritingRanker and the branch and bound search of BoundedRewritingSearch
+ * return the same top N rewritings when ties cross the Nth place: every view
+ * of the query below has the same rank, so every N cuts through rewritings
+ * with equal scores. A query without subgoals must have no rewriting in
+ * both searches.
+ *
+ * Run with java preference.RewritingSearchTest; prints OK, or the first
+ * difference and exits with status 1.
+ */
+public class RewritingSearchTest {
+
+	/**
+	 * every view covers one subgoal, except V9, which has to cover two since B
+	 * is not in its head; its rewritings are shorter and are created earlier
+	 * by a breadth-first order of the searches
+	 */
+	private static final String[] VIEWS = { "V1(A, B) :- R1(A, B)",
+			"V2(A, B) :- R1(A, B)", "V3(A, B) :- R1(A, B)",
+			"V4(A, B) :- R1(A, B), R3(B)", "V5(B, C) :- R2(B, C)",
+			"V6(B, C) :- R2(B, C)", "V7(B, C) :- R2(B, C)",
+			"V8(C, D) :- R4(C, D)", "V9(A, C) :- R1(A, B), R2(B, C)" };
+
+	private static final String QUERY = "Q(A, C, D) :- R1(A, B), R2(B, C), R4(C, D)";
+
+	public static void main(String[] args) {
+		List<DatalogQuery> views = new ArrayList<DatalogQuery>();
+		Map<String, Double> ranks = new HashMap<String, Double>();
+		for (String view : VIEWS) {
+			DatalogQuery parsed = InputHandler.parse(view);
+			views.add(parsed);
+			ranks.put(parsed.getName(), 0.5);
+		}
+		DatalogQuery query = InputHandler.parse(QUERY);
+		Organiser organiser = new Organiser(views, query,
+				new PreferenceProfile(1, ranks));
+
+		RewritingScore[] scores = { RewritingScore.SUM, RewritingScore.MIN,
+				RewritingScore.PRODUCT };
+		for (RewritingScore score : scores) {
+			long all = organiser.getBestRewritings(Long.MAX_VALUE, score)
+					.size();
+			for (long n = 1; n <= all + 1; n++) {
+				String best = toString(organiser.getBestRewritings(n, score));
+				String bounded = toString(organiser.getBoundedRewritings(n,
+						score));
+				if (!best.equals(bounded)) {
+					System.out.println("FAILED: " + score + ", N = " + n
+							+ "\nbest first:\n" + best + "branch and bound:\n"
+							+ bounded);
+					System.exit(1);
+				}
+			}
+		}
+
+		Organiser empty = new Organiser(views, new DatalogQuery("Q"),
+				new PreferenceProfile(1, ranks));
+		for (RewritingScore score : scores) {
+			String best = toString(empty.getBestRewritings(1, score));
+			String bounded = toString(empty.getBoundedRewritings(1, score));
+			if (best.length() > 0 || bounded.length() > 0) {
+				System.out.println("FAILED: query without subgoals, " + score
+						+ "\nbest first:\n" + best + "branch and bound:\n"
+						+ bounded);
+				System.exit(1);
+			}
+		}
+		System.out.println("OK");
+	}
+
+	private static String toString(List<Rewriting> rewritings) {
+		StringBuffer buffer = new StringBuffer();
+		for (Rewriting rewriting : rewritings) {
+			buffer.append(rewriting).append('\n');
+		}
+		return buffer.toString();
+	}
+}